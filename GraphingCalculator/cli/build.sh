@@ -0,0 +1,25 @@
+#!/bin/sh
+# Builds the command-line evaluator, geometry2D.EvaluateCommand, into cli/out:
+#   evaluate.jar  the AWT-free engine, geometry2D, alone
+#   evaluate.jsa  an AppCDS archive of the classes a run loads, which later runs map instead of loading
+#   evaluate      a native executable, if GraalVM's native-image is on the PATH
+# Run cli/evaluate afterwards; it uses the fastest of them that was built.
+set -e
+cd "$(dirname "$0")"
+cli="$(pwd)"
+rm -rf out
+mkdir -p out/classes
+
+javac -d out/classes $(find ../src/geometry2D -name '*.java')
+cp -R ../src/META-INF out/classes/
+jar --create --file out/evaluate.jar --main-class geometry2D.EvaluateCommand -C out/classes .
+
+# A training run, over a range so that the batch evaluator is loaded too.  The archive can only be used by
+# the same JVM, with the same garbage collector, on the same path of the jar, so it runs as cli/evaluate does.
+java -XX:ArchiveClassesAtExit="$cli/out/evaluate.jsa" -XX:+UseSerialGC -jar "$cli/out/evaluate.jar" \
+    "a*sin(x)^2 + cos(x)^2" a=1 x=0:1:3 > /dev/null
+
+if command -v native-image > /dev/null; then
+    # The options are in src/META-INF/native-image, inside the jar.
+    native-image -jar out/evaluate.jar -o out/evaluate
+fi
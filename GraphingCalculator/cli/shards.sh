@@ -0,0 +1,29 @@
+#!/bin/sh
+# Checks geometry2D.ShardCoordinator against geometry2D.SampleStore: sweeps a few functions with several local
+# worker processes each, and fails unless the merged values give the same summary as one process does.
+#   cli/shards.sh [workers]
+set -e
+cd "$(dirname "$0")"
+workers="${1:-3}"
+rm -rf out/shards
+mkdir -p out/shards
+javac -d out/shards $(find ../src/geometry2D -name '*.java')
+
+check() {
+    expected="$(java -cp out/shards geometry2D.SampleStore "$@" | head -n 1)"
+    actual="$(java -cp out/shards geometry2D.ShardCoordinator "$@" "$workers" | head -n 1)"
+    if [ "$expected" != "$actual" ]; then
+        echo "FAILED: $1"
+        echo "  expected $expected"
+        echo "  actual   $actual"
+        exit 1
+    fi
+    echo "ok: $actual"
+}
+
+# Enough values for many shards of each worker, so that they are merged out of order.
+check "sin(x)*x" 0 100 5000000
+check "1/(x-2.5)" -10 10 3000001
+check "sqrt(x)+log(x)" -1 3 2000000
+# An expression longer than 64 KB.
+check "x+0.$(printf '%070000d' 0)1" 0 1 200000
@@ -0,0 +1,81 @@
+package net.dvhigh.class2019.vishakhn.mathproject;
+
+import geometry2D.CompiledExpression;
+import geometry2D.MathEvaluator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of batch evaluation of a CompiledExpression, per value: one value at a time, a block at a time, and
+ * a block at a time with the approximate functions.
+ *
+ * @author vishakh.nair
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchEvaluationBenchmark {
+
+    // Number of values in each batch.
+    static final int BATCH_SIZE = 1024;
+
+    // A polynomial, the same in Horner form, a rational function, arithmetic functions, and trigonometric ones.
+    @Param({"x^3 - 3*x^2 - 144*x + 432", "((x - 3)*x - 144)*x + 432", "(x*x*x - 4*x*x + 5*x + 4)/(x - 2)",
+            "abs(x - 1) + sqrt(sqr(x)) - floor(x) * ceil(x)", "sin(x) * cos(x)", "tan(x) / 3", "atan(x) * 2"})
+    public String expression;
+
+    private final double[] xs = new double[BATCH_SIZE];
+    private final double[] results = new double[BATCH_SIZE];
+    private final MathEvaluator.Continuity[] continuities = new MathEvaluator.Continuity[BATCH_SIZE];
+    private CompiledExpression compiled;
+    private CompiledExpression approximate;
+    private double[] values;
+    private int x;
+
+    @Setup
+    public void setUp() throws Exception {
+        for (int i = 0; i < BATCH_SIZE; ++i) {
+            xs[i] = -10 + 20.0 * i / BATCH_SIZE;
+        }
+        compiled = new MathEvaluator(expression).compile();
+        approximate = compiled.approximate();
+        values = new double[compiled.getVariableCount()];
+        x = compiled.getVariableIndex("x");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public double each() {
+        compiled.evaluateEach(x, xs, values, results, continuities);
+        return results[BATCH_SIZE / 3];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public double block() {
+        compiled.evaluate(x, xs, values, results, continuities);
+        return results[BATCH_SIZE / 3];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public double approximate() {
+        approximate.evaluate(x, xs, values, results, continuities);
+        return results[BATCH_SIZE / 3];
+    }
+}
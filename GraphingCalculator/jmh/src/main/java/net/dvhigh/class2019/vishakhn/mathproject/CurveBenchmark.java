@@ -0,0 +1,75 @@
+package net.dvhigh.class2019.vishakhn.mathproject;
+
+import geometry2D.ImplicitCurve;
+import geometry2D.ParametricCurve;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to trace implicit, parametric and polar curves on a full-screen window from -10 to 10 on both axes,
+ * and to plot them.
+ *
+ * @author vishakh.nair
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class CurveBenchmark {
+
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+
+    // Implicit curves first, then parametric and polar ones.  y = x passes through corners of the grid.
+    private static final String[] IMPLICIT = {"x^2 + y^2 = 25", "x^3 + y^3 = 3*x*y", "sin(x*y) = 0.5", "y = x"};
+    private static final String[] PARAMETRIC = {"(9*cos(3*t), 9*sin(2*t))", "r = 5 + 4*cos(theta)",
+            "(t*cos(t)/2, t*sin(t)/2), 0 <= t <= 6*pi", "(9*sin(7*t), 9*cos(5*t))"};
+
+    // Index of the curve, in IMPLICIT and then in PARAMETRIC.
+    @Param({"0", "1", "2", "3", "4", "5", "6", "7"})
+    public int curve;
+
+    private ImplicitCurve implicit;
+    private ParametricCurve parametric;
+    private GraphPlotter plotter;
+
+    @Setup
+    public void setUp() {
+        String equation;
+        if (curve < IMPLICIT.length) {
+            equation = IMPLICIT[curve];
+            implicit = new ImplicitCurve(equation);
+        } else {
+            equation = PARAMETRIC[curve - IMPLICIT.length];
+            parametric = new ParametricCurve(equation);
+        }
+        plotter = new GraphPlotter();
+        plotter.setValues(equation, -10, 10, -10, 10, 1, 1);
+    }
+
+    @Benchmark
+    public int trace() {
+        if (implicit != null) {
+            return implicit.trace(-10, 10, -10, 10, WIDTH, HEIGHT).getSegmentCount();
+        }
+        return parametric.trace(-10, 10, -10, 10, WIDTH, HEIGHT).getPointCount();
+    }
+
+    @Benchmark
+    public int plot() {
+        return plotter.renderImage(WIDTH, HEIGHT).getRGB(0, 0);
+    }
+}
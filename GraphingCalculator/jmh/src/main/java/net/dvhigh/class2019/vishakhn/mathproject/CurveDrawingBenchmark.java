@@ -0,0 +1,145 @@
+package net.dvhigh.class2019.vishakhn.mathproject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.*;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ways of drawing the three charts of a plot at 4K.  "interleaved" draws one line per call and sets the
+ * stroke and color before each, as plot() used to.  The others change the stroke and color once per chart,
+ * and draw it as one path, as paths of PATH_VERTICES vertices each, as GraphPlotter does, as one polyline,
+ * or as one line per call.
+ *
+ * @author vishakh.nair
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class CurveDrawingBenchmark {
+
+    private static final int WIDTH = 3840;
+    private static final int HEIGHT = 2160;
+
+    // Strokes and colors of the three charts of a plot.
+    private static final BasicStroke[] STROKES = {new BasicStroke(3), new BasicStroke(2), new BasicStroke(1)};
+    private static final Color[] COLORS = {Color.BLUE, Color.RED, new Color(8, 69, 148)};
+
+    // Most vertices in each of the paths of pathsPerChart().
+    private static final int PATH_VERTICES = 256;
+
+    // Number of points in each chart.
+    @Param({"4000", "16000"})
+    public int points;
+
+    private final Line2D.Double line = new Line2D.Double();
+    private BufferedImage image;
+    private Graphics2D g;
+    private int[] xs;
+    private int[][] ys;
+
+    @Setup
+    public void setUp() {
+        image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        g = image.createGraphics();
+        // Three sine waves, one above the other, across the width of the image.
+        xs = new int[points];
+        ys = new int[3][points];
+        for (int i = 0; i < points; ++i) {
+            xs[i] = 150 + (int) ((WIDTH - 300.0) * i / points);
+            for (int c = 0; c < 3; ++c) {
+                ys[c][i] = (c + 1) * HEIGHT / 4 + (int) (400 * Math.sin(i * 40.0 / points));
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public int interleaved() {
+        for (int i = 1; i < points; ++i) {
+            for (int c = 0; c < 3; ++c) {
+                g.setStroke(STROKES[c]);
+                g.setColor(COLORS[c]);
+                g.draw(new Line2D.Double(xs[i - 1], ys[c][i - 1], xs[i], ys[c][i]));
+            }
+        }
+        return image.getRGB(0, 0);
+    }
+
+    @Benchmark
+    public int pathPerChart() {
+        for (int c = 0; c < 3; ++c) {
+            Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO, points);
+            path.moveTo(xs[0], ys[c][0]);
+            for (int i = 1; i < points; ++i) {
+                path.lineTo(xs[i], ys[c][i]);
+            }
+            g.setStroke(STROKES[c]);
+            g.setColor(COLORS[c]);
+            g.draw(path);
+        }
+        return image.getRGB(0, 0);
+    }
+
+    @Benchmark
+    public int pathsPerChart() {
+        Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO, PATH_VERTICES);
+        for (int c = 0; c < 3; ++c) {
+            g.setStroke(STROKES[c]);
+            g.setColor(COLORS[c]);
+            for (int first = 0; first < points - 1; first += PATH_VERTICES - 1) {
+                path.reset();
+                path.moveTo(xs[first], ys[c][first]);
+                for (int i = first + 1; i < Math.min(points, first + PATH_VERTICES); ++i) {
+                    path.lineTo(xs[i], ys[c][i]);
+                }
+                g.draw(path);
+            }
+        }
+        return image.getRGB(0, 0);
+    }
+
+    @Benchmark
+    public int polylinePerChart() {
+        for (int c = 0; c < 3; ++c) {
+            g.setStroke(STROKES[c]);
+            g.setColor(COLORS[c]);
+            g.drawPolyline(xs, ys[c], points);
+        }
+        return image.getRGB(0, 0);
+    }
+
+    @Benchmark
+    public int linesPerChart() {
+        for (int c = 0; c < 3; ++c) {
+            g.setStroke(STROKES[c]);
+            g.setColor(COLORS[c]);
+            for (int i = 1; i < points; ++i) {
+                line.setLine(xs[i - 1], ys[c][i - 1], xs[i], ys[c][i]);
+                g.draw(line);
+            }
+        }
+        return image.getRGB(0, 0);
+    }
+}
@@ -0,0 +1,58 @@
+package net.dvhigh.class2019.vishakhn.mathproject;
+
+import geometry2D.MathEvaluator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of getValue() of MathEvaluator, by the class of operators evaluated, over 100 values of x.
+ *
+ * @author vishakh.nair
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluateBenchmark {
+
+    // Values of x evaluated in each operation.
+    private static final int VALUES = 100;
+
+    // Expressions exercising one class of operators each: additive, multiplicative, power, modulo,
+    // trigonometric, inverse trigonometric, logarithmic, exponential, square root, rounding and absolute.
+    @Param({"x + 1.5 - x", "x * 1.5 / 3", "x ^ 3", "x % 0.7", "sin(x)", "asin(x) + atan(x)", "ln(x)",
+            "exp(x)", "sqrt(x)", "floor(x)", "abs(x)"})
+    public String expression;
+
+    private MathEvaluator evaluator;
+
+    @Setup
+    public void setUp() {
+        evaluator = new MathEvaluator(expression);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public double getValue() {
+        double sum = 0;
+        for (int i = 1; i <= VALUES; ++i) {
+            evaluator.addVariable("x", i * 0.01);
+            sum += evaluator.getValue();
+        }
+        return sum;
+    }
+}
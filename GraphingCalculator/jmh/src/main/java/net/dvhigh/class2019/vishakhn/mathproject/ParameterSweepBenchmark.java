@@ -0,0 +1,79 @@
+package net.dvhigh.class2019.vishakhn.mathproject;
+
+import geometry2D.CompiledExpression;
+import geometry2D.MathEvaluator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per value of evaluating a family of functions over the same values of x as one of its parameters
+ * changes, evaluating the whole expression each time, and keeping the parts the parameter does not affect.
+ *
+ * @author vishakh.nair
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParameterSweepBenchmark {
+
+    private static final String EXPRESSION = "a*sin(b*x) + c";
+    private static final int BATCH_SIZE = BatchEvaluationBenchmark.BATCH_SIZE;
+
+    // The parameter that changes.
+    @Param({"a", "b", "c"})
+    public String parameter;
+
+    private final double[] xs = new double[BATCH_SIZE];
+    private final double[] results = new double[BATCH_SIZE];
+    private final MathEvaluator.Continuity[] continuities = new MathEvaluator.Continuity[BATCH_SIZE];
+    private CompiledExpression compiled;
+    private CompiledExpression.Cache cache;
+    private double[] values;
+    private int x;
+    private int index;
+
+    @Setup
+    public void setUp() throws Exception {
+        for (int i = 0; i < BATCH_SIZE; ++i) {
+            xs[i] = -10 + 20.0 * i / BATCH_SIZE;
+        }
+        compiled = new MathEvaluator(EXPRESSION).compile();
+        cache = new CompiledExpression.Cache();
+        values = new double[compiled.getVariableCount()];
+        Arrays.fill(values, 1);
+        x = compiled.getVariableIndex("x");
+        index = compiled.getVariableIndex(parameter);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public double whole() {
+        values[index] += 0.001;
+        compiled.evaluate(x, xs, values, results, continuities, null);
+        return results[BATCH_SIZE / 3];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public double partial() {
+        values[index] += 0.001;
+        compiled.evaluate(x, xs, values, results, continuities, cache);
+        return results[BATCH_SIZE / 3];
+    }
+}
@@ -0,0 +1,50 @@
+package net.dvhigh.class2019.vishakhn.mathproject;
+
+import geometry2D.MathEvaluator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse time of MathEvaluator, by the length of the expression: a sum of the given number of quadratics.
+ *
+ * @author vishakh.nair
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"1", "4", "16", "64"})
+    public int terms;
+
+    private MathEvaluator evaluator;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder("x^2 + 3*x - 1");
+        for (int i = 1; i < terms; ++i) {
+            sb.append(" + x^2 + 3*x - 1");
+        }
+        evaluator = new MathEvaluator(sb.toString());
+    }
+
+    @Benchmark
+    public MathEvaluator parse() throws Exception {
+        evaluator.parse();
+        return evaluator;
+    }
+}
@@ -0,0 +1,122 @@
+package net.dvhigh.class2019.vishakhn.mathproject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of the plot pipeline for each of the sample functions of GraphingCalculatorTest: the data points at
+ * 100 values of x, the plot rendered headless to a new image, the first pass and all the passes of a
+ * progressive plot, and the plot drawn at 4K into the same image each time, so that only drawing is measured.
+ *
+ * @author vishakh.nair
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PlotBenchmark {
+
+    // Points computed in each operation of getDataPointsAt().
+    private static final int POINTS = 100;
+
+    // Size of the rendered plot.
+    static final int PLOT_WIDTH = 1600;
+    static final int PLOT_HEIGHT = 1000;
+
+    // Size of the plot drawn at 4K.
+    private static final int LARGE_WIDTH = 3840;
+    private static final int LARGE_HEIGHT = 2160;
+
+    // Index of the sample function in GraphingCalculatorTest.DATA.
+    @Param({"0", "1", "2", "3", "4", "5", "6"})
+    public int sample;
+
+    private GraphingCalculatorTest.Parameters parameters;
+    private GraphPlotter plotter;
+    private BufferedImage largeImage;
+    private Graphics2D largeGraphics;
+
+    @Setup
+    public void setUp() {
+        parameters = GraphingCalculatorTest.DATA[sample];
+        plotter = newPlotter(parameters);
+        largeImage = new BufferedImage(LARGE_WIDTH, LARGE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        largeGraphics = largeImage.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        largeGraphics.dispose();
+    }
+
+    /** Returns a plotter of a sample function. */
+    static GraphPlotter newPlotter(GraphingCalculatorTest.Parameters p) {
+        GraphPlotter plotter = new GraphPlotter();
+        plotter.setValues(p.expr, p.xLow, p.xHigh, p.yLow, p.yHigh, p.xStep, p.yStep);
+        return plotter;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public double getDataPointsAt() {
+        double delta = (parameters.xHigh - parameters.xLow) / POINTS;
+        double sum = 0;
+        for (int i = 0; i < POINTS; ++i) {
+            sum += plotter.getDataPointsAt(parameters.xLow + i * delta).yDash;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int renderImage() {
+        return plotter.renderImage(PLOT_WIDTH, PLOT_HEIGHT).getRGB(0, 0);
+    }
+
+    /** Time until the first, coarse pass of a progressive plot is out; the later passes are abandoned. */
+    @Benchmark
+    public int firstFrame() {
+        final int[] rgb = new int[1];
+        try {
+            plotter.renderProgressively(PLOT_WIDTH, PLOT_HEIGHT, (image, complete) -> {
+                rgb[0] = image.getRGB(0, 0);
+                Thread.currentThread().interrupt();
+            });
+        } catch (CancellationException e) {
+            // The later passes were cancelled, as intended.
+        } finally {
+            Thread.interrupted();
+        }
+        return rgb[0];
+    }
+
+    @Benchmark
+    public int allFrames() {
+        final int[] rgb = new int[1];
+        plotter.renderProgressively(PLOT_WIDTH, PLOT_HEIGHT, (image, complete) -> rgb[0] += image.getRGB(0, 0));
+        return rgb[0];
+    }
+
+    @Benchmark
+    public int plotLarge() {
+        plotter.plot(largeGraphics, LARGE_WIDTH, LARGE_HEIGHT);
+        return largeImage.getRGB(0, 0);
+    }
+}
@@ -0,0 +1,48 @@
+package net.dvhigh.class2019.vishakhn.mathproject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to render a poster-sized plot of the first sample function, whole and in strips rendered in parallel.
+ *
+ * @author vishakh.nair
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PosterBenchmark {
+
+    // Size of the poster, in pixels.
+    private static final int WIDTH = 16384;
+    private static final int HEIGHT = 4096;
+
+    @Param({"1", "4"})
+    public int strips;
+
+    private GraphPlotter plotter;
+
+    @Setup
+    public void setUp() {
+        plotter = PlotBenchmark.newPlotter(GraphingCalculatorTest.DATA[0]);
+    }
+
+    @Benchmark
+    public int renderImage() {
+        return plotter.renderImage(WIDTH, HEIGHT, strips).getRGB(0, 0);
+    }
+}
@@ -0,0 +1,78 @@
+package net.dvhigh.class2019.vishakhn.mathproject;
+
+import geometry2D.CompiledExpression;
+import geometry2D.MathEvaluator;
+import geometry2D.SampleStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per value of sampling a function into a SampleStore, which at this size is mapped onto a temporary
+ * file, and of the passes reading it: decimating it into the columns of a 4K window, and finding its sign
+ * changes.
+ *
+ * @author vishakh.nair
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SampleStoreBenchmark {
+
+    // Number of values kept, and the number of columns they are decimated into.
+    private static final int SAMPLES = 1 << 24;
+    private static final int COLUMNS = 3840;
+
+    private final double[] max = new double[COLUMNS];
+    private CompiledExpression compiled;
+    private double[] values;
+    private SampleStore store;
+
+    @Setup
+    public void setUp() throws Exception {
+        compiled = new MathEvaluator("x^3 - 3*x^2 - 144*x + 432").compile();
+        values = new double[compiled.getVariableCount()];
+        store = SampleStore.allocate(-10, 20.0 / SAMPLES, SAMPLES);
+        store.sample(compiled, compiled.getVariableIndex("x"), values);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public double sample() {
+        store.sample(compiled, compiled.getVariableIndex("x"), values);
+        return store.get(SAMPLES / 2);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public double decimate() {
+        store.decimate(COLUMNS, null, max, null);
+        return max[0];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public long findSignChanges() {
+        return store.findSignChanges(new long[16]);
+    }
+}
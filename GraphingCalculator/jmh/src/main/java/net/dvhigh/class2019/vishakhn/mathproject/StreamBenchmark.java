@@ -0,0 +1,67 @@
+package net.dvhigh.class2019.vishakhn.mathproject;
+
+import geometry2D.StreamEvaluator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per record of StreamEvaluator over records held in memory, by the number of threads evaluating them.
+ * The records cycle through the expressions of BatchEvaluationBenchmark.
+ *
+ * @author vishakh.nair
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamBenchmark {
+
+    // Number of records in the input.
+    private static final int RECORDS = 10000;
+
+    private static final String[] EXPRESSIONS = {"x^3 - 3*x^2 - 144*x + 432", "((x - 3)*x - 144)*x + 432",
+            "(x*x*x - 4*x*x + 5*x + 4)/(x - 2)", "abs(x - 1) + sqrt(sqr(x)) - floor(x) * ceil(x)",
+            "sin(x) * cos(x)", "tan(x) / 3", "atan(x) * 2"};
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private byte[] input;
+    private StreamEvaluator evaluator;
+
+    @Setup
+    public void setUp() {
+        StringBuilder records = new StringBuilder();
+        for (int i = 0; i < RECORDS; ++i) {
+            String expression = EXPRESSIONS[i * EXPRESSIONS.length / RECORDS];
+            records.append(expression).append("; x=").append(-10 + 20.0 * i / RECORDS).append('\n');
+        }
+        input = records.toString().getBytes(StandardCharsets.US_ASCII);
+        evaluator = new StreamEvaluator(threads);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public long run() throws Exception {
+        return evaluator.run(Channels.newChannel(new ByteArrayInputStream(input)),
+                Channels.newChannel(OutputStream.nullOutputStream()));
+    }
+}
@@ -0,0 +1,80 @@
+package net.dvhigh.class2019.vishakhn.mathproject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per plot to zoom from a range a million units wide to one a thousandth wide and back out, one plot per
+ * step, with a function not seen before and with one seen at every step before.
+ *
+ * @author vishakh.nair
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ZoomBenchmark {
+
+    // The function is zoomed into STEPS times by FACTOR, from a range WIDEST wide around CENTER.
+    private static final String EXPRESSION = "x*sin(x)";
+    private static final double CENTER = Math.PI;
+    private static final double WIDEST = 1e6;
+    private static final double FACTOR = 10;
+    private static final int STEPS = 9;
+
+    private static final int PLOTS = 2 * STEPS + 1;
+
+    private BufferedImage image;
+    private Graphics2D g;
+    private int runs;
+
+    @Setup
+    public void setUp() {
+        image = new BufferedImage(PlotBenchmark.PLOT_WIDTH, PlotBenchmark.PLOT_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        g = image.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PLOTS)
+    public int newFunction() {
+        // A constant term that changes each run makes a function that has no pyramid yet.
+        return zoom(EXPRESSION + " + " + runs++ + "*0");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PLOTS)
+    public int seenFunction() {
+        return zoom(EXPRESSION);
+    }
+
+    private int zoom(String expression) {
+        GraphPlotter plotter = new GraphPlotter();
+        for (int step = -STEPS; step <= STEPS; ++step) {
+            double half = WIDEST / 2 / Math.pow(FACTOR, STEPS - Math.abs(step));
+            plotter.setValues(expression, CENTER - half, CENTER + half, -half, half, half / 5, half / 5);
+            plotter.plot(g, PlotBenchmark.PLOT_WIDTH, PlotBenchmark.PLOT_HEIGHT);
+        }
+        return image.getRGB(PlotBenchmark.PLOT_WIDTH / 2, PlotBenchmark.PLOT_HEIGHT / 2);
+    }
+}
@@ -0,0 +1,286 @@
+package geometry2D;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runtime metrics of the evaluator and the renderer, published as the MBean "geometry2D:type=CalculatorMetrics".
+ *
+ * Metrics are collected only when the JVM is started with -Dgeometry2D.metrics=true.  Callers check
+ * ENABLED before recording anything; since it is a constant, the JIT compiler removes the checks and
+ * the hot paths pay nothing when the metrics are off.
+ *
+ * @author vishakh.nair
+ */
+public class CalculatorMetrics implements CalculatorMetricsMXBean {
+
+    /** Whether the metrics are collected. */
+    public static final boolean ENABLED = Boolean.getBoolean("geometry2D.metrics");
+
+    /** Name under which the MBean is registered. */
+    public static final String OBJECT_NAME = "geometry2D:type=CalculatorMetrics";
+
+    private final LongAdder expressionsParsed = new LongAdder();
+    private final LongAdder evaluations = new LongAdder();
+    private final Histogram evaluationNanos = new Histogram();
+    private final LongAdder compileCacheHits = new LongAdder();
+    private final LongAdder compileCacheMisses = new LongAdder();
+    private final LongAdder diskCacheHits = new LongAdder();
+    private final LongAdder diskCacheMisses = new LongAdder();
+    private final LongAdder analysisCacheHits = new LongAdder();
+    private final LongAdder analysisCacheMisses = new LongAdder();
+    private final LongAdder pyramidCacheHits = new LongAdder();
+    private final LongAdder pyramidCacheMisses = new LongAdder();
+    private final LongAdder plots = new LongAdder();
+    private final Histogram samplesPerPlot = new Histogram();
+    private final Histogram plotComputeNanos = new Histogram();
+    private final Histogram plotDrawNanos = new Histogram();
+    private final LongAdder asymptotesDetected = new LongAdder();
+    private final LongAdder holesDetected = new LongAdder();
+
+    private CalculatorMetrics() {
+    }
+
+    // Creates and registers the MBean the first time the metrics are used.
+    private static class Holder {
+        static final CalculatorMetrics INSTANCE = register(new CalculatorMetrics());
+    }
+
+    /**
+     * Returns the metrics, registering the MBean the first time.
+     * Only to be called when ENABLED is true.
+     */
+    public static CalculatorMetrics get() {
+        return Holder.INSTANCE;
+    }
+
+    private static CalculatorMetrics register(CalculatorMetrics metrics) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+        } catch (Exception e) {
+            // Another copy of these classes in the JVM, in another class loader, registered the name first.
+            // The metrics are still collected, and readable through get(); only JMX does not see them, and
+            // failing the evaluation or plot that first recorded something would be worse.
+        }
+        return metrics;
+    }
+
+    /** Records that an expression was parsed. */
+    public void parsed() {
+        expressionsParsed.increment();
+    }
+
+    /**
+     * Records an evaluation.
+     * @param nanos Time taken by the evaluation.
+     */
+    public void evaluated(long nanos) {
+        evaluations.increment();
+        evaluationNanos.record(nanos);
+    }
+
+    /**
+     * Records a batch of evaluations.
+     * @param count Number of evaluations.
+     * @param nanos Time taken by all of them.
+     */
+    public void evaluated(int count, long nanos) {
+        evaluations.add(count);
+        if (count > 0) {
+            evaluationNanos.record(nanos / count);
+        }
+    }
+
+    /**
+     * Records a lookup in a cache of compiled expressions.
+     * @param hit Whether the expression was found.
+     */
+    public void compileCacheLookup(boolean hit) {
+        if (hit) {
+            compileCacheHits.increment();
+        } else {
+            compileCacheMisses.increment();
+        }
+    }
+
+    /**
+     * Records a lookup in the DiskCache.
+     * @param hit Whether a valid entry was found.
+     */
+    public void diskCacheLookup(boolean hit) {
+        (hit ? diskCacheHits : diskCacheMisses).increment();
+    }
+
+    /**
+     * Records a lookup in the cache of reports of functions analysed over a range.
+     * @param hit Whether the report was found.
+     */
+    public void analysisCacheLookup(boolean hit) {
+        (hit ? analysisCacheHits : analysisCacheMisses).increment();
+    }
+
+    /**
+     * Records a lookup in the cache of sample pyramids of functions.
+     * @param hit Whether the pyramid was found.
+     */
+    public void pyramidCacheLookup(boolean hit) {
+        (hit ? pyramidCacheHits : pyramidCacheMisses).increment();
+    }
+
+    /**
+     * Records a plot.
+     * @param samples Number of x values sampled.
+     * @param computeNanos Time spent evaluating the function.
+     * @param drawNanos Time spent drawing.
+     */
+    public void plotted(long samples, long computeNanos, long drawNanos) {
+        plots.increment();
+        samplesPerPlot.record(samples);
+        plotComputeNanos.record(computeNanos);
+        plotDrawNanos.record(drawNanos);
+    }
+
+    /** Records that an asymptote was detected. */
+    public void asymptoteDetected() {
+        asymptotesDetected.increment();
+    }
+
+    /** Records that a hole was detected. */
+    public void holeDetected() {
+        holesDetected.increment();
+    }
+
+    @Override
+    public long getExpressionsParsed() {
+        return expressionsParsed.sum();
+    }
+
+    @Override
+    public long getEvaluations() {
+        return evaluations.sum();
+    }
+
+    @Override
+    public Histogram.Snapshot getEvaluationNanos() {
+        return evaluationNanos.getSnapshot();
+    }
+
+    @Override
+    public long getCompileCacheHits() {
+        return compileCacheHits.sum();
+    }
+
+    @Override
+    public long getCompileCacheMisses() {
+        return compileCacheMisses.sum();
+    }
+
+    @Override
+    public double getCompileCacheHitRate() {
+        return getHitRate(compileCacheHits, compileCacheMisses);
+    }
+
+    @Override
+    public long getDiskCacheHits() {
+        return diskCacheHits.sum();
+    }
+
+    @Override
+    public long getDiskCacheMisses() {
+        return diskCacheMisses.sum();
+    }
+
+    @Override
+    public double getDiskCacheHitRate() {
+        return getHitRate(diskCacheHits, diskCacheMisses);
+    }
+
+    @Override
+    public long getAnalysisCacheHits() {
+        return analysisCacheHits.sum();
+    }
+
+    @Override
+    public long getAnalysisCacheMisses() {
+        return analysisCacheMisses.sum();
+    }
+
+    @Override
+    public double getAnalysisCacheHitRate() {
+        return getHitRate(analysisCacheHits, analysisCacheMisses);
+    }
+
+    @Override
+    public long getPyramidCacheHits() {
+        return pyramidCacheHits.sum();
+    }
+
+    @Override
+    public long getPyramidCacheMisses() {
+        return pyramidCacheMisses.sum();
+    }
+
+    @Override
+    public double getPyramidCacheHitRate() {
+        return getHitRate(pyramidCacheHits, pyramidCacheMisses);
+    }
+
+    // Fraction of the lookups that were hits, or 0 if there were none.
+    private static double getHitRate(LongAdder hits, LongAdder misses) {
+        long found = hits.sum();
+        long total = found + misses.sum();
+        return total == 0 ? 0.0 : (double) found / total;
+    }
+
+    @Override
+    public long getPlots() {
+        return plots.sum();
+    }
+
+    @Override
+    public Histogram.Snapshot getSamplesPerPlot() {
+        return samplesPerPlot.getSnapshot();
+    }
+
+    @Override
+    public Histogram.Snapshot getPlotComputeNanos() {
+        return plotComputeNanos.getSnapshot();
+    }
+
+    @Override
+    public Histogram.Snapshot getPlotDrawNanos() {
+        return plotDrawNanos.getSnapshot();
+    }
+
+    @Override
+    public long getAsymptotesDetected() {
+        return asymptotesDetected.sum();
+    }
+
+    @Override
+    public long getHolesDetected() {
+        return holesDetected.sum();
+    }
+
+    @Override
+    public void reset() {
+        expressionsParsed.reset();
+        evaluations.reset();
+        evaluationNanos.reset();
+        compileCacheHits.reset();
+        compileCacheMisses.reset();
+        diskCacheHits.reset();
+        diskCacheMisses.reset();
+        analysisCacheHits.reset();
+        analysisCacheMisses.reset();
+        pyramidCacheHits.reset();
+        pyramidCacheMisses.reset();
+        plots.reset();
+        samplesPerPlot.reset();
+        plotComputeNanos.reset();
+        plotDrawNanos.reset();
+        asymptotesDetected.reset();
+        holesDetected.reset();
+    }
+}
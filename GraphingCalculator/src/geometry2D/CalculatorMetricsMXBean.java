@@ -0,0 +1,76 @@
+package geometry2D;
+
+/**
+ * Management interface of the runtime metrics of the evaluator and the renderer.
+ * Times are in nanoseconds.
+ *
+ * @author vishakh.nair
+ */
+public interface CalculatorMetricsMXBean {
+
+    /** Number of times an expression was parsed into a tree. */
+    long getExpressionsParsed();
+
+    /** Number of times an expression was evaluated. */
+    long getEvaluations();
+
+    /** Time taken by each evaluation.  For a batch of evaluations, the average over the batch. */
+    Histogram.Snapshot getEvaluationNanos();
+
+    /** Number of times a compiled expression was found in a cache. */
+    long getCompileCacheHits();
+
+    /** Number of times an expression had to be compiled because it was not in a cache. */
+    long getCompileCacheMisses();
+
+    /** Fraction of the lookups of compiled expressions that were found in a cache. */
+    double getCompileCacheHitRate();
+
+    /** Number of times a valid entry was found in the DiskCache. */
+    long getDiskCacheHits();
+
+    /** Number of times an entry of the DiskCache was missing or damaged. */
+    long getDiskCacheMisses();
+
+    /** Fraction of the lookups in the DiskCache that found a valid entry. */
+    double getDiskCacheHitRate();
+
+    /** Number of times the report of a function analysed over a range was found kept. */
+    long getAnalysisCacheHits();
+
+    /** Number of times a function had to be analysed because its report was not kept. */
+    long getAnalysisCacheMisses();
+
+    /** Fraction of the lookups of reports of functions analysed over a range that were found kept. */
+    double getAnalysisCacheHitRate();
+
+    /** Number of times the sample pyramid of a function was found kept. */
+    long getPyramidCacheHits();
+
+    /** Number of times a sample pyramid had to be created because none was kept for the function. */
+    long getPyramidCacheMisses();
+
+    /** Fraction of the lookups of sample pyramids that were found kept. */
+    double getPyramidCacheHitRate();
+
+    /** Number of plots drawn. */
+    long getPlots();
+
+    /** Number of x values sampled in each plot. */
+    Histogram.Snapshot getSamplesPerPlot();
+
+    /** Time spent evaluating the function in each plot. */
+    Histogram.Snapshot getPlotComputeNanos();
+
+    /** Time spent drawing in each plot. */
+    Histogram.Snapshot getPlotDrawNanos();
+
+    /** Number of asymptotes detected while plotting. */
+    long getAsymptotesDetected();
+
+    /** Number of holes detected while plotting. */
+    long getHolesDetected();
+
+    /** Clears all the counters and histograms. */
+    void reset();
+}
@@ -0,0 +1,1351 @@
+package geometry2D;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An expression compiled into a postfix program, for fast evaluation.
+ *
+ * It is created by MathEvaluator.compile().  Instead of a tree of nodes holding Double objects, the
+ * expression is a flat array of instructions run on a stack of doubles, with constants parsed once and
+ * variables bound by position, so evaluating it allocates nothing per value.  A compiled expression is
+ * immutable and may be evaluated by several threads at once.
+ *
+ * A batch of values is evaluated a block at a time, one instruction over the whole block before the next,
+ * with a stack of arrays rather than of numbers.  Each arithmetic instruction is then a simple loop over
+ * arrays, which the JIT compiler turns into SIMD instructions (SSE, AVX2 or AVX-512, whichever the CPU has),
+ * and the cost of dispatching on the instruction is paid once per block rather than once per value.
+ * Transcendental functions are applied one value at a time within the block.  The results are the same,
+ * bit for bit, as evaluating one value at a time.
+ *
+ * Before a batch is run, each part of the expression that does not depend on the variable that varies is
+ * worked out once, and its value is used for the whole batch.  With a Cache, the values of the parts that do
+ * depend on it are kept too, and when the same values of the variable are evaluated again with other
+ * variables changed, only the parts that depend on the changed variables are computed again.  So in
+ * a*sin(b*x) + c evaluated over the same x, a change of c costs one addition per value, and a change of a one
+ * multiplication and one addition.
+ *
+ * evaluateComplex() evaluates the same program over complex numbers, a block at a time, with a stack of pairs of
+ * arrays holding the real and imaginary parts, so it allocates nothing per value either.  The functions take
+ * their principal values.
+ *
+ * approximate() gives a copy that uses ApproximateMath for sin, cos, tan, sec, cosec, cot, log and whole
+ * powers, and for the sines, cosines and arguments that complex values are made of, for plots where an error
+ * of ApproximateMath.MAX_ERROR cannot be seen.
+ *
+ * @author vishakh.nair
+ */
+public final class CompiledExpression {
+
+    // Instructions.  CONSTANT and VARIABLE are followed by the index of the constant or the variable.
+    static final int CONSTANT = 0;
+    static final int VARIABLE = 1;
+    static final int ADD = 2;
+    static final int SUBTRACT = 3;
+    static final int MULTIPLY = 4;
+    static final int DIVIDE = 5;
+    static final int POWER = 6;
+    static final int MODULO = 7;
+    static final int COS = 8;
+    static final int SIN = 9;
+    static final int TAN = 10;
+    static final int SEC = 11;
+    static final int COSEC = 12;
+    static final int COT = 13;
+    static final int ACOS = 14;
+    static final int ASIN = 15;
+    static final int ATAN = 16;
+    static final int SQR = 17;
+    static final int SQRT = 18;
+    static final int LOG = 19;
+    static final int LN = 20;
+    static final int MIN = 21;
+    static final int MAX = 22;
+    static final int EXP = 23;
+    static final int FLOOR = 24;
+    static final int CEIL = 25;
+    static final int ABS = 26;
+    static final int NEG = 27;
+    static final int RND = 28;
+
+    // Instructions only found in the programs run by the batch evaluator.  HOISTED, CACHED and STORE are
+    // followed by a slot.
+    static final int HOISTED = 29;   // pushes a value worked out once for the batch
+    static final int CACHED = 30;    // pushes the values kept in a slot of the cache
+    static final int BEGIN = 31;     // starts a part whose values are to be kept, with its own continuities
+    static final int STORE = 32;     // keeps the values on top of the stack in a slot of the cache
+
+    // Bit for expressions that use rnd(), which are never kept, since they change on every evaluation.
+    private static final long RANDOM = 1L << 63;
+
+    // Number of values evaluated together by the batch evaluator.  A block of the stack fits in the L1 cache.
+    private static final int BLOCK_SIZE = 256;
+
+    // Continuities, indexed by the codes kept for each value of a block: 0 for normal, 1 for an asymptote,
+    // 2 for a hole.  A hole found anywhere in the expression wins over an asymptote.
+    private static final MathEvaluator.Continuity[] CONTINUITIES = {
+            MathEvaluator.Continuity.NORMAL, MathEvaluator.Continuity.ASYMPTOTE, MathEvaluator.Continuity.HOLE};
+
+    private final String expression;
+    private final int[] code;
+    private final double[] constants;
+    private final String[] variables;
+    private final int maxStack;
+    private final boolean rationalPolynomial;
+    private final boolean approximate;
+
+    // The parts of the expression, the whole expression being the last.
+    private final Subtree[] subtrees;
+
+    private CompiledExpression(String expression, int[] code, double[] constants, String[] variables,
+                               int maxStack, boolean rationalPolynomial, boolean approximate) {
+        this.expression = expression;
+        this.code = code;
+        this.constants = constants;
+        this.variables = variables;
+        this.maxStack = maxStack;
+        this.rationalPolynomial = rationalPolynomial;
+        this.approximate = approximate;
+        this.subtrees = Subtree.parse(code);
+    }
+
+    /** The same expression, evaluated with the faster, approximate functions of ApproximateMath. */
+    public CompiledExpression approximate() {
+        if (approximate) {
+            return this;
+        }
+        return new CompiledExpression(expression, code, constants, variables, maxStack, rationalPolynomial, true);
+    }
+
+    /** Whether the expression is evaluated with the approximate functions of ApproximateMath. */
+    public boolean isApproximate() {
+        return approximate;
+    }
+
+    /** The expression that was compiled. */
+    public String getExpression() {
+        return expression;
+    }
+
+    /** Names of the variables in the expression.  Values are passed in this order. */
+    public String[] getVariables() {
+        return variables.clone();
+    }
+
+    /** Number of variables in the expression. */
+    public int getVariableCount() {
+        return variables.length;
+    }
+
+    /**
+     * Returns the name of a variable.
+     * @param index Its position among the values passed to evaluate().
+     */
+    public String getVariable(int index) {
+        return variables[index];
+    }
+
+    /**
+     * Returns the position of a variable.
+     * @param name The name of the variable.
+     * @return Its position among the values passed to evaluate(), or -1 if the expression does not use it.
+     */
+    public int getVariableIndex(String name) {
+        for (int i = 0; i < variables.length; ++i) {
+            if (variables[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Whether the expression uses only +, -, *, / and ^. */
+    public boolean isRationalPolynomial() {
+        return rationalPolynomial;
+    }
+
+    /** Writes the program, to be kept in a DiskCache and read back by read(). */
+    ByteBuffer toBytes() {
+        byte[][] names = new byte[variables.length][];
+        int length = 4 * (code.length + 4) + 8 * constants.length + 1;
+        for (int i = 0; i < names.length; ++i) {
+            names[i] = variables[i].getBytes(StandardCharsets.UTF_8);
+            length += 4 + names[i].length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(length);
+        out.putInt(code.length);
+        for (int instruction : code) {
+            out.putInt(instruction);
+        }
+        out.putInt(constants.length);
+        for (double constant : constants) {
+            out.putDouble(constant);
+        }
+        out.putInt(names.length);
+        for (byte[] name : names) {
+            out.putInt(name.length).put(name);
+        }
+        out.putInt(maxStack).put((byte) (rationalPolynomial ? 1 : 0));
+        return out.flip();
+    }
+
+    /**
+     * Reads a program written by toBytes(), without parsing the expression again.
+     * @param expression The expression that was compiled.
+     * @param in The program.
+     * @throws IllegalArgumentException If it is not a valid program.
+     */
+    static CompiledExpression read(String expression, ByteBuffer in) {
+        try {
+            int[] code = new int[in.getInt()];
+            for (int i = 0; i < code.length; ++i) {
+                code[i] = in.getInt();
+            }
+            double[] constants = new double[in.getInt()];
+            for (int i = 0; i < constants.length; ++i) {
+                constants[i] = in.getDouble();
+            }
+            String[] variables = new String[in.getInt()];
+            for (int i = 0; i < variables.length; ++i) {
+                byte[] name = new byte[in.getInt()];
+                in.get(name);
+                variables[i] = new String(name, StandardCharsets.UTF_8);
+            }
+            int maxStack = in.getInt();
+            boolean rationalPolynomial = in.get() != 0;
+            if (in.hasRemaining() || !isValid(code, constants.length, variables.length, maxStack)) {
+                throw new IllegalArgumentException("Invalid program for [" + expression + "]");
+            }
+            return new CompiledExpression(expression, code, constants, variables, maxStack, rationalPolynomial,
+                    false);
+        } catch (RuntimeException e) {
+            // Negative sizes and reads past the end.
+            throw new IllegalArgumentException("Invalid program for [" + expression + "]", e);
+        }
+    }
+
+    // Whether a program only uses the instructions, constants and variables it has, and fits in its stack.
+    private static boolean isValid(int[] code, int constantCount, int variableCount, int maxStack) {
+        int depth = 0;
+        for (int pc = 0; pc < code.length; ++pc) {
+            int op = code[pc];
+            if (op == CONSTANT || op == VARIABLE) {
+                int limit = op == CONSTANT ? constantCount : variableCount;
+                if (++pc == code.length || code[pc] < 0 || code[pc] >= limit) {
+                    return false;
+                }
+                ++depth;
+            } else if (op > RND || op < 0 || depth < (Subtree.isBinary(op) ? 2 : 1)) {
+                return false;
+            } else if (Subtree.isBinary(op)) {
+                --depth;
+            }
+            if (depth > maxStack) {
+                return false;
+            }
+        }
+        return depth == 1;
+    }
+
+    /**
+     * Evaluates the expression.
+     * @param values Values of the variables, in the order of getVariables().
+     * @return The value, NaN if it is undefined.
+     */
+    public double evaluate(double... values) {
+        return execute(values, new double[maxStack], null, 0);
+    }
+
+    /**
+     * Evaluates the expression, and finds whether it is continuous there.
+     * @param values Values of the variables, in the order of getVariables().
+     * @param continuity Receives the continuity in its first element.
+     * @return The value, NaN if it is undefined.
+     */
+    public double evaluate(double[] values, MathEvaluator.Continuity[] continuity) {
+        return execute(values, new double[maxStack], continuity, 0);
+    }
+
+    /**
+     * Evaluates the expression for each of the given values of one variable, in one pass, a block of values
+     * at a time.
+     * @param variable Position of the variable that varies, or -1 if none does.
+     * @param xs The values of that variable.
+     * @param values Values of all the variables.  The value of the varying one is ignored.
+     * @param results Receives the value for each of xs.
+     * @param continuities If not null, receives the continuity at each of xs.
+     */
+    public void evaluate(int variable, double[] xs, double[] values, double[] results,
+                         MathEvaluator.Continuity[] continuities) {
+        evaluate(variable, xs, values, results, continuities, null);
+    }
+
+    /**
+     * Evaluates the expression for each of the given values of one variable, reusing what the cache kept
+     * from the last batch if the values of the variable are the same.
+     * @param variable Position of the variable that varies, or -1 if none does.
+     * @param xs The values of that variable.
+     * @param values Values of all the variables.  The value of the varying one is ignored.
+     * @param results Receives the value for each of xs.
+     * @param continuities If not null, receives the continuity at each of xs.
+     * @param cache Keeps the values of parts of the expression from one batch to the next.  May be null.
+     */
+    public void evaluate(int variable, double[] xs, double[] values, double[] results,
+                         MathEvaluator.Continuity[] continuities, Cache cache) {
+        boolean caching = cache != null && cache.prepare(this, variable, xs, values, continuities != null);
+        Program program = new Program(caching ? cache : null, caching ? cache.changed : -1L);
+        Subtree root = subtrees[subtrees.length - 1];
+        plan(root, -1L, variable, values, program);
+
+        int block = Math.min(BLOCK_SIZE, xs.length);
+        double[][] stack = new double[maxStack][block];
+        byte[] flags = continuities != null ? new byte[block] : null;
+        byte[][] saved = flags != null ? new byte[program.nesting][block] : null;
+        for (int start = 0; start < xs.length; start += block) {
+            int length = Math.min(block, xs.length - start);
+            executeBlock(program, variable, xs, start, length, values, stack, flags, saved);
+            System.arraycopy(stack[0], 0, results, start, length);
+            if (continuities != null) {
+                for (int i = 0; i < length; ++i) {
+                    continuities[start + i] = CONTINUITIES[flags[i]];
+                }
+            }
+        }
+        if (caching) {
+            cache.stored(program.stored, program.storedCount);
+        }
+    }
+
+    /**
+     * Evaluates the expression over complex numbers, for each of the given values of one variable, a block of
+     * values at a time.  +, -, *, /, ^, neg, sqr, sqrt, exp, ln, log, sin, cos, tan, sec, cosec and cot take
+     * complex values, and abs the modulus.  The other functions take only real values, and are undefined
+     * elsewhere.  Each undefined value is NaN in both parts.
+     * @param variable Position of the variable that varies, or -1 if none does.
+     * @param zRe The real parts of the values of that variable.
+     * @param zIm Their imaginary parts.
+     * @param valuesRe Real parts of the values of all the variables.  The value of the varying one is ignored.
+     * @param valuesIm Their imaginary parts.
+     * @param resultRe Receives the real part of the value for each of the values of the variable.
+     * @param resultIm Receives the imaginary part.
+     */
+    public void evaluateComplex(int variable, double[] zRe, double[] zIm, double[] valuesRe, double[] valuesIm,
+                                double[] resultRe, double[] resultIm) {
+        int block = Math.min(BLOCK_SIZE, zRe.length);
+        double[][] re = new double[maxStack][block];
+        double[][] im = new double[maxStack][block];
+        for (int start = 0; start < zRe.length; start += block) {
+            int length = Math.min(block, zRe.length - start);
+            executeComplexBlock(variable, zRe, zIm, start, length, valuesRe, valuesIm, re, im);
+            System.arraycopy(re[0], 0, resultRe, start, length);
+            System.arraycopy(im[0], 0, resultIm, start, length);
+        }
+    }
+
+    /**
+     * Writes the program for a part of the expression, for a batch where the given variable varies.
+     * A part that does not depend on it is worked out now.  With a cache, a part that depends on it, but not
+     * on the rest of the enclosing part, is kept, or taken from the cache if none of its variables changed.
+     * @param subtree The part.
+     * @param enclosing The variables the enclosing part depends on.
+     */
+    private void plan(Subtree subtree, long enclosing, int variable, double[] values, Program program) {
+        if (subtree.isLeaf()) {
+            program.emit(code[subtree.start]);
+            program.emit(code[subtree.start + 1]);
+            return;
+        }
+        if ((subtree.dependencies & (bit(variable) | RANDOM)) == 0) {
+            MathEvaluator.Continuity[] continuity = new MathEvaluator.Continuity[1];
+            double value = execute(subtree.start, subtree.end, values, new double[maxStack], continuity, 0);
+            program.emit(HOISTED);
+            program.emit(program.hoist(value, (byte) continuity[0].ordinal()));
+            return;
+        }
+        Cache cache = program.cache;
+        boolean kept = cache != null && subtree.dependencies != enclosing && (subtree.dependencies & RANDOM) == 0;
+        if (kept && (subtree.dependencies & program.changed) == 0 && cache.isKept(subtree.index)) {
+            program.emit(CACHED);
+            program.emit(subtree.index);
+            return;
+        }
+        if (kept) {
+            program.emit(BEGIN);
+            ++program.nesting;
+        }
+        for (Subtree operand : subtree.operands) {
+            plan(operand, subtree.dependencies, variable, values, program);
+        }
+        program.emit(code[subtree.end - 1]);
+        if (kept) {
+            program.emit(STORE);
+            program.emit(subtree.index);
+            program.store(subtree.index);
+        }
+    }
+
+    // The bit for a variable in the dependencies of a part of the expression.  Variables past the 62nd share
+    // a bit, which only means that they are taken as changed together.
+    private static long bit(int variable) {
+        return variable < 0 ? 0 : 1L << Math.min(variable, 62);
+    }
+
+    /**
+     * Same as evaluate(int, double[], double[], double[], Continuity[]), but runs the whole program for one
+     * value before the next.  It gives the same results, and is kept to compare the two.
+     */
+    public void evaluateEach(int variable, double[] xs, double[] values, double[] results,
+                             MathEvaluator.Continuity[] continuities) {
+        double[] bound = values.clone();
+        double[] stack = new double[maxStack];
+        for (int i = 0; i < xs.length; ++i) {
+            if (variable >= 0) {
+                bound[variable] = xs[i];
+            }
+            results[i] = execute(bound, stack, continuities, i);
+        }
+    }
+
+    // Runs the program.  Records the continuity in continuities[index] if there is an array to record it in.
+    private double execute(double[] values, double[] stack, MathEvaluator.Continuity[] continuities, int index) {
+        return execute(0, code.length, values, stack, continuities, index);
+    }
+
+    // Runs the instructions from..to of the program, which compute one part of the expression.
+    private double execute(int from, int to, double[] values, double[] stack,
+                           MathEvaluator.Continuity[] continuities, int index) {
+        MathEvaluator.Continuity continuity = MathEvaluator.Continuity.NORMAL;
+        int top = -1;
+        int pc = from;
+        while (pc < to) {
+            int op = code[pc++];
+            switch (op) {
+                case CONSTANT:
+                    stack[++top] = constants[code[pc++]];
+                    break;
+                case VARIABLE:
+                    stack[++top] = values[code[pc++]];
+                    break;
+                case ADD:
+                    --top;
+                    stack[top] = stack[top] + stack[top + 1];
+                    break;
+                case SUBTRACT:
+                    --top;
+                    stack[top] = stack[top] - stack[top + 1];
+                    break;
+                case MULTIPLY:
+                    --top;
+                    stack[top] = stack[top] * stack[top + 1];
+                    break;
+                case DIVIDE: {
+                    --top;
+                    double numerator = stack[top];
+                    double denominator = stack[top + 1];
+                    if (isZero(denominator)) {
+                        if (isZero(numerator)) {
+                            continuity = MathEvaluator.Continuity.HOLE;
+                        } else if (continuity != MathEvaluator.Continuity.HOLE) {
+                            continuity = MathEvaluator.Continuity.ASYMPTOTE;
+                        }
+                    }
+                    stack[top] = numerator / denominator;
+                    break;
+                }
+                case POWER:
+                    --top;
+                    stack[top] = approximate ? ApproximateMath.pow(stack[top], stack[top + 1])
+                            : Math.pow(stack[top], stack[top + 1]);
+                    break;
+                case MODULO:
+                    --top;
+                    stack[top] = stack[top] % stack[top + 1];
+                    break;
+                case MIN:
+                    --top;
+                    stack[top] = Math.min(stack[top], stack[top + 1]);
+                    break;
+                case MAX:
+                    --top;
+                    stack[top] = Math.max(stack[top], stack[top + 1]);
+                    break;
+                default:
+                    stack[top] = approximate ? applyApproximately(op, stack[top]) : apply(op, stack[top]);
+                    break;
+            }
+        }
+        if (continuities != null) {
+            continuities[index] = continuity;
+        }
+        return stack[0];
+    }
+
+    /**
+     * Runs a program over a block of values of the variable, one instruction at a time, leaving the
+     * results in stack[0].
+     * @param program The program, as planned for the batch.
+     * @param variable Position of the variable that varies, or -1 if none does.
+     * @param xs The values of that variable.
+     * @param start Position in xs of the first value of the block.
+     * @param length Number of values in the block.
+     * @param values Values of all the variables.
+     * @param stack The stack, one array per level, each at least length long.
+     * @param flags If not null, receives the code of the continuity of each value.
+     * @param saved Holds the codes of the continuities of the enclosing parts while a part to be kept is run.
+     */
+    private void executeBlock(Program program, int variable, double[] xs, int start, int length,
+                              double[] values, double[][] stack, byte[] flags, byte[][] saved) {
+        if (flags != null) {
+            Arrays.fill(flags, 0, length, (byte) 0);
+        }
+        int[] code = program.code;
+        int top = -1;
+        int pc = 0;
+        int nesting = 0;
+        while (pc < program.length) {
+            int op = code[pc++];
+            switch (op) {
+                case HOISTED: {
+                    int slot = code[pc++];
+                    Arrays.fill(stack[++top], 0, length, program.hoisted[slot]);
+                    if (flags != null) {
+                        byte flag = program.hoistedFlags[slot];
+                        for (int i = 0; i < length; ++i) {
+                            flags[i] = (byte) Math.max(flags[i], flag);
+                        }
+                    }
+                    break;
+                }
+                case CACHED: {
+                    int slot = code[pc++];
+                    System.arraycopy(program.cache.values[slot], start, stack[++top], 0, length);
+                    if (flags != null) {
+                        byte[] kept = program.cache.flags[slot];
+                        for (int i = 0; i < length; ++i) {
+                            flags[i] = (byte) Math.max(flags[i], kept[start + i]);
+                        }
+                    }
+                    break;
+                }
+                case BEGIN:
+                    if (flags != null) {
+                        System.arraycopy(flags, 0, saved[nesting], 0, length);
+                        Arrays.fill(flags, 0, length, (byte) 0);
+                    }
+                    ++nesting;
+                    break;
+                case STORE: {
+                    int slot = code[pc++];
+                    System.arraycopy(stack[top], 0, program.cache.values[slot], start, length);
+                    --nesting;
+                    if (flags != null) {
+                        System.arraycopy(flags, 0, program.cache.flags[slot], start, length);
+                        byte[] enclosing = saved[nesting];
+                        for (int i = 0; i < length; ++i) {
+                            flags[i] = (byte) Math.max(flags[i], enclosing[i]);
+                        }
+                    }
+                    break;
+                }
+                case CONSTANT:
+                    Arrays.fill(stack[++top], 0, length, constants[code[pc++]]);
+                    break;
+                case VARIABLE: {
+                    int index = code[pc++];
+                    if (index == variable) {
+                        System.arraycopy(xs, start, stack[++top], 0, length);
+                    } else {
+                        Arrays.fill(stack[++top], 0, length, values[index]);
+                    }
+                    break;
+                }
+                case ADD: {
+                    double[] a = stack[--top];
+                    double[] b = stack[top + 1];
+                    for (int i = 0; i < length; ++i) {
+                        a[i] = a[i] + b[i];
+                    }
+                    break;
+                }
+                case SUBTRACT: {
+                    double[] a = stack[--top];
+                    double[] b = stack[top + 1];
+                    for (int i = 0; i < length; ++i) {
+                        a[i] = a[i] - b[i];
+                    }
+                    break;
+                }
+                case MULTIPLY: {
+                    double[] a = stack[--top];
+                    double[] b = stack[top + 1];
+                    for (int i = 0; i < length; ++i) {
+                        a[i] = a[i] * b[i];
+                    }
+                    break;
+                }
+                case DIVIDE: {
+                    double[] a = stack[--top];
+                    double[] b = stack[top + 1];
+                    if (flags != null) {
+                        for (int i = 0; i < length; ++i) {
+                            if (isZero(b[i])) {
+                                flags[i] = isZero(a[i]) ? (byte) 2 : (byte) Math.max(flags[i], 1);
+                            }
+                        }
+                    }
+                    for (int i = 0; i < length; ++i) {
+                        a[i] = a[i] / b[i];
+                    }
+                    break;
+                }
+                case POWER: {
+                    double[] a = stack[--top];
+                    double[] b = stack[top + 1];
+                    if (approximate) {
+                        for (int i = 0; i < length; ++i) {
+                            a[i] = ApproximateMath.pow(a[i], b[i]);
+                        }
+                    } else {
+                        for (int i = 0; i < length; ++i) {
+                            a[i] = Math.pow(a[i], b[i]);
+                        }
+                    }
+                    break;
+                }
+                case MODULO: {
+                    double[] a = stack[--top];
+                    double[] b = stack[top + 1];
+                    for (int i = 0; i < length; ++i) {
+                        a[i] = a[i] % b[i];
+                    }
+                    break;
+                }
+                case MIN: {
+                    double[] a = stack[--top];
+                    double[] b = stack[top + 1];
+                    for (int i = 0; i < length; ++i) {
+                        a[i] = Math.min(a[i], b[i]);
+                    }
+                    break;
+                }
+                case MAX: {
+                    double[] a = stack[--top];
+                    double[] b = stack[top + 1];
+                    for (int i = 0; i < length; ++i) {
+                        a[i] = Math.max(a[i], b[i]);
+                    }
+                    break;
+                }
+                default:
+                    applyBlock(op, stack[top], length, approximate);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Runs the program over complex numbers for a block of values of the variable, one instruction at a time,
+     * leaving the results in re[0] and im[0].  The arguments are those of evaluateComplex(), and the stacks of
+     * the real and imaginary parts, one array per level, each at least length long.
+     */
+    private void executeComplexBlock(int variable, double[] zRe, double[] zIm, int start, int length,
+                                     double[] valuesRe, double[] valuesIm, double[][] re, double[][] im) {
+        int top = -1;
+        int pc = 0;
+        while (pc < code.length) {
+            int op = code[pc++];
+            switch (op) {
+                case CONSTANT:
+                    ++top;
+                    Arrays.fill(re[top], 0, length, constants[code[pc++]]);
+                    Arrays.fill(im[top], 0, length, 0.0);
+                    break;
+                case VARIABLE: {
+                    int index = code[pc++];
+                    ++top;
+                    if (index == variable) {
+                        System.arraycopy(zRe, start, re[top], 0, length);
+                        System.arraycopy(zIm, start, im[top], 0, length);
+                    } else {
+                        Arrays.fill(re[top], 0, length, valuesRe[index]);
+                        Arrays.fill(im[top], 0, length, valuesIm[index]);
+                    }
+                    break;
+                }
+                case ADD: {
+                    --top;
+                    double[] aRe = re[top];
+                    double[] aIm = im[top];
+                    double[] bRe = re[top + 1];
+                    double[] bIm = im[top + 1];
+                    for (int i = 0; i < length; ++i) {
+                        aRe[i] = aRe[i] + bRe[i];
+                        aIm[i] = aIm[i] + bIm[i];
+                    }
+                    break;
+                }
+                case SUBTRACT: {
+                    --top;
+                    double[] aRe = re[top];
+                    double[] aIm = im[top];
+                    double[] bRe = re[top + 1];
+                    double[] bIm = im[top + 1];
+                    for (int i = 0; i < length; ++i) {
+                        aRe[i] = aRe[i] - bRe[i];
+                        aIm[i] = aIm[i] - bIm[i];
+                    }
+                    break;
+                }
+                case MULTIPLY: {
+                    --top;
+                    double[] aRe = re[top];
+                    double[] aIm = im[top];
+                    double[] bRe = re[top + 1];
+                    double[] bIm = im[top + 1];
+                    for (int i = 0; i < length; ++i) {
+                        double r = aRe[i] * bRe[i] - aIm[i] * bIm[i];
+                        aIm[i] = aRe[i] * bIm[i] + aIm[i] * bRe[i];
+                        aRe[i] = r;
+                    }
+                    break;
+                }
+                case DIVIDE: {
+                    --top;
+                    double[] aRe = re[top];
+                    double[] aIm = im[top];
+                    double[] bRe = re[top + 1];
+                    double[] bIm = im[top + 1];
+                    for (int i = 0; i < length; ++i) {
+                        divide(aRe, aIm, i, bRe[i], bIm[i]);
+                    }
+                    break;
+                }
+                case POWER: {
+                    --top;
+                    double[] aRe = re[top];
+                    double[] aIm = im[top];
+                    double[] bRe = re[top + 1];
+                    double[] bIm = im[top + 1];
+                    for (int i = 0; i < length; ++i) {
+                        power(aRe, aIm, i, bRe[i], bIm[i], approximate);
+                    }
+                    break;
+                }
+                case MODULO:
+                case MIN:
+                case MAX: {
+                    --top;
+                    double[] aRe = re[top];
+                    double[] aIm = im[top];
+                    double[] bRe = re[top + 1];
+                    double[] bIm = im[top + 1];
+                    for (int i = 0; i < length; ++i) {
+                        if (aIm[i] == 0 && bIm[i] == 0) {
+                            aRe[i] = op == MODULO ? aRe[i] % bRe[i]
+                                    : op == MIN ? Math.min(aRe[i], bRe[i]) : Math.max(aRe[i], bRe[i]);
+                        } else {
+                            aRe[i] = Double.NaN;
+                            aIm[i] = Double.NaN;
+                        }
+                    }
+                    break;
+                }
+                default: {
+                    double[] aRe = re[top];
+                    double[] aIm = im[top];
+                    for (int i = 0; i < length; ++i) {
+                        applyComplex(op, aRe, aIm, i, approximate);
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    // Applies a function of one argument to the complex number at position i of re and im, in place.
+    private static void applyComplex(int op, double[] re, double[] im, int i, boolean approximate) {
+        double a = re[i];
+        double b = im[i];
+        switch (op) {
+            case NEG:
+                re[i] = -a;
+                im[i] = -b;
+                break;
+            case SQR:
+                re[i] = a * a - b * b;
+                im[i] = 2 * a * b;
+                break;
+            case SQRT: {
+                double modulus = Math.hypot(a, b);
+                re[i] = Math.sqrt((modulus + a) / 2);
+                im[i] = Math.copySign(Math.sqrt((modulus - a) / 2), b);
+                break;
+            }
+            case ABS:
+                re[i] = Math.hypot(a, b);
+                im[i] = 0.0;
+                break;
+            case EXP: {
+                double modulus = Math.exp(a);
+                re[i] = modulus * cos(b, approximate);
+                im[i] = b == 0 ? 0.0 : modulus * sin(b, approximate);
+                break;
+            }
+            case LN:
+                re[i] = Math.log(Math.hypot(a, b));
+                im[i] = atan2(b, a, approximate);
+                break;
+            case LOG:
+                re[i] = Math.log(Math.hypot(a, b)) / Math.log(10);
+                im[i] = atan2(b, a, approximate) / Math.log(10);
+                break;
+            case SIN:
+                re[i] = sin(a, approximate) * cosh(b);
+                im[i] = cos(a, approximate) * sinh(b);
+                break;
+            case COS:
+                re[i] = cos(a, approximate) * cosh(b);
+                im[i] = -sin(a, approximate) * sinh(b);
+                break;
+            case COSEC:
+                re[i] = sin(a, approximate) * cosh(b);
+                im[i] = cos(a, approximate) * sinh(b);
+                reciprocal(re, im, i);
+                break;
+            case SEC:
+                re[i] = cos(a, approximate) * cosh(b);
+                im[i] = -sin(a, approximate) * sinh(b);
+                reciprocal(re, im, i);
+                break;
+            case TAN:
+            case COT:
+                // tan(a + bi) = (sin 2a + i sinh 2b) / (cos 2a + cosh 2b), which tends to i or -i far from
+                // the real axis, where cosh would overflow.
+                if (Math.abs(b) > 20) {
+                    re[i] = 0.0;
+                    im[i] = Math.copySign(1.0, b);
+                } else {
+                    double denominator = cos(2 * a, approximate) + cosh(2 * b);
+                    re[i] = sin(2 * a, approximate) / denominator;
+                    im[i] = sinh(2 * b) / denominator;
+                }
+                if (op == COT) {
+                    reciprocal(re, im, i);
+                }
+                break;
+            default:
+                // A real function, of a real number only.
+                re[i] = b != 0 ? Double.NaN : approximate ? applyApproximately(op, a) : apply(op, a);
+                im[i] = b == 0 ? 0.0 : Double.NaN;
+                break;
+        }
+    }
+
+    // The functions of real numbers that complex ones are made of, approximately where ApproximateMath is
+    // faster.  cosh and sinh are worked out from exp, which is an intrinsic and much faster than Math.cosh()
+    // and Math.sinh(), except where sinh would lose precision by subtracting two numbers close to 1.
+    private static double sin(double x, boolean approximate) {
+        return approximate ? ApproximateMath.sin(x) : Math.sin(x);
+    }
+
+    private static double cos(double x, boolean approximate) {
+        return approximate ? ApproximateMath.cos(x) : Math.cos(x);
+    }
+
+    private static double atan2(double y, double x, boolean approximate) {
+        return approximate ? ApproximateMath.atan2(y, x) : Math.atan2(y, x);
+    }
+
+    private static double cosh(double x) {
+        double e = Math.exp(x);
+        return (e + 1 / e) / 2;
+    }
+
+    private static double sinh(double x) {
+        if (Math.abs(x) < 0.5) {
+            return Math.sinh(x);
+        }
+        double e = Math.exp(x);
+        return (e - 1 / e) / 2;
+    }
+
+    // Divides the complex number at position i of re and im by c + di, in place, scaling so that neither
+    // overflows (Smith's method).
+    private static void divide(double[] re, double[] im, int i, double c, double d) {
+        double a = re[i];
+        double b = im[i];
+        if (Math.abs(c) >= Math.abs(d)) {
+            double r = d / c;
+            double denominator = c + d * r;
+            re[i] = (a + b * r) / denominator;
+            im[i] = (b - a * r) / denominator;
+        } else {
+            double r = c / d;
+            double denominator = c * r + d;
+            re[i] = (a * r + b) / denominator;
+            im[i] = (b * r - a) / denominator;
+        }
+    }
+
+    // Replaces the complex number at position i of re and im by its reciprocal.
+    private static void reciprocal(double[] re, double[] im, int i) {
+        double a = re[i];
+        double b = im[i];
+        re[i] = 1.0;
+        im[i] = 0.0;
+        divide(re, im, i, a, b);
+    }
+
+    // Raises the complex number at position i of re and im to the power c + di, in place.  A whole power is
+    // worked out by multiplying, so it is exact where it can be, and defined at 0.
+    private static void power(double[] re, double[] im, int i, double c, double d, boolean approximate) {
+        double a = re[i];
+        double b = im[i];
+        if (d == 0 && c == Math.rint(c) && Math.abs(c) <= 1024) {
+            long n = Math.abs((long) c);
+            double resultRe = 1.0;
+            double resultIm = 0.0;
+            while (n > 0) {
+                if ((n & 1) != 0) {
+                    double r = resultRe * a - resultIm * b;
+                    resultIm = resultRe * b + resultIm * a;
+                    resultRe = r;
+                }
+                double r = a * a - b * b;
+                b = 2 * a * b;
+                a = r;
+                n >>= 1;
+            }
+            re[i] = resultRe;
+            im[i] = resultIm;
+            if (c < 0) {
+                reciprocal(re, im, i);
+            }
+            return;
+        }
+        if (a == 0 && b == 0) {
+            re[i] = c > 0 ? 0.0 : Double.NaN;
+            im[i] = c > 0 ? 0.0 : Double.NaN;
+            return;
+        }
+        // z^w = exp(w ln z).
+        double lnModulus = Math.log(Math.hypot(a, b));
+        double argument = atan2(b, a, approximate);
+        double modulus = Math.exp(c * lnModulus - d * argument);
+        double angle = c * argument + d * lnModulus;
+        re[i] = modulus * cos(angle, approximate);
+        im[i] = modulus * sin(angle, approximate);
+    }
+
+    // Applies a function of one argument to each of the first length values of an array.
+    private static void applyBlock(int op, double[] a, int length, boolean approximate) {
+        switch (op) {
+            case SQR:
+                for (int i = 0; i < length; ++i) {
+                    a[i] = a[i] * a[i];
+                }
+                break;
+            case SQRT:
+                for (int i = 0; i < length; ++i) {
+                    a[i] = Math.sqrt(a[i]);
+                }
+                break;
+            case FLOOR:
+                for (int i = 0; i < length; ++i) {
+                    a[i] = Math.floor(a[i]);
+                }
+                break;
+            case CEIL:
+                for (int i = 0; i < length; ++i) {
+                    a[i] = Math.ceil(a[i]);
+                }
+                break;
+            case ABS:
+                for (int i = 0; i < length; ++i) {
+                    a[i] = Math.abs(a[i]);
+                }
+                break;
+            case NEG:
+                for (int i = 0; i < length; ++i) {
+                    a[i] = -a[i];
+                }
+                break;
+            default:
+                if (approximate) {
+                    for (int i = 0; i < length; ++i) {
+                        a[i] = applyApproximately(op, a[i]);
+                    }
+                } else {
+                    for (int i = 0; i < length; ++i) {
+                        a[i] = apply(op, a[i]);
+                    }
+                }
+                break;
+        }
+    }
+
+    // Applies a function of one argument.
+    static double apply(int op, double x) {
+        switch (op) {
+            case COS:   return Math.cos(x);
+            case SIN:   return Math.sin(x);
+            case TAN:   return Math.tan(x);
+            case SEC:   return 1.0 / Math.cos(x);
+            case COSEC: return 1.0 / Math.sin(x);
+            case COT:   return 1.0 / Math.tan(x);
+            case ACOS:  return Math.acos(x);
+            case ASIN:  return Math.asin(x);
+            case ATAN:  return Math.atan(x);
+            case SQR:   return x * x;
+            case SQRT:  return Math.sqrt(x);
+            case LOG:   return Math.log10(x);
+            case LN:    return Math.log(x);
+            case EXP:   return Math.exp(x);
+            case FLOOR: return Math.floor(x);
+            case CEIL:  return Math.ceil(x);
+            case ABS:   return Math.abs(x);
+            case NEG:   return -x;
+            case RND:   return Math.random() * x;
+            default:    return Double.NaN;
+        }
+    }
+
+    // Applies a function of one argument, approximately where ApproximateMath is faster.
+    static double applyApproximately(int op, double x) {
+        switch (op) {
+            case COS:   return ApproximateMath.cos(x);
+            case SIN:   return ApproximateMath.sin(x);
+            case TAN:   return ApproximateMath.tan(x);
+            case SEC:   return 1.0 / ApproximateMath.cos(x);
+            case COSEC: return 1.0 / ApproximateMath.sin(x);
+            case COT:   return 1.0 / ApproximateMath.tan(x);
+            case LOG:   return ApproximateMath.log10(x);
+            default:    return apply(op, x);
+        }
+    }
+
+    // Same test as MathEvaluator uses to find asymptotes and holes.
+    private static boolean isZero(double value) {
+        return Math.abs(value) < 0.01;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    /** A part of the expression: an instruction, and the parts that compute its operands. */
+    private static final class Subtree {
+        private static final Subtree[] NONE = new Subtree[0];
+
+        final int index;            // position among the parts, in the order their last instructions run
+        final int start;            // position of the first instruction in the program
+        final int end;              // position after the last instruction
+        final long dependencies;    // bits of the variables it depends on, and RANDOM if it uses rnd()
+        final Subtree[] operands;
+
+        Subtree(int index, int start, int end, long dependencies, Subtree[] operands) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+            this.dependencies = dependencies;
+            this.operands = operands;
+        }
+
+        /** Whether it is a number or a variable. */
+        boolean isLeaf() {
+            return operands.length == 0;
+        }
+
+        /** Finds the parts of a program. */
+        static Subtree[] parse(int[] code) {
+            List<Subtree> all = new ArrayList<>();
+            Subtree[] stack = new Subtree[code.length];
+            int top = -1;
+            int pc = 0;
+            while (pc < code.length) {
+                int start = pc;
+                int op = code[pc++];
+                Subtree subtree;
+                if (op == CONSTANT) {
+                    ++pc;
+                    subtree = new Subtree(all.size(), start, pc, 0, NONE);
+                } else if (op == VARIABLE) {
+                    subtree = new Subtree(all.size(), start, pc + 1, bit(code[pc]), NONE);
+                    ++pc;
+                } else {
+                    int count = isBinary(op) ? 2 : 1;
+                    Subtree[] operands = new Subtree[count];
+                    long dependencies = op == RND ? RANDOM : 0;
+                    for (int i = count - 1; i >= 0; --i) {
+                        operands[i] = stack[top--];
+                        dependencies |= operands[i].dependencies;
+                    }
+                    subtree = new Subtree(all.size(), operands[0].start, pc, dependencies, operands);
+                }
+                all.add(subtree);
+                stack[++top] = subtree;
+            }
+            return all.toArray(NONE);
+        }
+
+        private static boolean isBinary(int op) {
+            return (op >= ADD && op <= MODULO) || op == MIN || op == MAX;
+        }
+    }
+
+    /** The program run by the batch evaluator for one batch, and the values it refers to. */
+    private static final class Program {
+        final Cache cache;          // null if nothing is kept
+        final long changed;         // bits of the variables changed since the cache was filled
+        int[] code = new int[16];
+        int length;
+        double[] hoisted = new double[4];
+        byte[] hoistedFlags = new byte[4];
+        int hoistedCount;
+        int nesting;                // number of parts to be kept
+        int[] stored = new int[4];  // the slots they are kept in
+        int storedCount;
+
+        Program(Cache cache, long changed) {
+            this.cache = cache;
+            this.changed = changed;
+        }
+
+        void emit(int value) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, 2 * length);
+            }
+            code[length++] = value;
+        }
+
+        /** Adds a value worked out once for the batch, and returns its slot. */
+        int hoist(double value, byte flag) {
+            if (hoistedCount == hoisted.length) {
+                hoisted = Arrays.copyOf(hoisted, 2 * hoistedCount);
+                hoistedFlags = Arrays.copyOf(hoistedFlags, 2 * hoistedCount);
+            }
+            hoisted[hoistedCount] = value;
+            hoistedFlags[hoistedCount] = flag;
+            return hoistedCount++;
+        }
+
+        /** Notes a slot of the cache filled by the program, and makes room in it. */
+        void store(int slot) {
+            cache.reserve(slot);
+            if (storedCount == stored.length) {
+                stored = Arrays.copyOf(stored, 2 * storedCount);
+            }
+            stored[storedCount++] = slot;
+        }
+    }
+
+    /**
+     * Keeps the values of parts of an expression over one set of values of a variable, so that evaluating
+     * them again with other variables changed computes only what those changes affect.  Parts are kept from
+     * the second batch over the same values on, so a cache costs nothing but a comparison where the values
+     * never repeat.  A cache is not safe for use by several threads at once.
+     */
+    public static final class Cache {
+        private CompiledExpression expression;
+        private int variable;
+        private double[] xs;            // the values of the variable, as last evaluated
+        private double[] last;          // the values of all the variables, as last evaluated
+        private boolean repeated;       // whether the last batch was over the same values as the one before
+        private long changed;           // bits of the variables changed since the last batch
+        private boolean withFlags;      // whether the batch finds continuities
+        double[][] values;              // the values of each part kept, by the index of the part
+        byte[][] flags;                 // the codes of their continuities
+        private boolean[] kept;         // whether each part is kept, over all of xs
+        private boolean[] keptFlags;    // whether the codes of its continuities are kept too
+
+        /** Forgets everything kept. */
+        public void clear() {
+            expression = null;
+            xs = null;
+            last = null;
+            repeated = false;
+        }
+
+        /**
+         * Gets ready for a batch, and finds the variables that changed since the last one.
+         * @return Whether parts are to be kept or reused in this batch.
+         */
+        boolean prepare(CompiledExpression expression, int variable, double[] xs, double[] values,
+                        boolean withFlags) {
+            boolean same = expression == this.expression && variable == this.variable
+                    && Arrays.equals(xs, this.xs);
+            if (!same) {
+                this.expression = expression;
+                this.variable = variable;
+                this.xs = copy(xs, this.xs);
+                this.last = copy(values, last);
+                repeated = false;
+                return false;
+            }
+            if (!repeated) {
+                repeated = true;
+                int count = expression.subtrees.length;
+                this.values = new double[count][];
+                flags = new byte[count][];
+                kept = new boolean[count];
+                keptFlags = new boolean[count];
+            }
+            changed = RANDOM;
+            for (int i = 0; i < values.length; ++i) {
+                if (i != variable && Double.doubleToLongBits(values[i]) != Double.doubleToLongBits(last[i])) {
+                    changed |= bit(i);
+                }
+            }
+            System.arraycopy(values, 0, last, 0, values.length);
+            this.withFlags = withFlags;
+            return true;
+        }
+
+        // Copies values into an array, reusing it if it is the right size.
+        private static double[] copy(double[] values, double[] array) {
+            if (array == null || array.length != values.length) {
+                return values.clone();
+            }
+            System.arraycopy(values, 0, array, 0, values.length);
+            return array;
+        }
+
+        /** Whether the values of a part are kept, with the codes of their continuities if they are wanted. */
+        boolean isKept(int index) {
+            return kept[index] && (keptFlags[index] || !withFlags);
+        }
+
+        /** Makes room to keep the values of a part, which the batch then fills. */
+        void reserve(int index) {
+            kept[index] = false;
+            if (values[index] == null) {
+                values[index] = new double[xs.length];
+            }
+            if (withFlags && flags[index] == null) {
+                flags[index] = new byte[xs.length];
+            }
+        }
+
+        /** Notes that the batch has filled the given parts. */
+        void stored(int[] slots, int count) {
+            for (int i = 0; i < count; ++i) {
+                kept[slots[i]] = true;
+                keptFlags[slots[i]] = withFlags;
+            }
+        }
+    }
+
+    /** Builds the program while MathEvaluator walks the tree of the expression. */
+    static class Builder {
+        private final String expression;
+        private int[] code = new int[16];
+        private int length;
+        private final List<Double> constants = new ArrayList<>();
+        private final List<String> variables = new ArrayList<>();
+        private int depth;
+        private int maxStack;
+        private boolean rationalPolynomial = true;
+
+        Builder(String expression) {
+            this.expression = expression;
+        }
+
+        /** Pushes a number. */
+        void constant(double value) {
+            emit(CONSTANT);
+            emit(constants.size());
+            constants.add(value);
+            push(1);
+        }
+
+        /** Pushes the value of a variable. */
+        void variable(String name) {
+            int index = variables.indexOf(name);
+            if (index < 0) {
+                index = variables.size();
+                variables.add(name);
+            }
+            emit(VARIABLE);
+            emit(index);
+            push(1);
+        }
+
+        /**
+         * Applies an operator to the values on top of the stack.
+         * @param operator The operator, as MathEvaluator names it.
+         * @param operands Number of values it takes.
+         */
+        void operator(String operator, int operands) throws Exception {
+            int op = getOpcode(operator);
+            if (op < 0) {
+                throw new Exception("Unknown operator [" + operator + "] in [" + expression + "]");
+            }
+            if (!("+".equals(operator) || "-".equals(operator) || "*".equals(operator)
+                    || "/".equals(operator) || "^".equals(operator))) {
+                rationalPolynomial = false;
+            }
+            emit(op);
+            push(1 - operands);
+        }
+
+        CompiledExpression build() {
+            double[] c = new double[constants.size()];
+            for (int i = 0; i < c.length; ++i) {
+                c[i] = constants.get(i);
+            }
+            return new CompiledExpression(expression, Arrays.copyOf(code, length), c,
+                    variables.toArray(new String[0]), Math.max(1, maxStack), rationalPolynomial, false);
+        }
+
+        private void emit(int value) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, 2 * length);
+            }
+            code[length++] = value;
+        }
+
+        private void push(int count) {
+            depth += count;
+            maxStack = Math.max(maxStack, depth);
+        }
+
+        private static int getOpcode(String operator) {
+            switch (operator) {
+                case "+":     return ADD;
+                case "-":     return SUBTRACT;
+                case "*":     return MULTIPLY;
+                case "/":     return DIVIDE;
+                case "^":     return POWER;
+                case "%":     return MODULO;
+                case "&":     return ADD;   // todo, as in MathEvaluator
+                case "|":     return ADD;   // todo, as in MathEvaluator
+                case "cos":   return COS;
+                case "sin":   return SIN;
+                case "tan":   return TAN;
+                case "sec":   return SEC;
+                case "cosec": return COSEC;
+                case "cot":   return COT;
+                case "acos":  return ACOS;
+                case "asin":  return ASIN;
+                case "atan":  return ATAN;
+                case "sqr":   return SQR;
+                case "sqrt":  return SQRT;
+                case "log":   return LOG;
+                case "ln":    return LN;
+                case "min":   return MIN;
+                case "max":   return MAX;
+                case "exp":   return EXP;
+                case "floor": return FLOOR;
+                case "ceil":  return CEIL;
+                case "abs":   return ABS;
+                case "neg":   return NEG;
+                case "rnd":   return RND;
+                default:      return -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package geometry2D;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.CRC32;
+
+/**
+ * A cache of computed results kept on disk between runs, such as compiled expressions and sampled series,
+ * so that a batch job plotting the same expressions over the same ranges again skips the work.
+ *
+ * The cache is off unless the JVM is started with -Dgeometry2D.cache=directory, and stays off if the
+ * directory cannot be created.  It is best-effort: an entry that cannot be read or written is a miss, as
+ * the data can always be computed again.  Its size is capped at -Dgeometry2D.cacheMegabytes (256 by
+ * default); when it grows beyond that, the least recently used entries are deleted.
+ *
+ * Each entry is a file named after a hash of its key, and is read by mapping it into memory.  It holds a
+ * header with the format version, the key itself, the data and a CRC-32 of all of them.  An entry that is
+ * truncated, fails its CRC, was written by another version or belongs to another key is deleted and
+ * reported as missing, so a damaged cache costs one recomputation.  Entries are written to a temporary
+ * file and renamed into place, so a reader never sees one half written, even from another process.
+ *
+ * @author vishakh.nair
+ */
+public final class DiskCache {
+
+    /** Version of the format of the entries.  Entries of other versions are discarded. */
+    public static final int VERSION = 1;
+
+    // First bytes of every entry: "GCDC".
+    private static final int MAGIC = 0x47434443;
+
+    // Size of the header (magic, version, key length, data length) and of the CRC at the end.
+    private static final int HEADER_BYTES = 16;
+    private static final int CRC_BYTES = 8;
+
+    private static final String SUFFIX = ".entry";
+
+    private static final long DEFAULT_MAX_MEGABYTES = 256;
+
+    // The cache configured by the system properties, or null.
+    private static final DiskCache SHARED = open();
+
+    private final File directory;
+    private final long maxBytes;
+
+    // Total size of the entries, counted when the cache is opened and kept up to date by this process.
+    private long size = -1;
+
+    /**
+     * Opens a cache in a directory, creating it if needed.
+     * @param directory The directory holding the entries.
+     * @param maxBytes The largest total size of the entries.
+     * @throws IOException If the directory cannot be created.
+     */
+    public DiskCache(File directory, long maxBytes) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /** Returns the cache set up by the system properties, or null if there is none. */
+    public static DiskCache get() {
+        return SHARED;
+    }
+
+    private static DiskCache open() {
+        String directory = System.getProperty("geometry2D.cache");
+        if (directory == null || directory.isEmpty()) {
+            return null;
+        }
+        long megabytes = Long.getLong("geometry2D.cacheMegabytes", DEFAULT_MAX_MEGABYTES);
+        try {
+            return new DiskCache(new File(directory), megabytes << 20);
+        } catch (IOException e) {
+            // Without the directory, every lookup would miss anyway.
+            return null;
+        }
+    }
+
+    /**
+     * Returns the data kept under a key.
+     * @param key The key.
+     * @return The data, read-only and positioned at its start, or null if there is no valid entry.
+     */
+    public synchronized ByteBuffer get(String key) {
+        File file = getFile(key);
+        if (!file.isFile()) {
+            if (CalculatorMetrics.ENABLED) {
+                CalculatorMetrics.get().diskCacheLookup(false);
+            }
+            return null;
+        }
+        ByteBuffer data = null;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer entry = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+            data = check(entry, key.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // Unreadable: treated like a damaged entry.
+        }
+        if (CalculatorMetrics.ENABLED) {
+            CalculatorMetrics.get().diskCacheLookup(data != null);
+        }
+        if (data == null) {
+            remove(file);
+            return null;
+        }
+        // Entries are evicted in order of last use.
+        file.setLastModified(System.currentTimeMillis());
+        return data;
+    }
+
+    /**
+     * Keeps data under a key, replacing what was kept under it before, and evicts old entries if the cache
+     * has grown too large.  Failures to write are ignored, as the data can always be computed again.
+     * @param key The key.
+     * @param data The data, from its position to its limit.
+     */
+    public synchronized void put(String key, ByteBuffer data) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer entry = ByteBuffer.allocate(HEADER_BYTES + keyBytes.length + data.remaining() + CRC_BYTES);
+        entry.putInt(MAGIC).putInt(VERSION).putInt(keyBytes.length).putInt(data.remaining());
+        entry.put(keyBytes).put(data.duplicate());
+        CRC32 crc = new CRC32();
+        crc.update(entry.array(), 0, entry.position());
+        entry.putLong(crc.getValue());
+
+        File file = getFile(key);
+        try {
+            File temporary = File.createTempFile("entry", ".tmp", directory);
+            try {
+                Files.write(temporary.toPath(), entry.array());
+                long replaced = file.length();
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                size = getSize() - replaced + entry.capacity();
+            } finally {
+                temporary.delete();
+            }
+        } catch (IOException e) {
+            // Not kept, so the next lookup misses and the data is computed again.
+            return;
+        }
+        if (size > maxBytes) {
+            evict();
+        }
+    }
+
+    /** Deletes the entry kept under a key, if any. */
+    public synchronized void remove(String key) {
+        remove(getFile(key));
+    }
+
+    /** Deletes all the entries. */
+    public synchronized void clear() {
+        for (File file : listEntries()) {
+            file.delete();
+        }
+        size = 0;
+    }
+
+    /** Returns the total size of the entries, in bytes. */
+    public synchronized long getSize() {
+        if (size < 0) {
+            size = 0;
+            for (File file : listEntries()) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    // Returns the data of an entry if it is whole and belongs to the key, and null otherwise.
+    private static ByteBuffer check(ByteBuffer entry, byte[] key) {
+        if (entry.capacity() < HEADER_BYTES + CRC_BYTES || entry.getInt(0) != MAGIC || entry.getInt(4) != VERSION
+                || entry.getInt(8) != key.length) {
+            return null;
+        }
+        int dataLength = entry.getInt(12);
+        int end = HEADER_BYTES + key.length + dataLength;
+        if (dataLength < 0 || end != entry.capacity() - CRC_BYTES) {
+            return null;
+        }
+        byte[] storedKey = new byte[key.length];
+        entry.position(HEADER_BYTES);
+        entry.get(storedKey);
+        if (!Arrays.equals(storedKey, key)) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        entry.position(0).limit(end);
+        crc.update(entry);
+        if (crc.getValue() != entry.limit(entry.capacity()).getLong(end)) {
+            return null;
+        }
+        return entry.position(HEADER_BYTES + key.length).limit(end).slice().asReadOnlyBuffer();
+    }
+
+    // Deletes the least recently used entries until the cache is within its size.
+    private void evict() {
+        File[] files = listEntries();
+        long[] lastUsed = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        long total = 0;
+        for (int i = 0; i < files.length; ++i) {
+            lastUsed[i] = files[i].lastModified();
+            order[i] = i;
+            total += files[i].length();
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> lastUsed[i]));
+        for (int i = 0; i < order.length && total > maxBytes; ++i) {
+            File file = files[order[i]];
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+        size = total;
+    }
+
+    private void remove(File file) {
+        long length = file.length();
+        if (file.delete() && size >= 0) {
+            size -= length;
+        }
+    }
+
+    private File[] listEntries() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        return files == null ? new File[0] : files;
+    }
+
+    // The file of an entry: the SHA-256 of its key, in hexadecimal.
+    private File getFile(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : hash) {
+                name.append(String.format("%02x", b));
+            }
+            return new File(directory, name.append(SUFFIX).toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package geometry2D;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for evaluating an expression at many values of a variable.
+ *
+ * @author vishakh.nair
+ */
+@Name("geometry2D.EvaluateBatch")
+@Label("Evaluate Batch")
+@Category({"Graphing Calculator", "Evaluator"})
+@Description("An expression evaluated at a batch of values")
+class EvaluateBatchEvent extends Event {
+
+    @Label("Expression")
+    String expression;
+
+    @Label("Sample Count")
+    int sampleCount;
+}
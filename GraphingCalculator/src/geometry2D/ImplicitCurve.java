@@ -0,0 +1,398 @@
+package geometry2D;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A curve given by an equation in x and y, such as x^2 + y^2 = 4 or sin(x*y) = 0.5, traced by marching squares.
+ *
+ * The window is divided into tiles, which are traced in parallel on the common fork/join pool.  In each tile,
+ * the function (left side - right side) is evaluated at the corners and the centers of a coarse grid of cells,
+ * a row of points at a time with the batch evaluator.  Only a cell where the function changes sign is divided
+ * into four, again and again down to the size of a pixel, where the crossing is found by marching squares.
+ * So the work grows with the length of the curve rather than with the area of the window.  A crossing where
+ * the function jumps across an asymptote, rather than passing through zero, is left out.
+ *
+ * @author vishakh.nair
+ */
+public class ImplicitCurve {
+
+    /** The line segments of a traced curve. */
+    public static class Contour {
+        private final double[] segments;
+        private final int count;
+        private final long evaluations;
+
+        Contour(double[] segments, int count, long evaluations) {
+            this.segments = segments;
+            this.count = count;
+            this.evaluations = evaluations;
+        }
+
+        /** Number of line segments. */
+        public int getSegmentCount() {
+            return count;
+        }
+
+        /**
+         * The line segments, four values each: x1, y1, x2, y2.  Only the first 4 * getSegmentCount() values
+         * are used.
+         */
+        public double[] getSegments() {
+            return segments;
+        }
+
+        /** Number of times the function was evaluated. */
+        public long getEvaluations() {
+            return evaluations;
+        }
+    }
+
+    // Size of a cell of the coarse grid, in pixels.  A curve that enters and leaves a cell between the
+    // corners and the center may be missed, so this is the smallest loop that is always found.
+    private static final int CELL_PIXELS = 8;
+
+    // Size of a tile, in cells of the coarse grid.
+    private static final int TILE_CELLS = 16;
+
+    // Value at one end of an edge, as a fraction of that at the other, below which it may be zero but for rounding.
+    private static final double ROUNDING = 1e-9;
+
+    private final String equation;
+    private final CompiledExpression function;
+    private final int xIndex;
+    private final int yIndex;
+
+    /**
+     * Compiles an equation.
+     * @param equation The equation, such as "x^2 + y^2 = 4".  An expression without "=" is taken as equal to 0.
+     * @throws IllegalArgumentException If the equation cannot be parsed.
+     */
+    public ImplicitCurve(String equation) {
+        this.equation = equation;
+        try {
+            function = new MathEvaluator(toFunction(equation)).compile();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Cannot parse [" + equation + "]", e);
+        }
+        xIndex = function.getVariableIndex("x");
+        yIndex = function.getVariableIndex("y");
+    }
+
+    /** Whether an expression is an equation to be plotted as an implicit curve. */
+    public static boolean isImplicit(String expression) {
+        return expression.indexOf('=') >= 0;
+    }
+
+    /** Rewrites "left = right" as the expression "(left) - (right)", which is zero on the curve. */
+    static String toFunction(String equation) {
+        int equals = equation.indexOf('=');
+        if (equals < 0) {
+            return equation;
+        }
+        return "(" + equation.substring(0, equals) + ") - (" + equation.substring(equals + 1) + ")";
+    }
+
+    /** The equation. */
+    public String getEquation() {
+        return equation;
+    }
+
+    /**
+     * Traces the curve.
+     * @param xLow The minimum value of x.
+     * @param xHigh The maximum value of x.
+     * @param yLow The minimum value of y.
+     * @param yHigh The maximum value of y.
+     * @param columns Width of the window, in pixels.  The curve is traced to this resolution.
+     * @param rows Height of the window, in pixels.
+     * @return The segments of the curve.
+     */
+    public Contour trace(double xLow, double xHigh, double yLow, double yHigh, int columns, int rows) {
+        return trace(xLow, xHigh, yLow, yHigh, columns, rows, false);
+    }
+
+    /**
+     * Traces the curve, optionally with the faster functions of ApproximateMath.
+     * @param xLow The minimum value of x.
+     * @param xHigh The maximum value of x.
+     * @param yLow The minimum value of y.
+     * @param yHigh The maximum value of y.
+     * @param columns Width of the window, in pixels.  The curve is traced to this resolution.
+     * @param rows Height of the window, in pixels.
+     * @param approximate Whether to evaluate the function approximately.
+     * @return The segments of the curve.
+     */
+    public Contour trace(double xLow, double xHigh, double yLow, double yHigh, int columns, int rows,
+                         boolean approximate) {
+        CompiledExpression f = approximate ? function.approximate() : function;
+        double dx = (xHigh - xLow) / Math.max(1, columns);
+        double dy = (yHigh - yLow) / Math.max(1, rows);
+        int cellColumns = (Math.max(1, columns) + CELL_PIXELS - 1) / CELL_PIXELS;
+        int cellRows = (Math.max(1, rows) + CELL_PIXELS - 1) / CELL_PIXELS;
+        int tileColumns = (cellColumns + TILE_CELLS - 1) / TILE_CELLS;
+        int tileRows = (cellRows + TILE_CELLS - 1) / TILE_CELLS;
+
+        Tile[] tiles = new Tile[tileColumns * tileRows];
+        for (int j = 0; j < tileRows; ++j) {
+            for (int i = 0; i < tileColumns; ++i) {
+                int firstColumn = i * TILE_CELLS;
+                int firstRow = j * TILE_CELLS;
+                tiles[j * tileColumns + i] = new Tile(f, xLow + firstColumn * CELL_PIXELS * dx,
+                        yLow + firstRow * CELL_PIXELS * dy, CELL_PIXELS * dx, CELL_PIXELS * dy, dx, dy,
+                        Math.min(TILE_CELLS, cellColumns - firstColumn), Math.min(TILE_CELLS, cellRows - firstRow));
+            }
+        }
+        ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tiles);
+            }
+        });
+
+        // Join the segments of the tiles, in order.
+        int count = 0;
+        long evaluations = 0;
+        for (Tile tile : tiles) {
+            count += tile.count;
+            evaluations += tile.evaluations;
+        }
+        double[] segments = new double[4 * count];
+        int length = 0;
+        for (Tile tile : tiles) {
+            System.arraycopy(tile.segments, 0, segments, length, 4 * tile.count);
+            length += 4 * tile.count;
+        }
+        return new Contour(segments, count, evaluations);
+    }
+
+    /** Traces the curve through a rectangle of cells of the coarse grid. */
+    private class Tile extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CompiledExpression function;
+        private final double x0;
+        private final double y0;
+        private final double cellWidth;
+        private final double cellHeight;
+        private final double pixelWidth;
+        private final double pixelHeight;
+        private final int cellColumns;
+        private final int cellRows;
+
+        // Values of all the variables, with x and y set for each point evaluated.
+        private final double[] values;
+
+        // The segments found, four values each.
+        private double[] segments = new double[64];
+        private int count;
+        private long evaluations;
+
+        Tile(CompiledExpression function, double x0, double y0, double cellWidth, double cellHeight, double pixelWidth, double pixelHeight,
+             int cellColumns, int cellRows) {
+            this.function = function;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.cellWidth = cellWidth;
+            this.cellHeight = cellHeight;
+            this.pixelWidth = pixelWidth;
+            this.pixelHeight = pixelHeight;
+            this.cellColumns = cellColumns;
+            this.cellRows = cellRows;
+            values = new double[function.getVariableCount()];
+            Arrays.fill(values, Double.NaN);
+        }
+
+        @Override
+        protected void compute() {
+            // The corners of the cells, and their centers, one row at a time.
+            double[] xs = new double[cellColumns + 1];
+            double[] centerXs = new double[cellColumns];
+            for (int i = 0; i <= cellColumns; ++i) {
+                xs[i] = x0 + i * cellWidth;
+                if (i < cellColumns) {
+                    centerXs[i] = xs[i] + 0.5 * cellWidth;
+                }
+            }
+            double[][] corners = new double[cellRows + 1][];
+            double[][] centers = new double[cellRows][];
+            for (int j = 0; j <= cellRows; ++j) {
+                corners[j] = evaluateRow(xs, y0 + j * cellHeight);
+                if (j < cellRows) {
+                    centers[j] = evaluateRow(centerXs, y0 + (j + 0.5) * cellHeight);
+                }
+            }
+
+            for (int j = 0; j < cellRows; ++j) {
+                for (int i = 0; i < cellColumns; ++i) {
+                    cell(xs[i], y0 + j * cellHeight, cellWidth, cellHeight,
+                            corners[j][i], corners[j][i + 1], corners[j + 1][i], corners[j + 1][i + 1], centers[j][i]);
+                }
+            }
+        }
+
+        // Evaluates the function along a row of points.
+        private double[] evaluateRow(double[] xs, double y) {
+            double[] results = new double[xs.length];
+            if (yIndex >= 0) {
+                values[yIndex] = y;
+            }
+            if (xIndex >= 0) {
+                function.evaluate(xIndex, xs, values, results, null);
+            } else {
+                Arrays.fill(results, function.evaluate(values));
+            }
+            evaluations += xs.length;
+            return results;
+        }
+
+        private double evaluate(double x, double y) {
+            if (xIndex >= 0) {
+                values[xIndex] = x;
+            }
+            if (yIndex >= 0) {
+                values[yIndex] = y;
+            }
+            ++evaluations;
+            return function.evaluate(values);
+        }
+
+        /**
+         * Traces the curve through a cell, dividing it into four while it is larger than a pixel.
+         * The values are at the corners, low and high x by low and high y, and at the center.
+         */
+        private void cell(double x, double y, double w, double h,
+                          double v00, double v10, double v01, double v11, double center) {
+            if (!changesSign(v00, v10, v01, v11, center)) {
+                return;
+            }
+            if (w <= pixelWidth * 1.5 && h <= pixelHeight * 1.5) {
+                march(x, y, w, h, v00, v10, v01, v11, center);
+                return;
+            }
+
+            double hw = 0.5 * w;
+            double hh = 0.5 * h;
+            double bottom = evaluate(x + hw, y);
+            double top = evaluate(x + hw, y + h);
+            double left = evaluate(x, y + hh);
+            double right = evaluate(x + w, y + hh);
+            cell(x, y, hw, hh, v00, bottom, left, center, evaluate(x + 0.5 * hw, y + 0.5 * hh));
+            cell(x + hw, y, hw, hh, bottom, v10, center, right, evaluate(x + 1.5 * hw, y + 0.5 * hh));
+            cell(x, y + hh, hw, hh, left, center, v01, top, evaluate(x + 0.5 * hw, y + 1.5 * hh));
+            cell(x + hw, y + hh, hw, hh, center, right, top, v11, evaluate(x + 1.5 * hw, y + 1.5 * hh));
+        }
+
+        /** Adds the segments where the curve crosses a cell the size of a pixel. */
+        private void march(double x, double y, double w, double h,
+                           double v00, double v10, double v01, double v11, double center) {
+            if (Double.isNaN(v00) || Double.isNaN(v10) || Double.isNaN(v01) || Double.isNaN(v11)) {
+                return;
+            }
+            int index = (v00 > 0 ? 1 : 0) | (v10 > 0 ? 2 : 0) | (v11 > 0 ? 4 : 0) | (v01 > 0 ? 8 : 0);
+            if (index == 0 || index == 15) {
+                return;
+            }
+
+            // The crossings on the four edges: bottom, right, top and left, and whether each is a zero.
+            double bx = x + w * fraction(v00, v10);
+            double ry = y + h * fraction(v10, v11);
+            double tx = x + w * fraction(v01, v11);
+            double ly = y + h * fraction(v00, v01);
+            boolean b = isZero(bx, y, x + 0.5 * w, y, v00, v10);
+            boolean r = isZero(x + w, ry, x + w, y + 0.5 * h, v10, v11);
+            boolean t = isZero(tx, y + h, x + 0.5 * w, y + h, v01, v11);
+            boolean l = isZero(x, ly, x, y + 0.5 * h, v00, v01);
+
+            switch (index) {
+                case 1: case 14: segment(x, ly, bx, y, l && b); break;
+                case 2: case 13: segment(bx, y, x + w, ry, b && r); break;
+                case 3: case 12: segment(x, ly, x + w, ry, l && r); break;
+                case 4: case 11: segment(tx, y + h, x + w, ry, t && r); break;
+                case 6: case 9:  segment(bx, y, tx, y + h, b && t); break;
+                case 7: case 8:  segment(x, ly, tx, y + h, l && t); break;
+                case 5:
+                    // Saddle: the low x, low y and the high x, high y corners are positive.
+                    if (center > 0) {
+                        segment(x, ly, tx, y + h, l && t);
+                        segment(bx, y, x + w, ry, b && r);
+                    } else {
+                        segment(x, ly, bx, y, l && b);
+                        segment(tx, y + h, x + w, ry, t && r);
+                    }
+                    break;
+                case 10:
+                    // Saddle: the high x, low y and the low x, high y corners are positive.
+                    if (center > 0) {
+                        segment(x, ly, bx, y, l && b);
+                        segment(tx, y + h, x + w, ry, t && r);
+                    } else {
+                        segment(x, ly, tx, y + h, l && t);
+                        segment(bx, y, x + w, ry, b && r);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * Checks the crossing on an edge whose ends have the given values.  An end that is exactly zero is the
+         * crossing itself, as where the curve passes through a corner of the grid.  Otherwise, where the function
+         * passes through zero, it is nearer zero at the crossing than at the ends.  Where it jumps across an
+         * asymptote, it is not, and there is no curve there.  An end that is zero but for rounding is told apart
+         * from an asymptote next to the other end by the middle of the edge, which has the sign of the other end
+         * only if the function passes through zero.
+         */
+        private boolean isZero(double x, double y, double middleX, double middleY, double a, double b) {
+            if (a == 0 || b == 0) {
+                return true;
+            }
+            if ((a > 0) == (b > 0)) {
+                return false;
+            }
+            double smaller = Math.min(Math.abs(a), Math.abs(b));
+            double larger = Math.max(Math.abs(a), Math.abs(b));
+            if (Math.abs(evaluate(x, y)) < smaller) {
+                return true;
+            }
+            if (!(smaller <= ROUNDING * larger)) {
+                return false;
+            }
+            double far = Math.abs(a) < Math.abs(b) ? b : a;
+            return (evaluate(middleX, middleY) > 0) == (far > 0);
+        }
+
+        /** Adds a segment, if both its ends are zeros of the function. */
+        private void segment(double x1, double y1, double x2, double y2, boolean zero) {
+            if (!zero) {
+                return;
+            }
+            if (4 * count + 4 > segments.length) {
+                segments = Arrays.copyOf(segments, 2 * segments.length);
+            }
+            segments[4 * count] = x1;
+            segments[4 * count + 1] = y1;
+            segments[4 * count + 2] = x2;
+            segments[4 * count + 3] = y2;
+            ++count;
+        }
+    }
+
+    // Whether the values that are numbers include both a positive one and one that is not.
+    private static boolean changesSign(double a, double b, double c, double d, double e) {
+        boolean positive = a > 0 || b > 0 || c > 0 || d > 0 || e > 0;
+        boolean negative = a <= 0 || b <= 0 || c <= 0 || d <= 0 || e <= 0;
+        return positive && negative;
+    }
+
+    // Where zero lies between two values, as a fraction of the way from the first to the second.
+    private static double fraction(double a, double b) {
+        if (a == b) {
+            return 0.5;
+        }
+        double t = a / (a - b);
+        return t < 0 ? 0 : (t > 1 ? 1 : t);
+    }
+}
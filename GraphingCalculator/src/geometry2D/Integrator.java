@@ -0,0 +1,285 @@
+package geometry2D;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Numerical integration by adaptive Gauss-Kronrod quadrature.
+ *
+ * The interval is split into a few pieces per core, which are integrated in parallel on the common
+ * fork/join pool.  Each subinterval is integrated with the 7-point Gauss and the 15-point Kronrod rules,
+ * and the difference between the two is taken as its error.  Within a piece, the subinterval with the
+ * largest error is bisected until the total error is within the piece's share of the tolerance, or the
+ * piece has been split into MAX_SUBINTERVALS subintervals.  The rules never evaluate the function at the
+ * ends of a subinterval, so integrable singularities at the end points, such as 1/sqrt(x) at 0, are
+ * handled by bisecting towards them.
+ *
+ * @author vishakh.nair
+ */
+public class Integrator {
+
+    /** The integral and how accurate it is. */
+    public static class Result {
+        private final double value;
+        private final double error;
+        private final long evaluations;
+
+        Result(double value, double error, long evaluations) {
+            this.value = value;
+            this.error = error;
+            this.evaluations = evaluations;
+        }
+
+        /** The value of the integral. */
+        public double getValue() {
+            return value;
+        }
+
+        /** An estimate of the absolute error of the value. */
+        public double getError() {
+            return error;
+        }
+
+        /** Number of times the function was evaluated. */
+        public long getEvaluations() {
+            return evaluations;
+        }
+
+        Result plus(Result other) {
+            return new Result(value + other.value, error + other.error, evaluations + other.evaluations);
+        }
+    }
+
+    // Nodes of the 15-point Kronrod rule on [-1, 1], from the outermost to the center.
+    // The odd ones are also the nodes of the 7-point Gauss rule.
+    private static final double[] XGK = {
+            0.991455371120812639206854697526329,
+            0.949107912342758524526189684047851,
+            0.864864423359769072789712788640926,
+            0.741531185599394439863864773280788,
+            0.586087235467691130294144845693013,
+            0.405845151377397166906606412076961,
+            0.207784955007898467600689403773245,
+            0.000000000000000000000000000000000
+    };
+
+    // Weights of the 15-point Kronrod rule.
+    private static final double[] WGK = {
+            0.022935322010529224963732008058970,
+            0.063092092629978553290700663189204,
+            0.104790010322250183839876322541518,
+            0.140653259715525918745189590510238,
+            0.169004726639267902826583426598550,
+            0.190350578064785409913256402421014,
+            0.204432940075298892414161999234649,
+            0.209482141084727828012999174891714
+    };
+
+    // Weights of the 7-point Gauss rule, for the nodes XGK[1], XGK[3], XGK[5] and XGK[7].
+    private static final double[] WG = {
+            0.129484966168869693270611432679082,
+            0.279705391489276667901467771423780,
+            0.381830050505118944950369775488975,
+            0.417959183673469387755102040816327
+    };
+
+    // Maximum number of subintervals each piece of the interval is bisected into.
+    private static final int MAX_SUBINTERVALS = 200;
+
+    // Number of subintervals per core the interval is split into before integrating.
+    private static final int PIECES_PER_CORE = 4;
+
+    private Integrator() {
+    }
+
+    /**
+     * Integrates an expression in x over an interval.
+     * @param expression The expression.
+     * @param a The lower limit.
+     * @param b The upper limit.
+     * @param tolerance The absolute error allowed.
+     * @return The integral.
+     */
+    public static Result integrate(String expression, double a, double b, double tolerance) {
+        return integrate(function(expression, "x"), a, b, tolerance);
+    }
+
+    /**
+     * Integrates a function over an interval.
+     * @param f The function.  It is called from several threads at once.
+     * @param a The lower limit.
+     * @param b The upper limit.
+     * @param tolerance The absolute error allowed.
+     * @return The integral.
+     */
+    public static Result integrate(DoubleUnaryOperator f, double a, double b, double tolerance) {
+        if (a == b) {
+            return new Result(0.0, 0.0, 0);
+        }
+        if (a > b) {
+            Result r = integrate(f, b, a, tolerance);
+            return new Result(-r.value, r.error, r.evaluations);
+        }
+        int pieces = Math.max(1, ForkJoinPool.getCommonPoolParallelism()) * PIECES_PER_CORE;
+        return ForkJoinPool.commonPool().invoke(new IntegrationTask(f, a, b, tolerance, pieces));
+    }
+
+    /**
+     * Returns an expression as a function of one variable, that may be called from several threads at once.
+     * The value is NaN where the expression cannot be evaluated.
+     * @param expression The expression.
+     * @param variable The name of the variable.
+     */
+    public static DoubleUnaryOperator function(final String expression, final String variable) {
+        return function(expression, variable, Collections.<String, Double>emptyMap());
+    }
+
+    /**
+     * Returns an expression as a function of one variable, with the others set to the given values, that may
+     * be called from several threads at once.  The value is NaN where the expression cannot be evaluated.
+     * @param expression The expression.
+     * @param variable The name of the variable.
+     * @param values The values of the other variables, by name.
+     */
+    public static DoubleUnaryOperator function(final String expression, final String variable,
+                                               final Map<String, Double> values) {
+        final Map<String, Double> bound = new HashMap<>(values);
+        final ThreadLocal<MathEvaluator> evaluators = ThreadLocal.withInitial(() -> {
+            MathEvaluator m = new MathEvaluator(expression);
+            for (Map.Entry<String, Double> value : bound.entrySet()) {
+                m.addVariable(value.getKey(), value.getValue());
+            }
+            return m;
+        });
+        return x -> {
+            MathEvaluator m = evaluators.get();
+            m.addVariable(variable, x);
+            Double value = m.getValue();
+            return value == null ? Double.NaN : value;
+        };
+    }
+
+    /**
+     * Returns the derivative of a function, computed by central differences.
+     * @param f The function.
+     * @param h The distance on either side of x at which f is evaluated.
+     */
+    public static DoubleUnaryOperator derivative(final DoubleUnaryOperator f, final double h) {
+        return x -> (f.applyAsDouble(x + h) - f.applyAsDouble(x - h)) / (2.0 * h);
+    }
+
+    /** Integrates f over [a, b] with the Gauss-Kronrod rules, and estimates the error. */
+    static Result kronrod(DoubleUnaryOperator f, double a, double b) {
+        double center = 0.5 * (a + b);
+        double halfLength = 0.5 * (b - a);
+
+        double fCenter = f.applyAsDouble(center);
+        double kronrod = fCenter * WGK[7];
+        double gauss = fCenter * WG[3];
+        for (int i = 0; i < 7; ++i) {
+            double dx = halfLength * XGK[i];
+            double sum = f.applyAsDouble(center - dx) + f.applyAsDouble(center + dx);
+            kronrod += WGK[i] * sum;
+            if (i % 2 == 1) {
+                gauss += WG[i / 2] * sum;
+            }
+        }
+        return new Result(kronrod * halfLength, Math.abs((kronrod - gauss) * halfLength), 15);
+    }
+
+    /** Integrates over a piece of the interval, always bisecting the subinterval with the largest error. */
+    private static class IntegrationTask extends RecursiveTask<Result> {
+        private static final long serialVersionUID = 1L;
+
+        private final DoubleUnaryOperator f;
+        private final double a;
+        private final double b;
+        private final double tolerance;
+        private final int pieces;
+
+        IntegrationTask(DoubleUnaryOperator f, double a, double b, double tolerance, int pieces) {
+            this.f = f;
+            this.a = a;
+            this.b = b;
+            this.tolerance = tolerance;
+            this.pieces = pieces;
+        }
+
+        @Override
+        protected Result compute() {
+            if (pieces > 1) {
+                // Split into equal pieces, integrated in parallel, each allowed an equal share of the error.
+                IntegrationTask[] tasks = new IntegrationTask[pieces];
+                double width = (b - a) / pieces;
+                for (int i = 0; i < pieces; ++i) {
+                    double low = a + i * width;
+                    double high = i == pieces - 1 ? b : low + width;
+                    tasks[i] = new IntegrationTask(f, low, high, tolerance / pieces, 1);
+                }
+                invokeAll(tasks);
+                Result result = tasks[0].join();
+                for (int i = 1; i < pieces; ++i) {
+                    result = result.plus(tasks[i].join());
+                }
+                return result;
+            }
+
+            PriorityQueue<Subinterval> queue = new PriorityQueue<>();
+            Subinterval whole = new Subinterval(a, b, kronrod(f, a, b));
+            queue.add(whole);
+            double value = whole.result.value;
+            double error = whole.result.error;
+            long evaluations = whole.result.evaluations;
+            Result done = new Result(0.0, 0.0, 0);
+
+            // Bisect the worst subinterval until the error is small enough, or nothing more can be done.
+            for (int count = 1; !(error <= tolerance) && count < MAX_SUBINTERVALS && !queue.isEmpty(); ++count) {
+                Subinterval worst = queue.poll();
+                double middle = 0.5 * (worst.a + worst.b);
+                if (middle <= worst.a || middle >= worst.b) {
+                    // Too narrow to be split.
+                    done = done.plus(worst.result);
+                    continue;
+                }
+                Subinterval left = new Subinterval(worst.a, middle, kronrod(f, worst.a, middle));
+                Subinterval right = new Subinterval(middle, worst.b, kronrod(f, middle, worst.b));
+                queue.add(left);
+                queue.add(right);
+                evaluations += left.result.evaluations + right.result.evaluations;
+
+                // Sum everything again, as a non-finite value cannot be subtracted out.
+                value = done.value;
+                error = done.error;
+                for (Subinterval s : queue) {
+                    value += s.result.value;
+                    error += s.result.error;
+                }
+            }
+            return new Result(value, error, evaluations);
+        }
+    }
+
+    /** A subinterval and its integral.  The one with the largest error comes first. */
+    private static class Subinterval implements Comparable<Subinterval> {
+        final double a;
+        final double b;
+        final Result result;
+
+        Subinterval(double a, double b, Result result) {
+            this.a = a;
+            this.b = b;
+            this.result = result;
+        }
+
+        @Override
+        public int compareTo(Subinterval other) {
+            // NaN errors sort first, as the largest.
+            return Double.compare(other.result.error, result.error);
+        }
+    }
+}
@@ -1,7 +1,12 @@
 
 
 package geometry2D;
+import jdk.jfr.FlightRecorder;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
 import java.lang.Double;
 
 /************************************************************************
@@ -9,9 +14,10 @@ import java.lang.Double;
  * Modified by Gregory Duran, for Math Project in Dougherty Valley High School, San Ramon.
  * Modified by Vishakh Nair, for Math Project in Dougherty Valley High School, San Ramon.
  *
- * // Gregory Duran  ADDED LN x -- note operators [26] must change for more added info
+ * // Gregory Duran  ADDED LN x
  * <i>Mathematic expression evaluator.</i> Supports the following functions:
- * +, -, *, /, ^, %, cos, sin, tan, acos, asin, atan, sqrt, sqr, log, min, max, ceil, floor, abs, neg, rndr.<br>
+ * +, -, *, /, ^, %, cos, sin, tan, sec, cosec, cot, acos, asin, atan, sqrt, sqr, log, min, max, ceil, floor, abs, neg, rndr.<br>
+ * More functions and constants may be added with defineFunction() and defineConstant().<br>
  * When the getValue() is called, a Double object is returned. If it returns null, an error occured.<p>
  * <pre>
  * Sample:
@@ -30,6 +36,14 @@ import java.lang.Double;
  * Added code for finding continuity and check for rational polynomial.
  * Added sec() function.
  * Changed the weight of operator ^ from 20 to 15, so that 2*x^2 will be parsed as 2*(x^2).
+ * Added an approximate mode, with faster trigonometric functions, for plotting.
+ * Added re-evaluation of only the parts of the expression that depend on the variables changed.
+ * Added reading compiled expressions from the DiskCache, when there is one, instead of parsing them.
+ * Made Flight Recorder events only while it is recording, so a short run starts faster.
+ * Replaced the array of operators with a NameTrie matching the longest name, so that tan is no longer found in atan
+ * nor cos in cosec, and added functions and constants defined by the caller, which are inlined when compiling.
+ * Added getDefinitions(), so that results of expressions kept elsewhere can be keyed on the definitions too.
+ * Added getComplexValues(), evaluating over complex numbers, with i as the imaginary unit.
  *---------------------------
  */
 public class MathEvaluator
@@ -53,10 +67,23 @@ public class MathEvaluator
 
     private Continuity continuity;
 
-    protected static 	Operator[] 	operators 	= null;
+    protected static volatile Operator[] operators = null;
+    private static volatile NameTrie<Operator> names = null; // the operators, functions and constants, by name
+    private static final Map<String, String> definitions = new TreeMap<>(); // those defined by the caller, as text
+    private static volatile String definitionsKey = "";   // all of definitions, as a part of the keys of the DiskCache
+    private static volatile int definitionsVersion = 0;   // incremented on each change of the definitions
+    public static final String IMAGINARY_UNIT = "i";      // the variable that is i in getComplexValues()
+    // the variables and constants given by the plotters, which a definition may not take the name of
+    private static final String[] RESERVED = { "x", "y", "z", "t", "r", "theta", "pi", "e", IMAGINARY_UNIT };
     private 			Node 		node       	= null;
     public 			String  	expression 	= null; // make available to cartesianFrame to display equation on final GUI
     private 			HashMap	 	variables  	= new HashMap();
+    private 			CompiledExpression compiled = null; // compiled on first use, and again when the expression changes
+    private 			double[] 	bindings 	= null;     // values of the variables of the compiled expression
+    private 			Continuity[] lastContinuity = new Continuity[1];
+    private 			boolean 	approximate = false;   // evaluate with ApproximateMath
+    private 			CompiledExpression.Cache cache = new CompiledExpression.Cache(); // parts kept by getValues()
+    private 			int 		compiledVersion = -1;  // definitionsVersion when compiled was compiled
 
     /***
      * Main. To run the program in command line.
@@ -101,7 +128,10 @@ public class MathEvaluator
 
     private void init()
     {
-        if ( operators == null ) initializeOperators();
+        synchronized (MathEvaluator.class)
+        {
+            if ( operators == null ) initializeOperators();
+        }
         continuity = Continuity.NORMAL;
         rationalPolynomial = true;
     }
@@ -122,6 +152,111 @@ public class MathEvaluator
         variables.put(v, val);
     }
 
+    /***
+     * defines a function of one variable, that expressions may then use like the built-in ones, as in
+     * defineFunction("sinc", "t", "sin(t)/t").  When an expression is compiled, the body is inlined where the
+     * function is used, so it costs no more than writing it out.  The body may use the functions defined
+     * before it, and variables other than the parameter, which take the values given with addVariable().
+     * Defining a function again replaces it in the expressions compiled after that.
+     * @throws Exception if a name is not made of lower case letters and digits, the name is that of a variable
+     * or a constant given by the plotters or of a built-in operator, or the body cannot be parsed
+     */
+    public static void defineFunction(String name, String parameter, String body) throws Exception
+    {
+        MathEvaluator m = new MathEvaluator(body);
+        checkName(name);
+        if ( !parameter.matches("[a-z][a-z0-9]*") ) throw new IllegalArgumentException("Not a name: [" + parameter + "]");
+        if ( names.get(parameter) != null ) throw new IllegalArgumentException("[" + parameter + "] is already a name");
+        m.compile();	// fails on an unknown operator
+        Operator o = m.new Operator(name, 1, 20);
+        o.parameter = parameter;
+        o.body = m.node;
+        define(o, name + "(" + parameter + ")=" + body);
+    }
+
+    /***
+     * defines a constant, that expressions may then use like a number
+     * @throws IllegalArgumentException if the name is not made of lower case letters and digits, or is that of a
+     * variable or a constant given by the plotters or of a built-in operator
+     */
+    public static void defineConstant(String name, double value)
+    {
+        Operator o = new MathEvaluator().new Operator(name, 0, 20);
+        checkName(name);
+        o.value = value;
+        define(o, name + "=" + value);
+    }
+
+    /***
+     * removes a function or a constant defined by defineFunction() or defineConstant()
+     */
+    public static synchronized void undefine(String name)
+    {
+        if ( definitions.remove(name) == null ) return;
+        Operator[] remaining = new Operator[operators.length - 1];
+        int n = 0;
+        for (Operator o : operators)
+        {
+            if ( !o.getOperator().equals(name) ) remaining[n++] = o;
+        }
+        setOperators(remaining);
+    }
+
+    /***
+     * returns the functions and constants defined by the caller, as text, empty if there are none.  Results of
+     * expressions kept across calls should be keyed on it too, as an expression may mean something else after
+     * a change of the definitions.
+     */
+    public static String getDefinitions()
+    {
+        return definitionsKey;
+    }
+
+    private static synchronized void define(Operator o, String text)
+    {
+        String name = o.getOperator();
+        if ( names.get(name) != null && !definitions.containsKey(name) )
+            throw new IllegalArgumentException("[" + name + "] is a built-in operator");
+
+        Operator[] all = Arrays.copyOf(operators, operators.length + 1);
+        all[all.length - 1] = o;
+        for (int i=0; i<operators.length; i++)
+        {
+            if ( operators[i].getOperator().equals(name) )
+            {
+                all = operators.clone();
+                all[i] = o;
+            }
+        }
+        definitions.put(name, text);
+        setOperators(all);
+    }
+
+    // makes the operators those used from now on
+    private static void setOperators(Operator[] all)
+    {
+        NameTrie<Operator> trie = new NameTrie<>();
+        for (Operator o : all) trie.put(o.getOperator(), o);
+        StringBuilder key = new StringBuilder();
+        for (String text : definitions.values()) key.append(text).append(';');
+        operators 		= all;
+        names 			= trie;
+        definitionsKey 	= key.toString();
+        definitionsVersion++;
+    }
+
+    // a definition may replace one of the caller, but not a variable, a constant or a built-in operator
+    private static synchronized void checkName(String name)
+    {
+        if ( !name.matches("[a-z][a-z0-9]*") ) throw new IllegalArgumentException("Not a name: [" + name + "]");
+        for (String reserved : RESERVED)
+        {
+            if ( name.equals(reserved) ) throw new IllegalArgumentException("[" + name + "] is a reserved name");
+        }
+        if ( names.get(name) != null && !definitions.containsKey(name) )
+            throw new IllegalArgumentException("[" + name + "] is a built-in operator");
+    }
+
     /***
      * sets the expression
      */
@@ -130,16 +265,54 @@ public class MathEvaluator
         expression = s;
     }
 
+    /***
+     * sets whether to evaluate with the faster functions of ApproximateMath, whose error is at most
+     * ApproximateMath.MAX_ERROR times the larger of 1 and the value.  Off by default.
+     */
+    public void setApproximate(boolean approximate)
+    {
+        this.approximate = approximate;
+    }
+
+    /***
+     * returns whether the evaluator uses the approximate functions of ApproximateMath
+     */
+    public boolean isApproximate()
+    {
+        return approximate;
+    }
+
     /***
      * resets the evaluator
      */
     public void reset()
     {
         node 		= null;
+        compiled 	= null;
         expression 	= null;
+        cache.clear();
         variables 	= new HashMap();
     }
 
+    /***
+     * parses the expression into the binary tree, without evaluating it
+     */
+    public void parse() throws Exception
+    {
+        // The first Flight Recorder event costs a JVM a fifth of a second, so none is made unless it is recording.
+        ParseEvent event = FlightRecorder.isInitialized() ? new ParseEvent() : null;
+        if ( event != null ) event.begin();
+        node = new Node(expression);
+        if (CalculatorMetrics.ENABLED) CalculatorMetrics.get().parsed();
+        if ( event != null && event.isEnabled() )
+        {
+            event.expression       = expression;
+            event.expressionLength = expression.length();
+            event.nodeCount        = node.countNodes();
+            event.commit();
+        }
+    }
+
     /***
      * trace the binary tree for debug
      */
@@ -147,7 +320,7 @@ public class MathEvaluator
     {
         try
         {
-            node = new Node(expression);
+            parse();
             node.trace();
         }
         catch (Exception e)
@@ -156,6 +329,89 @@ public class MathEvaluator
         }
     }
 
+    /***
+     * compiles the expression into a form that is quick to evaluate, and that several threads can evaluate at once
+     */
+    public CompiledExpression compile() throws Exception
+    {
+        parse();
+        CompiledExpression.Builder builder = new CompiledExpression.Builder(expression);
+        compile(node, builder);
+        return builder.build();
+    }
+
+    private void compile(Node n, CompiledExpression.Builder builder) throws Exception
+    {
+        compile( n, builder, null );
+    }
+
+    /***
+     * compiles a node, in which the parameter of argument, if any, stands for the node of argument
+     */
+    private void compile(Node n, CompiledExpression.Builder builder, Argument argument) throws Exception
+    {
+        if ( n.hasOperator() && n.hasChild() )
+        {
+            Operator o = n.getOperator();
+            if ( o.body != null )
+            {
+                // a function defined by the caller, inlined
+                compile( o.body, builder, new Argument(o.parameter, n.getLeft(), argument) );
+            }
+            else if ( o.getType() == 1 )
+            {
+                compile( n.getLeft(), builder, argument );
+                builder.operator( o.getOperator(), 1 );
+            }
+            else if ( o.getType() == 2 )
+            {
+                compile( n.getLeft(), builder, argument );
+                compile( n.getRight(), builder, argument );
+                builder.operator( o.getOperator(), 2 );
+            }
+            return;
+        }
+
+        Operator constant = names.get(n.getString());
+        if ( argument != null && n.getString().equals(argument.parameter) )
+        {
+            compile( argument.node, builder, argument.outer );
+        }
+        else if ( constant != null && constant.getType() == 0 )
+        {
+            builder.constant( constant.value );
+        }
+        else
+        {
+            // a number, or else a variable
+            try
+            {
+                builder.constant( Double.parseDouble(n.getString()) );
+            }
+            catch (NumberFormatException e)
+            {
+                builder.variable( n.getString() );
+            }
+        }
+    }
+
+    /***
+     * the argument of a function defined by the caller, while its body is compiled
+     */
+    private static class Argument
+    {
+        private final String 	parameter;
+        private final Node 		node;
+        private final Argument 	outer;	// the argument of the function being compiled where this one is used
+
+        private Argument(String parameter, Node node, Argument outer)
+        {
+            this.parameter 	= parameter;
+            this.node 		= node;
+            this.outer 		= outer;
+        }
+    }
+
     /***
      * evaluates and returns the value of the expression
      */
@@ -165,166 +421,186 @@ public class MathEvaluator
 
         continuity = Continuity.NORMAL;
 
+        long start = CalculatorMetrics.ENABLED ? System.nanoTime() : 0;
         try
         {
-            node = new Node(expression);
-            return evaluate(node);
+            CompiledExpression c = getCompiled();
+            if ( !bindVariables(c, -1) ) return null;
+            double value = c.evaluate(bindings, lastContinuity);
+            continuity = lastContinuity[0];
+            return Double.valueOf(value);
         }
         catch (Exception e)
         {
             e.printStackTrace();
             return null;
         }
-    }
-
-    private Double evaluate(Node n)
-    {
-        if ( n.hasOperator() && n.hasChild() )
+        finally
         {
-            if ( n.getOperator().getType() == 1 )
-                n.setValue ( evaluateExpression( n.getOperator(), evaluate( n.getLeft() ), null ) );
-            else if ( n.getOperator().getType() == 2 )
-                n.setValue( evaluateExpression( n.getOperator(), evaluate( n.getLeft() ), evaluate( n.getRight() ) ) );
+            if (CalculatorMetrics.ENABLED) CalculatorMetrics.get().evaluated(System.nanoTime() - start);
         }
-        return n.getValue();
     }
 
-    private Double evaluateExpression(Operator o, Double f1, Double f2)
+    /***
+     * evaluates the expression for each of the given values of the variable v, in one pass.
+     * results[i] is set to the value for values[i], or NaN if it could not be evaluated,
+     * and continuities[i], if continuities is not null, to its continuity.
+     * When it is called again with the same values of v and other variables changed, as when a parameter of
+     * a*sin(b*x)+c is dragged, only the parts of the expression that depend on the changed variables are
+     * evaluated again.
+     */
+    public void getValues(String v, double[] values, double[] results, Continuity[] continuities)
     {
-        String op 	= o.getOperator();
-        Double res 	= null;
-
-        if  	 ( "+".equals(op) ) 	res = new Double( f1.doubleValue() + f2.doubleValue() );
-        else if  ( "-".equals(op) ) 	res = new Double( f1.doubleValue() - f2.doubleValue() );
-        else if  ( "*".equals(op) ) 	res = new Double( f1.doubleValue() * f2.doubleValue() );
-        else if  ( "/".equals(op) )  {
+        getValues(v, values, results, continuities, cache);
+    }
 
-            double numerator = f1.doubleValue();
-            double denominator = f2.doubleValue();
-            if (isZero(denominator)) {
-                if (isZero(numerator)) {
-                    this.continuity = Continuity.HOLE;
-                } else {
-                    if (this.continuity != Continuity.HOLE) {
-                        this.continuity = Continuity.ASYMPTOTE;
-                    }
-                }
+    /***
+     * evaluates the expression for each of the given values of the variable v, as getValues() above does, but
+     * keeping the parts of the expression in the given cache, so that a caller evaluating several batches of
+     * values can keep one cache for each of them.  The cache may be null.
+     */
+    public void getValues(String v, double[] values, double[] results, Continuity[] continuities,
+                          CompiledExpression.Cache cache)
+    {
+        EvaluateBatchEvent event = FlightRecorder.isInitialized() ? new EvaluateBatchEvent() : null;
+        if ( event != null ) event.begin();
+        long start = CalculatorMetrics.ENABLED ? System.nanoTime() : 0;
+        boolean evaluated = false;
+        try
+        {
+            CompiledExpression c = getCompiled();
+            int index = c.getVariableIndex(v);
+            if ( bindVariables(c, index) )
+            {
+                c.evaluate(index, values, bindings, results, continuities, cache);
+                evaluated = true;
             }
-            res = new Double( numerator / denominator);
-        }
-        else if  ( "^".equals(op) )  	res = new Double( Math.pow(f1.doubleValue(), f2.doubleValue()) );
-        else if  ( "%".equals(op) ) {
-            rationalPolynomial = false;
-            res = new Double( f1.doubleValue() % f2.doubleValue() );
-        }
-        else if  ( "&".equals(op) ) {
-            rationalPolynomial = false;
-            res = new Double( f1.doubleValue() + f2.doubleValue() ); // todo
-        }
-        else if  ( "|".equals(op) ) {
-            rationalPolynomial = false;
-            res = new Double( f1.doubleValue() + f2.doubleValue() ); // todo
         }
-        else if  ( "cos".equals(op) ) {
-            rationalPolynomial = false;
-            res = new Double( Math.cos(f1.doubleValue()) );
-        }
-        else if  ( "sin".equals(op) ) {
-            rationalPolynomial = false;
-            res = new Double( Math.sin(f1.doubleValue()) );
-        }
-        else if  ( "tan".equals(op) )  {
-            rationalPolynomial = false;
-            res = new Double( Math.tan(f1.doubleValue()) );
-        }
-        else if  ( "sec".equals(op) ) {
-            rationalPolynomial = false;
-            res = new Double( 1.0 / Math.cos(f1.doubleValue()) );
-        }
-        else if  ( "cosec".equals(op) ) {
-            rationalPolynomial = false;
-            res = new Double( 1.0 / Math.sin(f1.doubleValue()) );
-        }
-        else if  ( "cot".equals(op) ) {
-            rationalPolynomial = false;
-            res = new Double( 1.0 / Math.cos(f1.doubleValue()) );
-        }
-        else if  ( "acos".equals(op) ) {
-            rationalPolynomial = false;
-            res = new Double( Math.acos(f1.doubleValue()) );
-        }
-        else if  ( "asin".equals(op) ) {
-            rationalPolynomial = false;
-            res = new Double( Math.asin(f1.doubleValue()) );
-        }
-        else if  ( "atan".equals(op) ) {
-            rationalPolynomial = false;
-            res = new Double( Math.atan(f1.doubleValue()) );
-        }
-        else if  ( "sqr".equals(op) ) {
-            rationalPolynomial = false;
-            res = new Double( f1.doubleValue() * f1.doubleValue() );
-        }
-        else if  ( "sqrt".equals(op) ) {
-            rationalPolynomial = false;
-            res = new Double( Math.sqrt(f1.doubleValue()) );
+        catch (Exception e)
+        {
+            e.printStackTrace();
         }
-
-        else if  ( "log".equals(op) ) {
-            rationalPolynomial = false;
-            res = new Double( Math.log10(f1.doubleValue()) );// returns base 10 log
+        if ( !evaluated )
+        {
+            Arrays.fill(results, 0, values.length, Double.NaN);
+            if ( continuities != null ) Arrays.fill(continuities, 0, values.length, Continuity.NORMAL);
         }
-        else if  ( "ln".equals(op) )  {
-            rationalPolynomial = false;
-            res = new Double( Math.log(f1.doubleValue()) );// returns base e log -- natural log
+        if ( continuities != null && values.length > 0 ) continuity = continuities[values.length - 1];
+        if (CalculatorMetrics.ENABLED) CalculatorMetrics.get().evaluated(values.length, System.nanoTime() - start);
+        if ( event != null && event.isEnabled() )
+        {
+            event.expression  = expression;
+            event.sampleCount = values.length;
+            event.commit();
         }
+    }
 
-        else if  ( "min".equals(op) ) {
-            rationalPolynomial = false;
-            res = new Double( Math.min(f1.doubleValue(), f2.doubleValue()) );
-        }
-        else if  ( "max".equals(op) ) {
-            rationalPolynomial = false;
-            res = new Double( Math.max(f1.doubleValue(), f2.doubleValue()) );
-        }
-        else if  ( "exp".equals(op) ) {
-            rationalPolynomial = false;
-            res = new Double( Math.exp(f1.doubleValue()) );
-        }
-        else if  ( "floor".equals(op) ) {
-            rationalPolynomial = false;
-            res = new Double( Math.floor(f1.doubleValue()) );
-        }
-        else if  ( "ceil".equals(op) ) {
-            rationalPolynomial = false;
-            res = new Double( Math.ceil(f1.doubleValue()) );
+    /***
+     * evaluates the expression over complex numbers, for each of the given values of the variable v, in one pass.
+     * The variable IMAGINARY_UNIT is i, and the other variables take the real values given with addVariable().
+     * resultRe[k] and resultIm[k] are set to the value for re[k] + im[k] i, or NaN if it could not be evaluated.
+     * See CompiledExpression.evaluateComplex() for the functions that take complex values.
+     */
+    public void getComplexValues(String v, double[] re, double[] im, double[] resultRe, double[] resultIm)
+    {
+        long start = CalculatorMetrics.ENABLED ? System.nanoTime() : 0;
+        boolean evaluated = false;
+        try
+        {
+            CompiledExpression c = getCompiled();
+            int index = c.getVariableIndex(v);
+            double[] bindingsIm = new double[bindings.length];
+            evaluated = true;
+            for (int i=0; i<bindings.length && evaluated; i++)
+            {
+                if ( i == index ) continue;
+                if ( c.getVariable(i).equals(IMAGINARY_UNIT) )
+                {
+                    bindings[i] 	= 0;
+                    bindingsIm[i] 	= 1;
+                    continue;
+                }
+                Double value = getVariable( c.getVariable(i) );
+                if ( value == null ) evaluated = false;
+                else bindings[i] = value.doubleValue();
+            }
+            if ( evaluated ) c.evaluateComplex(index, re, im, bindings, bindingsIm, resultRe, resultIm);
         }
-        else if  ( "abs".equals(op) )  {
-            rationalPolynomial = false;
-            res = new Double( Math.abs(f1.doubleValue()) );
+        catch (Exception e)
+        {
+            e.printStackTrace();
         }
-        else if  ( "neg".equals(op) )  {
-            rationalPolynomial = false;
-            res = new Double( - f1.doubleValue() );
+        if ( !evaluated )
+        {
+            Arrays.fill(resultRe, 0, re.length, Double.NaN);
+            Arrays.fill(resultIm, 0, re.length, Double.NaN);
         }
-        else if  ( "rnd".equals(op) ) {
-            rationalPolynomial = false;
-            res = new Double( Math.random() * f1.doubleValue() );
-        } else {
-            return null;
+        if (CalculatorMetrics.ENABLED) CalculatorMetrics.get().evaluated(re.length, System.nanoTime() - start);
+    }
+
+    /***
+     * returns the compiled expression, compiling it again if the expression has changed
+     */
+    private CompiledExpression getCompiled() throws Exception
+    {
+        int version = definitionsVersion;
+        if ( compiled == null || !compiled.getExpression().equals(expression) || compiled.isApproximate() != approximate
+                || compiledVersion != version )
+        {
+            compiled = compileCached();
+            compiledVersion = version;
+            if ( approximate ) compiled = compiled.approximate();
+            bindings = new double[compiled.getVariableCount()];
         }
+        if ( !compiled.isRationalPolynomial() ) rationalPolynomial = false;
+        return compiled;
+    }
 
+    /***
+     * compiles the expression, or reads it from the DiskCache if it was compiled in an earlier run
+     */
+    private CompiledExpression compileCached() throws Exception
+    {
+        DiskCache disk = DiskCache.get();
+        if ( disk == null ) return compile();
 
-        return res;
+        String key = "compiled:" + definitionsKey + expression;
+        ByteBuffer kept = disk.get(key);
+        if ( kept != null )
+        {
+            try
+            {
+                return CompiledExpression.read(expression, kept);
+            }
+            catch (IllegalArgumentException e)
+            {
+                disk.remove(key);
+            }
+        }
+        CompiledExpression c = compile();
+        disk.put(key, c.toBytes());
+        return c;
     }
 
-    private static boolean isZero(double value) {
-        return Math.abs(value) < 0.01;
+    /***
+     * copies the values of the variables into the bindings, skipping the one at position except.
+     * @return false if a variable has no value
+     */
+    private boolean bindVariables(CompiledExpression c, int except)
+    {
+        for (int i=0; i<bindings.length; i++)
+        {
+            if ( i == except ) continue;
+            Double value = getVariable( c.getVariable(i) );
+            if ( value == null ) return false;
+            bindings[i] = value.doubleValue();
+        }
+        return true;
     }
 
     private void initializeOperators()
     {
-        operators     = new Operator[26];
+        Operator[] operators = new Operator[29];
         operators[0]  = new Operator("+"	, 2, 0);
         operators[1]  = new Operator("-"	, 2, 0);
         operators[2]  = new Operator("*"	, 2, 10);
@@ -351,6 +627,10 @@ public class MathEvaluator
         operators[23] = new Operator("neg" 	, 1, 20);
         operators[24] = new Operator("rnd"  , 1, 20);
         operators[25] = new Operator("ln"  , 1, 20);
+        operators[26] = new Operator("sec" , 1, 20);
+        operators[27] = new Operator("cosec", 1, 20);
+        operators[28] = new Operator("cot" , 1, 20);
+        setOperators(operators);
     }
 
     /***
@@ -386,8 +666,11 @@ public class MathEvaluator
     protected class Operator
     {
         private String op;
-        private int type;
+        private int type;		// 0 for a constant, 1 for a function, 2 for an operator between two operands
         private int priority;
+        private double value;		// of a constant
+        private String parameter;	// of a function defined by the caller
+        private Node body;			// of a function defined by the caller, in which parameter stands for the argument
 
         public Operator(String o, int t, int p)
         {
@@ -502,29 +785,28 @@ public class MathEvaluator
             }
         }
 
+        /***
+         * returns the operator with the longest name at position start, unless it is a part of a longer name
+         * that starts before it in the same word, as tan is in atan
+         */
         private Operator getOperator(String s, int start)
         {
-            Operator[] operators = getOperators();
-            String temp = s.substring(start);
-            temp = getNextWord(temp);
-            for (int i=0; i<operators.length; i++)
+            NameTrie<Operator> names = MathEvaluator.names;
+            Operator o = names.match(s, start);
+            if ( o == null || o.getType() == 0 ) return null;
+
+            for (int i=start-1; i>=0 && isWordCharacter(s.charAt(i)); i--)
             {
-                if ( temp.startsWith(operators[i].getOperator()) )
-                    return operators[i];
+                Operator before = names.match(s, i);
+                if ( before != null && i + before.getOperator().length() > start )
+                    return null;
             }
-            return null;
+            return o;
         }
 
-        private String getNextWord(String s)
+        private boolean isWordCharacter(char c)
         {
-            int sLength = s.length();
-            for (int i=1; i<sLength; i++)
-            {
-                char c = s.charAt(i);
-                if ( (c > 'z' || c < 'a') && (c > '9' || c < '0') )
-                    return s.substring(0, i);
-            }
-            return s;
+            return ( c >= 'a' && c <= 'z' ) || ( c >= '0' && c <= '9' );
         }
 
         /***
@@ -581,6 +863,14 @@ public class MathEvaluator
             }
         }
 
+        /***
+         * counts the nodes of the tree, including this one
+         */
+        protected int countNodes()
+        {
+            return 1 + ( hasLeft() ? getLeft().countNodes() : 0 ) + ( hasRight() ? getRight().countNodes() : 0 );
+        }
+
         protected boolean hasChild()
         {
             return ( nLeft != null || nRight != null );
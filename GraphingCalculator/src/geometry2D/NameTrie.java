@@ -0,0 +1,78 @@
+package geometry2D;
+
+/**
+ * A map from names to values that finds the longest name at a position of a string, walking one node per
+ * character, however many names there are.  MathEvaluator looks up its operators, functions and constants in
+ * one, at each position of the expression it parses.
+ *
+ * Names are made of ASCII characters.  A trie is filled once and then only read, so it may be read by
+ * several threads at once; to change the names, a new one is built.
+ *
+ * @author vishakh.nair
+ */
+final class NameTrie<T> {
+
+    private static final int ALPHABET = 128;
+
+    private final Node<T> root = new Node<>();
+
+    private static final class Node<T> {
+        private T value;
+        private Node<T>[] next;
+    }
+
+    /**
+     * Adds a name, replacing the value it had.
+     * @throws IllegalArgumentException If the name is empty or not ASCII.
+     */
+    @SuppressWarnings("unchecked")
+    void put(String name, T value) {
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("Empty name");
+        }
+        Node<T> node = root;
+        for (int i = 0; i < name.length(); ++i) {
+            char c = name.charAt(i);
+            if (c >= ALPHABET) {
+                throw new IllegalArgumentException("Not an ASCII name: " + name);
+            }
+            if (node.next == null) {
+                node.next = (Node<T>[]) new Node<?>[ALPHABET];
+            }
+            if (node.next[c] == null) {
+                node.next[c] = new Node<>();
+            }
+            node = node.next[c];
+        }
+        node.value = value;
+    }
+
+    /** Returns the value of a name, or null if it has none. */
+    T get(String name) {
+        Node<T> node = root;
+        for (int i = 0; i < name.length() && node != null; ++i) {
+            node = step(node, name.charAt(i));
+        }
+        return node == null ? null : node.value;
+    }
+
+    /** Returns the value of the longest name that s has at position start, or null if it has none there. */
+    T match(CharSequence s, int start) {
+        T longest = null;
+        Node<T> node = root;
+        for (int i = start; i < s.length(); ++i) {
+            node = step(node, s.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.value != null) {
+                longest = node.value;
+            }
+        }
+        return longest;
+    }
+
+    private static <T> Node<T> step(Node<T> node, char c) {
+        return c < ALPHABET && node.next != null ? node.next[c] : null;
+    }
+}
@@ -0,0 +1,520 @@
+package geometry2D;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A curve given by its points as functions of a parameter: a parametric curve such as (cos(3*t), sin(2*t)),
+ * or a polar curve such as r = 1 + cos(theta).
+ *
+ * The parameter runs from 0 to 2 pi unless a range is given after the curve, as in
+ * "(t*cos(t), t*sin(t)), 0 &lt;= t &lt;= 6*pi" or "r = theta, 0 &lt;= theta &lt;= 20".  The curve is sampled
+ * adaptively on the screen rather than at fixed steps of the parameter: it starts from a few evenly spaced
+ * points, and then, pass after pass, every piece that is long on the screen or that turns sharply is divided
+ * in two, until the curve is smooth, the pieces are as short as the parameter allows, or the evaluations
+ * run out.  Both coordinates are evaluated together for a block of parameter values at a time with the
+ * batch evaluator.  A piece that cannot be made short, where the curve jumps across an asymptote, is left out.
+ *
+ * @author vishakh.nair
+ */
+public class ParametricCurve {
+
+    /** The points of a sampled curve, joined in order.  A point whose coordinates are NaN breaks the curve. */
+    public static class Path {
+        private final double[] xs;
+        private final double[] ys;
+        private final int count;
+        private final long evaluations;
+
+        Path(double[] xs, double[] ys, int count, long evaluations) {
+            this.xs = xs;
+            this.ys = ys;
+            this.count = count;
+            this.evaluations = evaluations;
+        }
+
+        /** Number of points. */
+        public int getPointCount() {
+            return count;
+        }
+
+        /** The x coordinates of the points.  Only the first getPointCount() values are used. */
+        public double[] getXs() {
+            return xs;
+        }
+
+        /** The y coordinates of the points.  Only the first getPointCount() values are used. */
+        public double[] getYs() {
+            return ys;
+        }
+
+        /** Number of parameter values at which the curve was evaluated. */
+        public long getEvaluations() {
+            return evaluations;
+        }
+    }
+
+    // Number of evenly spaced points the sampling starts from.
+    private static final int INITIAL_POINTS = 256;
+
+    // Number of parameter values evaluated in one batch.
+    private static final int BLOCK_SIZE = 1024;
+
+    // Most times the curve is evaluated, so that a curve which never gets smooth still takes bounded time.
+    private static final int MAX_EVALUATIONS = 1 << 16;
+
+    // Most times a piece between the initial points is divided in two.
+    private static final int MAX_DEPTH = 16;
+
+    // Longest piece of the curve drawn as a straight line, in pixels.
+    private static final double MAX_SEGMENT_PIXELS = 4.0;
+
+    // Shortest piece of the curve that is divided because it turns.
+    private static final double MIN_SEGMENT_PIXELS = 0.5;
+
+    // Cosine of the largest angle between two pieces of the curve, about 5 degrees.
+    private static final double MIN_TURN_COSINE = Math.cos(Math.toRadians(5));
+
+    private final String curve;
+    private final boolean polar;
+    private final CompiledExpression xFunction;   // x(t), or r(theta) for a polar curve
+    private final CompiledExpression yFunction;   // y(t), null for a polar curve
+    private final double tLow;
+    private final double tHigh;
+
+    /**
+     * Compiles a curve.
+     * @param curve The curve: "(x(t), y(t))" or "r = r(theta)", each optionally followed by a range such as
+     *              ", 0 &lt;= t &lt;= 2*pi".  The Greek letter may be used for theta, and pi for its value.
+     * @throws IllegalArgumentException If the curve cannot be parsed.
+     */
+    public ParametricCurve(String curve) {
+        this.curve = curve;
+        String text = curve.trim().replace("\u03b8", "theta");
+        polar = isPolar(text);
+        String parameter = polar ? "theta" : "t";
+        String range;
+        try {
+            if (polar) {
+                String[] parts = splitTopLevel(text.substring(text.indexOf('=') + 1));
+                if (parts.length > 2) {
+                    throw new IllegalArgumentException("Too many parts in [" + curve + "]");
+                }
+                xFunction = compile(parts[0]);
+                yFunction = null;
+                range = parts.length > 1 ? parts[1] : null;
+            } else {
+                int close = findClosingBracket(text);
+                String[] coordinates = splitTopLevel(text.substring(1, close));
+                String rest = text.substring(close + 1).trim();
+                if (coordinates.length != 2 || !(rest.isEmpty() || rest.startsWith(","))) {
+                    throw new IllegalArgumentException("Expected (x(t), y(t)) in [" + curve + "]");
+                }
+                xFunction = compile(coordinates[0]);
+                yFunction = compile(coordinates[1]);
+                range = rest.isEmpty() ? null : rest.substring(1);
+            }
+
+            if (range == null) {
+                tLow = 0;
+                tHigh = 2 * Math.PI;
+            } else {
+                String[] bounds = range.split("<=");
+                if (bounds.length != 3 || !bounds[1].trim().equals(parameter)) {
+                    throw new IllegalArgumentException("Expected a range such as 0 <= " + parameter
+                            + " <= 2*pi in [" + curve + "]");
+                }
+                tLow = evaluateConstant(bounds[0]);
+                tHigh = evaluateConstant(bounds[2]);
+            }
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Cannot parse [" + curve + "]", e);
+        }
+        if (!(tLow < tHigh)) {
+            throw new IllegalArgumentException("Empty range of the parameter in [" + curve + "]");
+        }
+    }
+
+    /** Whether an expression is a parametric or a polar curve. */
+    public static boolean isParametric(String expression) {
+        String text = expression.trim();
+        if (isPolar(text)) {
+            return true;
+        }
+        if (!text.startsWith("(")) {
+            return false;
+        }
+        int close = findClosingBracket(text);
+        return close > 0 && splitTopLevel(text.substring(1, close)).length == 2;
+    }
+
+    // Whether a trimmed expression starts "r =".
+    private static boolean isPolar(String text) {
+        return text.startsWith("r") && text.substring(1).trim().startsWith("=");
+    }
+
+    // Finds the bracket that closes the one the text starts with, or -1 if there is none.
+    private static int findClosingBracket(String text) {
+        int depth = 0;
+        for (int i = 0; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            if (c == '(') {
+                ++depth;
+            } else if (c == ')' && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Splits text at the commas that are not within brackets.
+    private static String[] splitTopLevel(String text) {
+        List<String> parts = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            if (c == '(') {
+                ++depth;
+            } else if (c == ')') {
+                --depth;
+            } else if (c == ',' && depth == 0) {
+                parts.add(text.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(text.substring(start));
+        return parts.toArray(new String[0]);
+    }
+
+    private static CompiledExpression compile(String expression) throws Exception {
+        if (expression.trim().isEmpty()) {
+            throw new IllegalArgumentException("Missing expression");
+        }
+        return new MathEvaluator(expression.trim()).compile();
+    }
+
+    private static double evaluateConstant(String expression) throws Exception {
+        CompiledExpression c = compile(expression);
+        double[] values = newValues(c);
+        double value = c.evaluate(values);
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Not a number: [" + expression.trim() + "]");
+        }
+        return value;
+    }
+
+    // Values for the variables of an expression: pi is bound to its value, and others are undefined.
+    private static double[] newValues(CompiledExpression c) {
+        double[] values = new double[c.getVariableCount()];
+        Arrays.fill(values, Double.NaN);
+        int pi = c.getVariableIndex("pi");
+        if (pi >= 0) {
+            values[pi] = Math.PI;
+        }
+        return values;
+    }
+
+    /** The curve, as given. */
+    public String getCurve() {
+        return curve;
+    }
+
+    /** Whether the curve is a polar curve. */
+    public boolean isPolar() {
+        return polar;
+    }
+
+    /** The lowest value of the parameter. */
+    public double getParameterLow() {
+        return tLow;
+    }
+
+    /** The highest value of the parameter. */
+    public double getParameterHigh() {
+        return tHigh;
+    }
+
+    /**
+     * Samples the curve, finely enough to look smooth in a window of the given size.
+     * @param xLow The minimum value of x in the window.
+     * @param xHigh The maximum value of x in the window.
+     * @param yLow The minimum value of y in the window.
+     * @param yHigh The maximum value of y in the window.
+     * @param columns Width of the window, in pixels.
+     * @param rows Height of the window, in pixels.
+     * @return The points of the curve.
+     */
+    public Path trace(double xLow, double xHigh, double yLow, double yHigh, int columns, int rows) {
+        return trace(xLow, xHigh, yLow, yHigh, columns, rows, false);
+    }
+
+    /**
+     * Samples the curve, optionally with the faster functions of ApproximateMath.
+     * @param xLow The minimum value of x in the window.
+     * @param xHigh The maximum value of x in the window.
+     * @param yLow The minimum value of y in the window.
+     * @param yHigh The maximum value of y in the window.
+     * @param columns Width of the window, in pixels.
+     * @param rows Height of the window, in pixels.
+     * @param approximate Whether to evaluate the functions approximately.
+     * @return The points of the curve.
+     */
+    public Path trace(double xLow, double xHigh, double yLow, double yHigh, int columns, int rows,
+                      boolean approximate) {
+        Sampler sampler = new Sampler(xLow, xHigh, yLow, yHigh, columns, rows, approximate);
+        return sampler.sample();
+    }
+
+    /** Samples the curve for one window. */
+    private class Sampler {
+        private final double xLow;
+        private final double yLow;
+        private final double xPixels;   // pixels per unit of x
+        private final double yPixels;   // pixels per unit of y
+        private final int columns;
+        private final int rows;
+
+        // The functions, exact or approximate.
+        private final boolean approximate;
+        private final CompiledExpression xFunction;
+        private final CompiledExpression yFunction;
+
+        // Values of the variables of the two functions, with the parameter set in each batch.
+        private final double[] xValues;
+        private final double[] yValues;
+        private final int xIndex;
+        private final int yIndex;
+
+        // The points so far, in order of the parameter, and their positions in pixels.
+        private double[] ts;
+        private double[] xs;
+        private double[] ys;
+        private int count;
+        private long evaluations;
+
+        Sampler(double xLow, double xHigh, double yLow, double yHigh, int columns, int rows, boolean approximate) {
+            this.xLow = xLow;
+            this.yLow = yLow;
+            this.columns = Math.max(1, columns);
+            this.rows = Math.max(1, rows);
+            xPixels = this.columns / (xHigh - xLow);
+            yPixels = this.rows / (yHigh - yLow);
+            this.approximate = approximate;
+            xFunction = approximate ? ParametricCurve.this.xFunction.approximate() : ParametricCurve.this.xFunction;
+            CompiledExpression y = ParametricCurve.this.yFunction;
+            yFunction = approximate && y != null ? y.approximate() : y;
+            String parameter = polar ? "theta" : "t";
+            xValues = newValues(xFunction);
+            xIndex = xFunction.getVariableIndex(parameter);
+            if (yFunction != null) {
+                yValues = newValues(yFunction);
+                yIndex = yFunction.getVariableIndex(parameter);
+            } else {
+                yValues = null;
+                yIndex = -1;
+            }
+        }
+
+        Path sample() {
+            count = INITIAL_POINTS + 1;
+            ts = new double[count];
+            for (int i = 0; i < count; ++i) {
+                ts[i] = tLow + (tHigh - tLow) * i / INITIAL_POINTS;
+            }
+            ts[count - 1] = tHigh;
+            xs = new double[count];
+            ys = new double[count];
+            evaluate(ts, count, xs, ys);
+
+            double shortest = (tHigh - tLow) / INITIAL_POINTS / (1 << MAX_DEPTH);
+            boolean[] split = new boolean[count];
+            for (int depth = 0; depth < MAX_DEPTH; ++depth) {
+                // Find the pieces to divide, as many as the evaluations left allow.
+                if (split.length < count) {
+                    split = new boolean[count];
+                }
+                int splits = 0;
+                int budget = MAX_EVALUATIONS - (int) evaluations;
+                for (int i = 0; i + 1 < count && splits < budget; ++i) {
+                    split[i] = ts[i + 1] - ts[i] > shortest && isRough(i);
+                    if (split[i]) {
+                        ++splits;
+                    }
+                }
+                if (splits == 0) {
+                    break;
+                }
+
+                // Evaluate the middles of those pieces in one go, and merge them in.
+                double[] middleTs = new double[splits];
+                int k = 0;
+                for (int i = 0; k < splits; ++i) {
+                    if (split[i]) {
+                        middleTs[k++] = 0.5 * (ts[i] + ts[i + 1]);
+                    }
+                }
+                double[] middleXs = new double[splits];
+                double[] middleYs = new double[splits];
+                evaluate(middleTs, splits, middleXs, middleYs);
+                merge(split, middleTs, middleXs, middleYs, splits);
+                Arrays.fill(split, false);
+            }
+            return toPath(shortest);
+        }
+
+        /**
+         * Whether the piece of the curve from point i to point i + 1 needs dividing: if it is long on the
+         * screen, turns sharply at either end, or runs from a defined point to an undefined one.
+         */
+        private boolean isRough(int i) {
+            boolean defined0 = isDefined(i);
+            boolean defined1 = isDefined(i + 1);
+            if (!defined0 || !defined1) {
+                return defined0 != defined1;
+            }
+            if (isOutside(i, i + 1)) {
+                return false;
+            }
+            double length = distance(i, i + 1);
+            if (length > MAX_SEGMENT_PIXELS) {
+                return true;
+            }
+            if (length < MIN_SEGMENT_PIXELS) {
+                return false;
+            }
+            return (i > 0 && turns(i - 1, i, i + 1)) || (i + 2 < count && turns(i, i + 1, i + 2));
+        }
+
+        private boolean isDefined(int i) {
+            return !Double.isNaN(xs[i]) && !Double.isNaN(ys[i])
+                    && !Double.isInfinite(xs[i]) && !Double.isInfinite(ys[i]);
+        }
+
+        // Whether two points lie beyond the same edge of the window, so the piece between them is not seen.
+        private boolean isOutside(int i, int j) {
+            return (xs[i] < 0 && xs[j] < 0) || (xs[i] > columns && xs[j] > columns)
+                    || (ys[i] < 0 && ys[j] < 0) || (ys[i] > rows && ys[j] > rows);
+        }
+
+        private double distance(int i, int j) {
+            return Math.hypot(xs[j] - xs[i], ys[j] - ys[i]);
+        }
+
+        // Whether the curve turns by more than the largest angle allowed at point b.
+        private boolean turns(int a, int b, int c) {
+            if (!isDefined(a) || !isDefined(c)) {
+                return false;
+            }
+            double ux = xs[b] - xs[a];
+            double uy = ys[b] - ys[a];
+            double vx = xs[c] - xs[b];
+            double vy = ys[c] - ys[b];
+            double lengths = Math.hypot(ux, uy) * Math.hypot(vx, vy);
+            return lengths > 0 && ux * vx + uy * vy < MIN_TURN_COSINE * lengths;
+        }
+
+        // Inserts the new points after the pieces they divide.
+        private void merge(boolean[] split, double[] middleTs, double[] middleXs, double[] middleYs, int splits) {
+            int length = count + splits;
+            double[] newTs = new double[length];
+            double[] newXs = new double[length];
+            double[] newYs = new double[length];
+            int j = 0;
+            int k = 0;
+            for (int i = 0; i < count; ++i) {
+                newTs[j] = ts[i];
+                newXs[j] = xs[i];
+                newYs[j] = ys[i];
+                ++j;
+                if (split[i]) {
+                    newTs[j] = middleTs[k];
+                    newXs[j] = middleXs[k];
+                    newYs[j] = middleYs[k];
+                    ++j;
+                    ++k;
+                }
+            }
+            ts = newTs;
+            xs = newXs;
+            ys = newYs;
+            count = length;
+        }
+
+        /**
+         * Evaluates the curve at a block of parameter values at a time, and converts the points to pixels
+         * from the low x, low y corner of the window.
+         */
+        private void evaluate(double[] parameters, int length, double[] pxs, double[] pys) {
+            double[] block = null;
+            double[] first = null;
+            double[] second = null;
+            for (int start = 0; start < length; start += BLOCK_SIZE) {
+                int size = Math.min(BLOCK_SIZE, length - start);
+                if (block == null || block.length != size) {
+                    block = new double[size];
+                    first = new double[size];
+                    second = new double[size];
+                }
+                System.arraycopy(parameters, start, block, 0, size);
+                evaluate(xFunction, xIndex, xValues, block, first);
+                if (polar) {
+                    for (int i = 0; i < size; ++i) {
+                        double r = first[i];
+                        double theta = block[i];
+                        double cos = approximate ? ApproximateMath.cos(theta) : Math.cos(theta);
+                        double sin = approximate ? ApproximateMath.sin(theta) : Math.sin(theta);
+                        pxs[start + i] = (r * cos - xLow) * xPixels;
+                        pys[start + i] = (r * sin - yLow) * yPixels;
+                    }
+                } else {
+                    evaluate(yFunction, yIndex, yValues, block, second);
+                    for (int i = 0; i < size; ++i) {
+                        pxs[start + i] = (first[i] - xLow) * xPixels;
+                        pys[start + i] = (second[i] - yLow) * yPixels;
+                    }
+                }
+            }
+            evaluations += length;
+        }
+
+        private void evaluate(CompiledExpression function, int index, double[] values, double[] block,
+                              double[] results) {
+            if (index >= 0) {
+                function.evaluate(index, block, values, results, null);
+            } else {
+                Arrays.fill(results, function.evaluate(values));
+            }
+        }
+
+        /**
+         * Converts the points back to chart units.  A piece that could not be made short, because the curve
+         * jumps there, is broken off by a point that is not a number.
+         */
+        private Path toPath(double shortest) {
+            double[] pathXs = new double[2 * count];
+            double[] pathYs = new double[2 * count];
+            int length = 0;
+            for (int i = 0; i < count; ++i) {
+                if (i > 0 && isDefined(i - 1) && isDefined(i) && !isOutside(i - 1, i)
+                        && distance(i - 1, i) > MAX_SEGMENT_PIXELS && ts[i] - ts[i - 1] <= 2 * shortest) {
+                    pathXs[length] = Double.NaN;
+                    pathYs[length] = Double.NaN;
+                    ++length;
+                }
+                if (isDefined(i)) {
+                    pathXs[length] = xLow + xs[i] / xPixels;
+                    pathYs[length] = yLow + ys[i] / yPixels;
+                } else {
+                    pathXs[length] = Double.NaN;
+                    pathYs[length] = Double.NaN;
+                }
+                ++length;
+            }
+            return new Path(pathXs, pathYs, length, evaluations);
+        }
+    }
+}
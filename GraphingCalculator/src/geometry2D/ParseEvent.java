@@ -0,0 +1,28 @@
+package geometry2D;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for parsing an expression into a tree.
+ *
+ * @author vishakh.nair
+ */
+@Name("geometry2D.Parse")
+@Label("Parse Expression")
+@Category({"Graphing Calculator", "Evaluator"})
+@Description("An expression parsed into a tree")
+class ParseEvent extends Event {
+
+    @Label("Expression")
+    String expression;
+
+    @Label("Expression Length")
+    int expressionLength;
+
+    @Label("Node Count")
+    int nodeCount;
+}
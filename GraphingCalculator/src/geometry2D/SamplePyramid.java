@@ -0,0 +1,257 @@
+package geometry2D;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The lowest, highest and mean values of a function of x over intervals of every size, for plotting it over
+ * ranges from millions of units wide down to thousandths, at a cost that depends on the number of pixels
+ * rather than on the width of the range.
+ *
+ * Like the mipmaps of a texture, the summaries are kept in levels.  At level L the x axis is cut into
+ * cells 2^L wide, starting at 0, and a viewport is answered from the level whose cells are the widest no
+ * wider than one of its pixel columns, so each column takes one or two cells.  The cells of a level are
+ * worked out in tiles of CELLS_PER_TILE, when first asked for: from the two tiles of the level below if
+ * they are kept, and otherwise by evaluating the function SAMPLES_PER_CELL times in each cell.  So only
+ * the finest level on view is evaluated, and zooming out over a part already seen costs no evaluations.
+ * The lowest and highest values are those of the samples, and may miss a narrow spike between them.
+ *
+ * The tiles take at most the given number of bytes; when there are more, the least recently used are
+ * dropped, to be worked out again if they are needed.  All the methods may be called by several threads.
+ *
+ * @author vishakh.nair
+ */
+public final class SamplePyramid {
+
+    /** Number of cells worked out together. */
+    public static final int CELLS_PER_TILE = 256;
+
+    /** Number of evenly spaced values of the function making up a cell of the finest level on view. */
+    public static final int SAMPLES_PER_CELL = 4;
+
+    // Memory taken by a tile: the lowest, highest and sum of the values and their count, for each cell,
+    // and the objects themselves.
+    private static final long TILE_BYTES = CELLS_PER_TILE * (3 * 8 + 4) + 128;
+
+    private final CompiledExpression expression;
+    private final int variable;
+    private final double[] values;
+    private final long maxBytes;
+
+    // Tiles in order of last use.
+    private final LinkedHashMap<Key, Tile> tiles = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long evaluations;
+
+    // A tile: the level and the position of its first cell divided by CELLS_PER_TILE.
+    private static final class Key {
+        private final int level;
+        private final long index;
+
+        Key(int level, long index) {
+            this.level = level;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return level == other.level && index == other.index;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(level, index);
+        }
+    }
+
+    // The summaries of the cells of a tile.  A cell where the function is nowhere defined has a count of 0.
+    private static final class Tile {
+        private final double[] min = new double[CELLS_PER_TILE];
+        private final double[] max = new double[CELLS_PER_TILE];
+        private final double[] sum = new double[CELLS_PER_TILE];
+        private final int[] count = new int[CELLS_PER_TILE];
+    }
+
+    /**
+     * Creates an empty pyramid.
+     * @param expression The function.
+     * @param variable Position of its variable x, or -1 if it does not depend on x.
+     * @param values Values of all the variables of the expression.  The value of x is ignored.
+     * @param maxBytes The largest amount of memory the summaries may take.
+     */
+    public SamplePyramid(CompiledExpression expression, int variable, double[] values, long maxBytes) {
+        this.expression = expression;
+        this.variable = variable;
+        this.values = values.clone();
+        this.maxBytes = Math.max(maxBytes, TILE_BYTES);
+    }
+
+    /**
+     * Summarizes the function over each of the pixel columns of a viewport.  Arrays that are null are not
+     * filled in.
+     * @param xLow Left end of the viewport.
+     * @param xHigh Right end of the viewport.
+     * @param columns Number of columns the viewport is divided into.
+     * @param min Receives the lowest value in each column, NaN if the function is undefined there.
+     * @param max Receives the highest value in each column, NaN if the function is undefined there.
+     * @param mean Receives the mean value in each column, NaN if the function is undefined there.
+     */
+    public synchronized void summarize(double xLow, double xHigh, int columns, double[] min, double[] max,
+                                       double[] mean) {
+        double columnWidth = (xHigh - xLow) / columns;
+        int level = getLevel(xLow, xHigh, columns);
+        double cellWidth = Math.scalb(1.0, level);
+
+        double[] lowest = new double[columns];
+        double[] highest = new double[columns];
+        double[] sum = new double[columns];
+        int[] count = new int[columns];
+
+        long first = (long) Math.floor(Math.scalb(xLow, -level));
+        long last = (long) Math.floor(Math.scalb(xHigh, -level));
+        Tile tile = null;
+        long tileIndex = 0;
+        for (long cell = first; cell <= last; ++cell) {
+            int column = (int) Math.floor((Math.scalb(cell + 0.5, level) - xLow) / columnWidth);
+            if (column < 0 || column >= columns) {
+                continue;
+            }
+            if (tile == null || Math.floorDiv(cell, CELLS_PER_TILE) != tileIndex) {
+                tileIndex = Math.floorDiv(cell, CELLS_PER_TILE);
+                tile = getTile(level, tileIndex);
+            }
+            int i = Math.floorMod(cell, CELLS_PER_TILE);
+            if (tile.count[i] == 0) {
+                continue;
+            }
+            if (count[column] == 0 || tile.min[i] < lowest[column]) {
+                lowest[column] = tile.min[i];
+            }
+            if (count[column] == 0 || tile.max[i] > highest[column]) {
+                highest[column] = tile.max[i];
+            }
+            sum[column] += tile.sum[i];
+            count[column] += tile.count[i];
+        }
+
+        for (int column = 0; column < columns; ++column) {
+            boolean defined = count[column] > 0;
+            if (min != null) {
+                min[column] = defined ? lowest[column] : Double.NaN;
+            }
+            if (max != null) {
+                max[column] = defined ? highest[column] : Double.NaN;
+            }
+            if (mean != null) {
+                mean[column] = defined ? sum[column] / count[column] : Double.NaN;
+            }
+        }
+    }
+
+    /**
+     * Returns the level a viewport is answered from: that of the widest cells no wider than a column, and
+     * no narrower than a few units in the last place of the ends of the viewport.
+     */
+    public static int getLevel(double xLow, double xHigh, int columns) {
+        double columnWidth = (xHigh - xLow) / columns;
+        double finest = 4 * Math.ulp(Math.max(Math.abs(xLow), Math.abs(xHigh)));
+        return Math.getExponent(Math.max(columnWidth, finest));
+    }
+
+    /** Drops all the summaries. */
+    public synchronized void clear() {
+        tiles.clear();
+    }
+
+    /** Returns the memory taken by the summaries, in bytes. */
+    public synchronized long getBytes() {
+        return tiles.size() * TILE_BYTES;
+    }
+
+    /** Returns the number of times the function has been evaluated. */
+    public synchronized long getEvaluations() {
+        return evaluations;
+    }
+
+    // Returns a tile, working it out if it is not kept, and drops the least recently used ones if there
+    // are too many.
+    private Tile getTile(int level, long index) {
+        Key key = new Key(level, index);
+        Tile tile = tiles.get(key);
+        if (tile != null) {
+            return tile;
+        }
+        Tile left = tiles.get(new Key(level - 1, 2 * index));
+        Tile right = left == null ? null : tiles.get(new Key(level - 1, 2 * index + 1));
+        tile = right != null ? merge(left, right) : sample(level, index);
+        tiles.put(key, tile);
+
+        Iterator<Map.Entry<Key, Tile>> eldest = tiles.entrySet().iterator();
+        while (tiles.size() * TILE_BYTES > maxBytes) {
+            eldest.next();
+            eldest.remove();
+        }
+        return tile;
+    }
+
+    // Works out a tile by evaluating the function in each of its cells.
+    private Tile sample(int level, long index) {
+        double[] xs = new double[CELLS_PER_TILE * SAMPLES_PER_CELL];
+        long firstCell = index * CELLS_PER_TILE;
+        for (int i = 0; i < xs.length; ++i) {
+            double offset = (i + 0.5) / SAMPLES_PER_CELL;
+            xs[i] = Math.scalb(firstCell + offset, level);
+        }
+        double[] results = new double[xs.length];
+        expression.evaluate(variable, xs, values, results, null);
+        evaluations += xs.length;
+
+        Tile tile = new Tile();
+        for (int cell = 0; cell < CELLS_PER_TILE; ++cell) {
+            for (int j = cell * SAMPLES_PER_CELL; j < (cell + 1) * SAMPLES_PER_CELL; ++j) {
+                double y = results[j];
+                if (Double.isNaN(y) || Double.isInfinite(y)) {
+                    continue;
+                }
+                if (tile.count[cell] == 0 || y < tile.min[cell]) {
+                    tile.min[cell] = y;
+                }
+                if (tile.count[cell] == 0 || y > tile.max[cell]) {
+                    tile.max[cell] = y;
+                }
+                tile.sum[cell] += y;
+                tile.count[cell]++;
+            }
+        }
+        return tile;
+    }
+
+    // Works out a tile from the two tiles below it, each of whose pairs of cells makes up one of its cells.
+    private static Tile merge(Tile left, Tile right) {
+        Tile tile = new Tile();
+        for (int cell = 0; cell < CELLS_PER_TILE; ++cell) {
+            Tile half = cell < CELLS_PER_TILE / 2 ? left : right;
+            int first = 2 * cell % CELLS_PER_TILE;
+            for (int i = first; i < first + 2; ++i) {
+                if (half.count[i] == 0) {
+                    continue;
+                }
+                if (tile.count[cell] == 0 || half.min[i] < tile.min[cell]) {
+                    tile.min[cell] = half.min[i];
+                }
+                if (tile.count[cell] == 0 || half.max[i] > tile.max[cell]) {
+                    tile.max[cell] = half.max[i];
+                }
+                tile.sum[cell] += half.sum[i];
+                tile.count[cell] += half.count[i];
+            }
+        }
+        return tile;
+    }
+}
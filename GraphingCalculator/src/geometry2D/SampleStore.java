@@ -0,0 +1,389 @@
+package geometry2D;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Values of a function at evenly spaced x, kept outside the Java heap, for sweeps too large for a double[]:
+ * there may be more than 2^31 of them, and the heap they take, and so the work of the garbage collector,
+ * stays the same however many there are.
+ *
+ * The values are kept in chunks of CHUNK_SAMPLES, each a direct buffer, or a part of a file mapped into
+ * memory, which the operating system pages in and out as needed.  Direct buffers count against the limit
+ * -XX:MaxDirectMemorySize, which is the size of the heap unless it is set, so allocate() keeps only stores
+ * of up to DIRECT_SAMPLES in them, and maps larger ones onto a temporary file.  sample() evaluates the function into them
+ * a batch at a time, through one small array.  The chunks can then be read in place with getChunk(), and
+ * decimate(), findSignChanges() and writeTo() read them without copying them onto the heap.  decimate()
+ * gives the lowest, highest and mean values over each pixel column, which is all a plot of them draws.
+ * EvaluationService answers /summarize requests with these passes.
+ *
+ * The values are doubles in little-endian order, so a mapped file holds them as they are written by
+ * writeTo().  Direct buffers and mappings are freed when the store is no longer reachable; close() lets go
+ * of them at once, and closes the file of a mapped store.  The temporary file of a store is deleted as soon
+ * as it is mapped, where the operating system allows it, and otherwise when the JVM exits.
+ *
+ * It is also invoked from the command line as follows:
+ *   java geometry2D.SampleStore expression xLow xHigh count [file]
+ * which samples the expression in x count times from xLow to xHigh, into the file if one is given, and
+ * prints the range and mean of its values, and the number of times it changes sign.
+ *
+ * @author vishakh.nair
+ */
+public final class SampleStore implements Closeable {
+
+    /** Number of values in each chunk: 2^24, taking 128 MB. */
+    public static final int CHUNK_SAMPLES = 1 << 24;
+
+    /** Largest number of values allocate() keeps in direct buffers: 2^21, taking 16 MB. */
+    public static final int DIRECT_SAMPLES = 1 << 21;
+
+    // Number of values evaluated together by sample().
+    private static final int BATCH_SAMPLES = 1 << 14;
+
+    private final double xLow;
+    private final double step;
+    private final long count;
+    private final int chunkSamples;
+    private ByteBuffer[] buffers;
+    private DoubleBuffer[] chunks;
+    private FileChannel file;
+
+    private SampleStore(double xLow, double step, long count, int chunkSamples) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Negative count: " + count);
+        }
+        this.xLow = xLow;
+        this.step = step;
+        this.count = count;
+        this.chunkSamples = chunkSamples;
+        this.buffers = new ByteBuffer[(int) ((count + chunkSamples - 1) / chunkSamples)];
+        this.chunks = new DoubleBuffer[buffers.length];
+    }
+
+    /**
+     * Creates a store with the values at xLow, xLow + step, ..., all 0: in direct buffers if there are at
+     * most DIRECT_SAMPLES of them, and otherwise mapped onto a temporary file.
+     * @param xLow The first value of x.
+     * @param step The distance between the values of x.
+     * @param count The number of values.
+     * @throws IOException If the temporary file cannot be made or mapped.
+     */
+    public static SampleStore allocate(double xLow, double step, long count) throws IOException {
+        if (count > DIRECT_SAMPLES) {
+            return mapTemporary(xLow, step, count, CHUNK_SAMPLES);
+        }
+        return allocateDirect(xLow, step, count, CHUNK_SAMPLES);
+    }
+
+    static SampleStore allocateDirect(double xLow, double step, long count, int chunkSamples) {
+        SampleStore store = new SampleStore(xLow, step, count, chunkSamples);
+        for (int i = 0; i < store.chunks.length; ++i) {
+            store.setChunk(i, ByteBuffer.allocateDirect(8 * store.getChunkLength(i)));
+        }
+        return store;
+    }
+
+    static SampleStore mapTemporary(double xLow, double step, long count, int chunkSamples) throws IOException {
+        File path = File.createTempFile("samples", ".bin");
+        try {
+            return map(path, xLow, step, count, chunkSamples);
+        } finally {
+            // The mapping keeps the contents of the file until it is closed.  Windows cannot delete a file
+            // that is open.
+            if (!path.delete()) {
+                path.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Creates a store mapped onto a file, with the values at xLow, xLow + step, ....  The file is made
+     * 8 * count bytes long; the values already in it are kept.
+     * @param path The file.
+     * @param xLow The first value of x.
+     * @param step The distance between the values of x.
+     * @param count The number of values.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public static SampleStore map(File path, double xLow, double step, long count) throws IOException {
+        return map(path, xLow, step, count, CHUNK_SAMPLES);
+    }
+
+    static SampleStore map(File path, double xLow, double step, long count, int chunkSamples) throws IOException {
+        SampleStore store = new SampleStore(xLow, step, count, chunkSamples);
+        RandomAccessFile out = new RandomAccessFile(path, "rw");
+        try {
+            out.setLength(8 * count);
+            store.file = out.getChannel();
+            for (int i = 0; i < store.chunks.length; ++i) {
+                store.setChunk(i, store.file.map(FileChannel.MapMode.READ_WRITE, 8 * store.getChunkStart(i),
+                        8L * store.getChunkLength(i)));
+            }
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+        return store;
+    }
+
+    private void setChunk(int chunk, ByteBuffer buffer) {
+        buffers[chunk] = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        chunks[chunk] = buffers[chunk].asDoubleBuffer();
+    }
+
+    /** Returns the number of values. */
+    public long size() {
+        return count;
+    }
+
+    /** Returns the distance between the values of x. */
+    public double getStep() {
+        return step;
+    }
+
+    /** Returns the value of x of the value at a position. */
+    public double getX(long index) {
+        return xLow + index * step;
+    }
+
+    /** Returns the value at a position. */
+    public double get(long index) {
+        return getChunk(index).get((int) (index % chunkSamples));
+    }
+
+    /** Sets the value at a position. */
+    public void set(long index, double value) {
+        getChunk(index).put((int) (index % chunkSamples), value);
+    }
+
+    /**
+     * Sets consecutive values, which may span chunks.  Several threads may set values at once, as long as
+     * they set different ones.
+     * @param index The position of the first value set.
+     * @param values The values.
+     * @param offset The position in values of the first value set.
+     * @param length The number of values set.
+     */
+    public void put(long index, double[] values, int offset, int length) {
+        if (index < 0 || length < 0 || index + length > count) {
+            throw new IndexOutOfBoundsException(length + " values at " + index + " out of " + count);
+        }
+        while (length > 0) {
+            int i = (int) (index % chunkSamples);
+            int n = Math.min(length, chunkSamples - i);
+            getChunk(index).put(i, values, offset, n);
+            index += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /** Returns the number of chunks. */
+    public int getChunkCount() {
+        return chunks.length;
+    }
+
+    /** Returns the position of the first value of a chunk. */
+    public long getChunkStart(int chunk) {
+        return (long) chunk * chunkSamples;
+    }
+
+    /**
+     * Returns the values of a chunk, to be read in place.
+     * @return A read-only view of the values, positioned at the first.
+     */
+    public DoubleBuffer getChunk(int chunk) {
+        return checkOpen()[chunk].asReadOnlyBuffer();
+    }
+
+    /**
+     * Evaluates an expression at each value of x, and keeps the results.  Undefined values are kept as NaN.
+     * @param expression The expression.
+     * @param variable Position of its variable x, or -1 if it does not depend on x.
+     * @param values Values of all the variables of the expression.  The value of x is ignored.
+     */
+    public void sample(CompiledExpression expression, int variable, double[] values) {
+        DoubleBuffer[] chunks = checkOpen();
+        double[] xs = new double[(int) Math.min(BATCH_SAMPLES, Math.max(count, 1))];
+        double[] results = new double[xs.length];
+        for (int chunk = 0; chunk < chunks.length; ++chunk) {
+            long start = getChunkStart(chunk);
+            int length = getChunkLength(chunk);
+            for (int i = 0; i < length; i += xs.length) {
+                int n = Math.min(xs.length, length - i);
+                if (n < xs.length) {
+                    xs = Arrays.copyOf(xs, n);
+                    results = Arrays.copyOf(results, n);
+                }
+                for (int j = 0; j < n; ++j) {
+                    xs[j] = getX(start + i + j);
+                }
+                expression.evaluate(variable, xs, values, results, null);
+                chunks[chunk].put(i, results, 0, n);
+            }
+        }
+    }
+
+    /**
+     * Summarizes the values over equal parts of the range of x, as a plot does over its pixel columns.
+     * Arrays that are null are not filled in.
+     * @param columns The number of parts.
+     * @param min Receives the lowest value in each part, NaN if all are undefined.
+     * @param max Receives the highest value in each part, NaN if all are undefined.
+     * @param mean Receives the mean of the values in each part, NaN if all are undefined.
+     */
+    public void decimate(int columns, double[] min, double[] max, double[] mean) {
+        DoubleBuffer[] chunks = checkOpen();
+        double[] lowest = new double[columns];
+        double[] highest = new double[columns];
+        double[] sum = new double[columns];
+        long[] defined = new long[columns];
+        Arrays.fill(lowest, Double.POSITIVE_INFINITY);
+        Arrays.fill(highest, Double.NEGATIVE_INFINITY);
+
+        double columnsPerValue = (double) columns / count;
+        for (int chunk = 0; chunk < chunks.length; ++chunk) {
+            DoubleBuffer values = chunks[chunk];
+            long start = getChunkStart(chunk);
+            int length = getChunkLength(chunk);
+            for (int i = 0; i < length; ++i) {
+                double y = values.get(i);
+                if (Double.isNaN(y)) {
+                    continue;
+                }
+                int column = Math.min(columns - 1, (int) ((start + i) * columnsPerValue));
+                lowest[column] = Math.min(lowest[column], y);
+                highest[column] = Math.max(highest[column], y);
+                sum[column] += y;
+                defined[column]++;
+            }
+        }
+
+        for (int column = 0; column < columns; ++column) {
+            boolean any = defined[column] > 0;
+            if (min != null) {
+                min[column] = any ? lowest[column] : Double.NaN;
+            }
+            if (max != null) {
+                max[column] = any ? highest[column] : Double.NaN;
+            }
+            if (mean != null) {
+                mean[column] = any ? sum[column] / defined[column] : Double.NaN;
+            }
+        }
+    }
+
+    /**
+     * Finds where the values change sign, skipping undefined values, as where a function crosses the x-axis.
+     * @param found Receives the positions of the first values after which the sign changes, in order, as
+     *              many as it holds.
+     * @return The number of times the sign changes.
+     */
+    public long findSignChanges(long[] found) {
+        DoubleBuffer[] chunks = checkOpen();
+        long changes = 0;
+        long last = -1;
+        double lastY = Double.NaN;
+        for (int chunk = 0; chunk < chunks.length; ++chunk) {
+            DoubleBuffer values = chunks[chunk];
+            long start = getChunkStart(chunk);
+            int length = getChunkLength(chunk);
+            for (int i = 0; i < length; ++i) {
+                double y = values.get(i);
+                if (Double.isNaN(y)) {
+                    continue;
+                }
+                if ((lastY < 0 && y >= 0) || (lastY > 0 && y <= 0)) {
+                    if (changes < found.length) {
+                        found[(int) changes] = last;
+                    }
+                    ++changes;
+                }
+                last = start + i;
+                lastY = y;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Writes the values as little-endian doubles, straight from the chunks.
+     * @throws IOException If they cannot be written.
+     */
+    public void writeTo(WritableByteChannel out) throws IOException {
+        checkOpen();
+        for (ByteBuffer buffer : buffers) {
+            ByteBuffer bytes = buffer.duplicate();
+            while (bytes.hasRemaining()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    /** Lets go of the chunks, and closes the file of a mapped store.  The store cannot be used after. */
+    @Override
+    public void close() throws IOException {
+        chunks = null;
+        buffers = null;
+        if (file != null) {
+            file.close();
+        }
+    }
+
+    private DoubleBuffer[] checkOpen() {
+        if (chunks == null) {
+            throw new IllegalStateException("Closed");
+        }
+        return chunks;
+    }
+
+    private DoubleBuffer getChunk(long index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of " + count);
+        }
+        return checkOpen()[(int) (index / chunkSamples)];
+    }
+
+    private int getChunkLength(int chunk) {
+        return (int) Math.min(chunkSamples, count - getChunkStart(chunk));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.err.println("Usage: java geometry2D.SampleStore expression xLow xHigh count [file]");
+            System.exit(2);
+        }
+        double xLow = Double.parseDouble(args[1]);
+        double xHigh = Double.parseDouble(args[2]);
+        long count = Long.parseLong(args[3]);
+        double step = count > 1 ? (xHigh - xLow) / (count - 1) : 0;
+
+        long start = System.nanoTime();
+        CompiledExpression expression = new MathEvaluator(args[0]).compile();
+        double[] values = new double[expression.getVariableCount()];
+        try (SampleStore store = args.length >= 5 ? map(new File(args[4]), xLow, step, count)
+                : allocate(xLow, step, count)) {
+            store.sample(expression, expression.getVariableIndex("x"), values);
+            long sampled = System.nanoTime();
+
+            double[] min = new double[1];
+            double[] max = new double[1];
+            double[] mean = new double[1];
+            store.decimate(1, min, max, mean);
+            long changes = store.findSignChanges(new long[0]);
+            System.out.printf("%d values from %s to %s: min %s, max %s, mean %s, %d sign changes%n", count,
+                    xLow, xHigh, min[0], max[0], mean[0], changes);
+            System.out.printf("sampled in %.1f s, analysed in %.1f s, heap used %d MB%n", (sampled - start) / 1e9,
+                    (System.nanoTime() - sampled) / 1e9,
+                    (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) >> 20);
+        }
+    }
+}
@@ -0,0 +1,507 @@
+package geometry2D;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates a sweep of a function over a range of x in several worker processes on the same host, for
+ * sweeps that need more memory or cores than one JVM has.
+ *
+ * The coordinator starts its workers, ShardWorker processes with the same Java and classpath, which connect
+ * back to it on the loopback address.  sample() cuts the range of a SampleStore into shards and hands them
+ * out to the workers as they become free.  Each worker streams the values of its shard back in chunks, which
+ * are written straight into their place in the store, so the store ends up in order however the shards
+ * finish.  The size of the shards a worker is given is set from its measured throughput, so that each takes
+ * about SHARD_SECONDS, and faster workers take more of the range.
+ *
+ * A worker that dies or whose connection fails is replaced by a new one, and its shard is handed out again,
+ * up to MAX_ATTEMPTS times.  So is a worker that hangs: one that sends nothing for STALL_FACTOR times as
+ * long as its shard should take, at its measured throughput.  An expression that cannot be compiled fails
+ * the sweep at once.
+ *
+ * It is also invoked from the command line as follows:
+ *   java geometry2D.ShardCoordinator expression xLow xHigh count workers [file]
+ * which is like SampleStore, with the values worked out by the given number of worker processes.
+ * cli/shards.sh checks that both give the same values.
+ *
+ * @author vishakh.nair
+ */
+public final class ShardCoordinator implements Closeable {
+
+    /** Time a shard should take a worker, in seconds. */
+    public static final double SHARD_SECONDS = 0.25;
+
+    /** Number of times a shard is handed out before the sweep fails. */
+    public static final int MAX_ATTEMPTS = 3;
+
+    // Fewest and most values in a shard.  The first shard of a worker is the smallest.
+    private static final int MIN_SHARD_VALUES = 1 << 16;
+    private static final int MAX_SHARD_VALUES = 1 << 26;
+
+    // Time a new worker has to connect, in milliseconds.
+    private static final int CONNECT_MILLIS = 30_000;
+
+    // Time to wait for a connection before checking again that the worker has not exited, in milliseconds.
+    private static final int ACCEPT_POLL_MILLIS = 100;
+
+    // How many times as long as a shard should take a worker may send nothing before it is taken to have
+    // hung, and the time it may send nothing before its throughput is known, in milliseconds.
+    private static final int STALL_FACTOR = 20;
+    private static final int FIRST_SHARD_STALL_MILLIS = 60_000;
+
+    private final List<String> command;
+    private final ServerSocket server;
+    private final List<Worker> workers = new ArrayList<>();
+
+    // Connections from workers that have said hello, by process id, until the worker they belong to claims
+    // them.  Guarded by server.
+    private final Map<Long, Connection> connections = new HashMap<>();
+
+    // The sweep in progress: the next value not yet handed out, the shards to be handed out again, and the
+    // number of shards handed out and not done.
+    private long next;
+    private long end;
+    private final Deque<Shard> retries = new ArrayDeque<>();
+    private int running;
+    private int shardCount;
+    private IOException failure;
+
+    // A part of the range, and how many times it has been handed out.
+    private static final class Shard {
+        private final int id;
+        private final long first;
+        private final int count;
+        private int attempts;
+
+        Shard(int id, long first, int count) {
+            this.id = id;
+            this.first = first;
+            this.count = count;
+        }
+    }
+
+    // A connection from a worker process, which has said hello.
+    private static final class Connection {
+        private final Socket socket;
+        private final DataInputStream in;
+
+        Connection(Socket socket, DataInputStream in) {
+            this.socket = socket;
+            this.in = in;
+        }
+    }
+
+    // A worker process and its connection.
+    private static final class Worker {
+        private Process process;
+        private Socket socket;
+        private DataInputStream in;
+        private DataOutputStream out;
+        private double valuesPerSecond;   // measured over the shards it has done, 0 before the first
+        private long values;
+        private int shards;
+        private int restarts;
+    }
+
+    /**
+     * Starts the worker processes, and waits for them to connect.
+     * @param workerCount Number of workers.
+     * @param jvmOptions Options of the JVMs of the workers, such as -Xmx4g.
+     * @throws IOException If a worker cannot be started, or does not connect.
+     */
+    public ShardCoordinator(int workerCount, List<String> jvmOptions) throws IOException {
+        command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ShardWorker.class.getName());
+
+        server = new ServerSocket(0, workerCount, InetAddress.getLoopbackAddress());
+        command.add(Integer.toString(server.getLocalPort()));
+        try {
+            for (int i = 0; i < workerCount; ++i) {
+                Worker worker = new Worker();
+                start(worker);
+                workers.add(worker);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /** Returns the number of workers. */
+    public int getWorkerCount() {
+        return workers.size();
+    }
+
+    /** Returns the process id of each worker, in order. */
+    public synchronized long[] getWorkerPids() {
+        long[] pids = new long[workers.size()];
+        for (int i = 0; i < pids.length; ++i) {
+            pids[i] = workers.get(i).process.pid();
+        }
+        return pids;
+    }
+
+    /**
+     * Evaluates an expression in x at every value of x of a store, and keeps the values in it.
+     * @param expression The expression.  Variables other than x have no value.
+     * @param store Receives the values.
+     * @throws IOException If the expression cannot be compiled, or a shard failed MAX_ATTEMPTS times.
+     * @throws IllegalArgumentException If the expression is too long to send to the workers.
+     */
+    public void sample(String expression, SampleStore store) throws IOException {
+        if (expression.length() > ShardWorker.MAX_TEXT_BYTES / 3) {
+            throw new IllegalArgumentException("Expression of " + expression.length() + " characters");
+        }
+        synchronized (this) {
+            next = 0;
+            end = store.size();
+            retries.clear();
+            running = 0;
+            shardCount = 0;
+            failure = null;
+            for (Worker worker : workers) {
+                worker.shards = 0;
+                worker.values = 0;
+            }
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        for (Worker worker : workers) {
+            Thread thread = new Thread(() -> feed(worker, expression, store), "shard worker " + threads.size());
+            thread.start();
+            threads.add(thread);
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new IOException("Interrupted", e);
+        }
+
+        synchronized (this) {
+            if (failure != null) {
+                throw failure;
+            }
+            if (next < end || !retries.isEmpty()) {
+                throw new IOException("No worker left to finish the sweep");
+            }
+        }
+    }
+
+    /** Returns a report of the last sweep: the shards and the throughput of each worker. */
+    public synchronized String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append(shardCount).append(" shards\n");
+        for (int i = 0; i < workers.size(); ++i) {
+            Worker worker = workers.get(i);
+            report.append(String.format("worker %d: %d shards, %d values, %.0f values/s, %d restarts%n", i,
+                    worker.shards, worker.values, worker.valuesPerSecond, worker.restarts));
+        }
+        return report.toString();
+    }
+
+    /** Tells the workers to exit, and stops them if they have not after a while. */
+    @Override
+    public void close() {
+        for (Worker worker : workers) {
+            stop(worker);
+        }
+        synchronized (server) {
+            // Connections from workers that were stopped before they were claimed.
+            for (Connection connection : connections.values()) {
+                try {
+                    connection.socket.close();
+                } catch (IOException e) {
+                    // Nothing is left to clean up.
+                }
+            }
+            connections.clear();
+        }
+        try {
+            server.close();
+        } catch (IOException e) {
+            // Nothing is left to clean up.
+        }
+    }
+
+    // Hands out shards to a worker until there are none left, replacing the worker if it fails.
+    private void feed(Worker worker, String expression, SampleStore store) {
+        while (true) {
+            Shard shard = nextShard(worker);
+            if (shard == null) {
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                String error = run(worker, shard, expression, store);
+                if (error != null) {
+                    fail(new IOException(error));
+                    return;
+                }
+            } catch (IOException e) {
+                if (!retry(shard, e)) {
+                    return;
+                }
+                try {
+                    stop(worker);
+                    synchronized (this) {
+                        // The new process is measured afresh, as it starts cold.
+                        worker.restarts++;
+                        worker.valuesPerSecond = 0;
+                    }
+                    start(worker);
+                    continue;
+                } catch (IOException restart) {
+                    synchronized (this) {
+                        notifyAll();
+                    }
+                    return;
+                }
+            }
+            done(worker, shard, System.nanoTime() - start);
+        }
+    }
+
+    // Returns the next shard for a worker, waiting while others are running, or null if there is none.
+    private synchronized Shard nextShard(Worker worker) {
+        while (failure == null) {
+            Shard shard = retries.poll();
+            if (shard == null && next < end) {
+                double size = worker.valuesPerSecond * SHARD_SECONDS;
+                int count = (int) Math.min(end - next, Math.max(MIN_SHARD_VALUES, Math.min(MAX_SHARD_VALUES, size)));
+                shard = new Shard(shardCount++, next, count);
+                next += count;
+            }
+            if (shard != null) {
+                shard.attempts++;
+                running++;
+                return shard;
+            }
+            if (running == 0) {
+                return null;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private synchronized void done(Worker worker, Shard shard, long nanos) {
+        running--;
+        worker.shards++;
+        worker.values += shard.count;
+        double measured = shard.count / (nanos / 1e9);
+        worker.valuesPerSecond = worker.valuesPerSecond == 0 ? measured : (worker.valuesPerSecond + measured) / 2;
+        notifyAll();
+    }
+
+    // Puts a failed shard back to be handed out again, unless it has failed too often.
+    private synchronized boolean retry(Shard shard, IOException e) {
+        running--;
+        if (shard.attempts >= MAX_ATTEMPTS) {
+            failure = new IOException("Shard of " + shard.count + " values at " + shard.first + " failed "
+                    + shard.attempts + " times", e);
+        } else {
+            retries.add(shard);
+        }
+        notifyAll();
+        return failure == null;
+    }
+
+    private synchronized void fail(IOException e) {
+        running--;
+        if (failure == null) {
+            failure = e;
+        }
+        notifyAll();
+    }
+
+    // Sends a shard to a worker and writes the values it sends back into the store.
+    // Returns the error the worker reported, or null.
+    private static String run(Worker worker, Shard shard, String expression, SampleStore store) throws IOException {
+        // A worker that sends nothing for much longer than the shard should take has hung.
+        int stallMillis = FIRST_SHARD_STALL_MILLIS;
+        if (worker.valuesPerSecond > 0) {
+            double seconds = Math.max(SHARD_SECONDS, shard.count / worker.valuesPerSecond);
+            stallMillis = (int) Math.min(Integer.MAX_VALUE, STALL_FACTOR * seconds * 1000);
+        }
+        worker.socket.setSoTimeout(stallMillis);
+
+        DataOutputStream out = worker.out;
+        out.writeByte(ShardWorker.SHARD);
+        out.writeInt(shard.id);
+        ShardWorker.writeText(out, expression);
+        out.writeDouble(store.getX(0));
+        out.writeDouble(store.getStep());
+        out.writeLong(shard.first);
+        out.writeInt(shard.count);
+        out.flush();
+
+        DataInputStream in = worker.in;
+        byte[] bytes = new byte[Double.BYTES * ShardWorker.CHUNK_VALUES];
+        double[] values = new double[ShardWorker.CHUNK_VALUES];
+        long received = 0;
+        while (true) {
+            byte type = in.readByte();
+            int id = in.readInt();
+            if (id != shard.id) {
+                throw new IOException("Message for shard " + id + " while running shard " + shard.id);
+            }
+            if (type == ShardWorker.FAILED) {
+                return ShardWorker.readText(in);
+            }
+            if (type == ShardWorker.DONE) {
+                in.readLong();
+                if (received != shard.count) {
+                    throw new IOException("Shard " + shard.id + " done after " + received + " values of " + shard.count);
+                }
+                return null;
+            }
+            if (type != ShardWorker.CHUNK) {
+                throw new IOException("Unexpected message " + type);
+            }
+            int offset = in.readInt();
+            int length = in.readInt();
+            if (offset < 0 || length < 0 || length > values.length || (long) offset + length > shard.count) {
+                throw new IOException("Chunk of " + length + " values at " + offset + " out of the shard");
+            }
+            in.readFully(bytes, 0, Double.BYTES * length);
+            ByteBuffer.wrap(bytes, 0, Double.BYTES * length).asDoubleBuffer().get(values, 0, length);
+            store.put(shard.first + offset, values, 0, length);
+            received += length;
+        }
+    }
+
+    // Starts the process of a worker and waits for it to connect, failing at once if it exits first.  Workers
+    // started at the same time by several threads may connect in any order, so each connection is matched to
+    // its process by the process id it says hello with.
+    private void start(Worker worker) throws IOException {
+        worker.process = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        long pid = worker.process.pid();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CONNECT_MILLIS);
+        Connection connection;
+        synchronized (server) {
+            while ((connection = connections.remove(pid)) == null) {
+                long millis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (millis <= 0) {
+                    throw new IOException("Worker " + pid + " did not connect");
+                }
+                if (!worker.process.isAlive()) {
+                    throw new IOException("Worker " + pid + " exited with " + worker.process.exitValue()
+                            + " before connecting");
+                }
+                server.setSoTimeout((int) Math.min(millis, ACCEPT_POLL_MILLIS));
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketTimeoutException e) {
+                    continue;
+                }
+                try {
+                    socket.setTcpNoDelay(true);
+                    socket.setSoTimeout(CONNECT_MILLIS);
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+                    if (in.readByte() != ShardWorker.HELLO) {
+                        throw new IOException("Not a worker");
+                    }
+                    // A connection from another worker being started is kept for it.
+                    connections.put(in.readLong(), new Connection(socket, in));
+                } catch (IOException e) {
+                    socket.close();
+                    throw e;
+                }
+            }
+        }
+        worker.socket = connection.socket;
+        worker.in = connection.in;
+        worker.out = new DataOutputStream(new BufferedOutputStream(connection.socket.getOutputStream()));
+    }
+
+    private static void stop(Worker worker) {
+        if (worker.socket != null) {
+            try {
+                worker.out.writeByte(ShardWorker.QUIT);
+                worker.out.flush();
+            } catch (IOException e) {
+                // The worker is gone already.
+            }
+            try {
+                worker.socket.close();
+            } catch (IOException e) {
+                // Nothing is left to clean up.
+            }
+            worker.socket = null;
+        }
+        if (worker.process != null) {
+            try {
+                if (!worker.process.waitFor(1, TimeUnit.SECONDS)) {
+                    worker.process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                worker.process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 5) {
+            System.err.println("Usage: java geometry2D.ShardCoordinator expression xLow xHigh count workers [file]");
+            System.exit(2);
+        }
+        double xLow = Double.parseDouble(args[1]);
+        double xHigh = Double.parseDouble(args[2]);
+        long count = Long.parseLong(args[3]);
+        int workerCount = Integer.parseInt(args[4]);
+        double step = count > 1 ? (xHigh - xLow) / (count - 1) : 0;
+
+        long start = System.nanoTime();
+        try (ShardCoordinator coordinator = new ShardCoordinator(workerCount, Arrays.asList("-XX:+UseSerialGC"));
+             SampleStore store = args.length >= 6 ? SampleStore.map(new File(args[5]), xLow, step, count)
+                     : SampleStore.allocate(xLow, step, count)) {
+            long started = System.nanoTime();
+            coordinator.sample(args[0], store);
+            long sampled = System.nanoTime();
+
+            double[] min = new double[1];
+            double[] max = new double[1];
+            double[] mean = new double[1];
+            store.decimate(1, min, max, mean);
+            System.out.printf("%d values from %s to %s: min %s, max %s, mean %s, %d sign changes%n", count,
+                    xLow, xHigh, min[0], max[0], mean[0], store.findSignChanges(new long[0]));
+            System.out.printf("workers started in %.1f s, sampled in %.1f s%n", (started - start) / 1e9,
+                    (sampled - started) / 1e9);
+            System.out.print(coordinator.getReport());
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package geometry2D;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A process that evaluates shards of a sweep for a ShardCoordinator on the same host.  The coordinator
+ * starts it as follows:
+ *   java geometry2D.ShardWorker port
+ * and it connects to the coordinator on that port of the loopback address, evaluates the shards it is sent
+ * one after the other, and exits when the coordinator says so or goes away.
+ *
+ * The protocol is a stream of messages in the format of DataOutputStream, each starting with a type byte.
+ * Text is sent as its length in bytes, an int, followed by its bytes in UTF-8, as writeUTF() cannot send
+ * more than 64 KB.
+ *
+ *   HELLO   pid:long                                      worker to coordinator, once, on connecting
+ *   SHARD   shard:int expression:text xLow:double step:double first:long count:int
+ *                                                         coordinator to worker: evaluate f(xLow + i * step)
+ *                                                         for i = first, ..., first + count - 1
+ *   CHUNK   shard:int offset:int length:int value:double*length
+ *                                                         worker to coordinator: values from first + offset
+ *   DONE    shard:int nanos:long                          worker to coordinator: the shard is done, in nanos
+ *   FAILED  shard:int message:text                        worker to coordinator: the expression is wrong
+ *   QUIT                                                  coordinator to worker: exit
+ *
+ * @author vishakh.nair
+ */
+public final class ShardWorker {
+
+    // Types of the messages.
+    static final byte HELLO = 1;
+    static final byte SHARD = 2;
+    static final byte CHUNK = 3;
+    static final byte DONE = 4;
+    static final byte FAILED = 5;
+    static final byte QUIT = 6;
+
+    // Most values sent in one CHUNK.
+    static final int CHUNK_VALUES = 8192;
+
+    // Longest text received, in bytes, so that a corrupt length is not taken for an allocation.
+    static final int MAX_TEXT_BYTES = 1 << 26;
+
+    private ShardWorker() {
+    }
+
+    // Evaluates the shards sent on a connection until it is told to quit or the connection is closed.
+    static void serve(DataInputStream in, DataOutputStream out) throws IOException {
+        String lastExpression = null;
+        CompiledExpression compiled = null;
+        String error = null;
+        double[] chunkXs = new double[CHUNK_VALUES];
+        double[] chunkResults = new double[CHUNK_VALUES];
+        ByteBuffer bytes = ByteBuffer.allocate(Double.BYTES * CHUNK_VALUES);
+        while (true) {
+            byte type;
+            try {
+                type = in.readByte();
+            } catch (EOFException e) {
+                return;
+            }
+            if (type == QUIT) {
+                return;
+            }
+            if (type != SHARD) {
+                throw new IOException("Unexpected message " + type);
+            }
+            int shard = in.readInt();
+            String expression = readText(in);
+            double xLow = in.readDouble();
+            double step = in.readDouble();
+            long first = in.readLong();
+            int count = in.readInt();
+
+            long start = System.nanoTime();
+            if (!expression.equals(lastExpression)) {
+                lastExpression = expression;
+                compiled = null;
+                try {
+                    compiled = new MathEvaluator(expression).compile();
+                } catch (Exception e) {
+                    error = "Cannot compile [" + expression + "]: " + e.getMessage();
+                }
+            }
+            if (compiled == null) {
+                out.writeByte(FAILED);
+                out.writeInt(shard);
+                writeText(out, error);
+                out.flush();
+                continue;
+            }
+
+            // Variables other than x have no value, so a function of them is undefined.
+            double[] values = new double[compiled.getVariableCount()];
+            Arrays.fill(values, Double.NaN);
+            int variable = compiled.getVariableIndex("x");
+            for (int offset = 0; offset < count; offset += CHUNK_VALUES) {
+                int length = Math.min(CHUNK_VALUES, count - offset);
+                double[] xs = length == CHUNK_VALUES ? chunkXs : new double[length];
+                double[] results = length == CHUNK_VALUES ? chunkResults : new double[length];
+                for (int i = 0; i < length; ++i) {
+                    xs[i] = xLow + (first + offset + i) * step;
+                }
+                compiled.evaluate(variable, xs, values, results, null);
+                out.writeByte(CHUNK);
+                out.writeInt(shard);
+                out.writeInt(offset);
+                out.writeInt(length);
+                bytes.clear();
+                bytes.asDoubleBuffer().put(results, 0, length);
+                out.write(bytes.array(), 0, Double.BYTES * length);
+            }
+            out.writeByte(DONE);
+            out.writeInt(shard);
+            out.writeLong(System.nanoTime() - start);
+            out.flush();
+        }
+    }
+
+    // Writes text as its length in bytes followed by its bytes in UTF-8.
+    static void writeText(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // Reads text written by writeText().
+    static String readText(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_TEXT_BYTES) {
+            throw new IOException("Text of " + length + " bytes");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java geometry2D.ShardWorker port");
+            System.exit(2);
+        }
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]))) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            out.writeByte(HELLO);
+            out.writeLong(ProcessHandle.current().pid());
+            out.flush();
+            serve(in, out);
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package geometry2D;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates a stream of records, one per line, for pipelines that evaluate many expressions.
+ * It is invoked as follows:
+ *   java geometry2D.StreamEvaluator [-threads n] [file]
+ * and reads the file, or the standard input.  Each record is an expression followed by the values of its
+ * variables, separated by semicolons:
+ *   a*sin(x) + 1; a=2; x=0.5
+ * For each record, one line is written to the standard output: the value, "undefined" if the expression
+ * has no value there or a variable has none, or "error: " and the reason if the record cannot be read.
+ *
+ * The input is read and the output written in large blocks through NIO channels.  Numbers are parsed
+ * straight from the bytes, without exceptions.  Each distinct expression is compiled once, and a record
+ * with the same expression as the one before it finds it without even making a String.  With more than
+ * one thread, each block of lines is split among the threads, and their results are written in the order
+ * of the input.
+ *
+ * @author vishakh.nair
+ */
+public class StreamEvaluator {
+
+    // Size of the blocks read at a time.
+    private static final int CHUNK_BYTES = 1 << 20;
+
+    // Number of distinct expressions kept compiled.  Beyond it, all are compiled again as they come.
+    private static final int MAX_CACHED_EXPRESSIONS = 4096;
+
+    // Number of pieces being evaluated or waiting to be written, per thread.
+    private static final int WINDOW_PER_THREAD = 2;
+
+    // Powers of ten that are exact in a double, for parsing numbers.
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; ++i) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /** An expression as compiled for the stream, or the reason it could not be. */
+    private static final class Compiled {
+        final CompiledExpression expression;
+        final byte[][] variables;   // names of the variables, in the order of the values
+        final String error;
+
+        Compiled(CompiledExpression expression, String error) {
+            this.expression = expression;
+            this.error = error;
+            int count = expression == null ? 0 : expression.getVariableCount();
+            variables = new byte[count][];
+            for (int i = 0; i < count; ++i) {
+                variables[i] = expression.getVariable(i).getBytes(StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    /** The lines written for a piece of the input. */
+    private static final class Output {
+        byte[] bytes = new byte[4096];
+        int length;
+        long records;
+
+        void write(byte b) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, 2 * length);
+            }
+            bytes[length++] = b;
+        }
+
+        void write(String s) {
+            if (length + s.length() > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, length + s.length()));
+            }
+            for (int i = 0; i < s.length(); ++i) {
+                char c = s.charAt(i);
+                bytes[length++] = c < 0x80 ? (byte) c : (byte) '?';
+            }
+        }
+    }
+
+    private final int threads;
+
+    // Compiled expressions, shared by the threads.
+    private final ConcurrentHashMap<String, Compiled> compiled = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an evaluator.
+     * @param threads Number of threads evaluating records.
+     */
+    public StreamEvaluator(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Evaluates all the records of the input, writing a line to the output for each.
+     * @return The number of records.
+     */
+    public long run(ReadableByteChannel in, WritableByteChannel out) throws IOException, InterruptedException {
+        ExecutorService executor = threads == 1 ? null : Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "Stream evaluator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Deque<Future<Output>> window = new ArrayDeque<>();
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_BYTES);
+        long records = 0;
+        try {
+            boolean end = false;
+            while (!end) {
+                end = in.read(buffer) < 0;
+                int limit = buffer.position();
+                byte[] data = buffer.array();
+
+                // Only whole lines are evaluated; the rest waits for the next block, unless the input has ended.
+                int lineEnd = end ? limit : lastIndexOf(data, limit, (byte) '\n') + 1;
+                if (lineEnd == 0 && !end) {
+                    if (limit == data.length) {
+                        // A line longer than the buffer.
+                        buffer = ByteBuffer.allocate(2 * data.length).put(data, 0, limit);
+                    }
+                    continue;
+                }
+                byte[] chunk = Arrays.copyOf(data, lineEnd);
+                buffer.clear();
+                buffer.put(data, lineEnd, limit - lineEnd);
+
+                if (executor == null) {
+                    records += write(evaluate(chunk, 0, chunk.length), out);
+                    continue;
+                }
+                // Split the block among the threads, at the ends of lines.
+                int from = 0;
+                for (int i = 1; i <= threads; ++i) {
+                    int to = chunk.length;
+                    if (i < threads) {
+                        int newline = indexOf(chunk, Math.max(from, chunk.length / threads * i), (byte) '\n');
+                        to = newline < 0 ? chunk.length : newline + 1;
+                    }
+                    if (to > from) {
+                        final int pieceFrom = from;
+                        final int pieceTo = to;
+                        window.add(executor.submit(() -> evaluate(chunk, pieceFrom, pieceTo)));
+                        from = to;
+                    }
+                    while (window.size() >= threads * WINDOW_PER_THREAD) {
+                        records += write(take(window), out);
+                    }
+                }
+            }
+            while (!window.isEmpty()) {
+                records += write(take(window), out);
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        return records;
+    }
+
+    private static Output take(Deque<Future<Output>> window) throws InterruptedException {
+        try {
+            return window.remove().get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Records could not be evaluated", e.getCause());
+        }
+    }
+
+    private static long write(Output output, WritableByteChannel out) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(output.bytes, 0, output.length);
+        while (bytes.hasRemaining()) {
+            out.write(bytes);
+        }
+        return output.records;
+    }
+
+    /** Evaluates the lines between from and to, the last of which may have no line feed. */
+    private Output evaluate(byte[] data, int from, int to) {
+        Output output = new Output();
+        Compiled last = null;
+        int lastFrom = 0;
+        int lastTo = 0;
+        double[] values = new double[0];
+        boolean[] bound = new boolean[0];
+
+        int start = from;
+        while (start < to) {
+            int newline = indexOf(data, start, to, (byte) '\n');
+            int end = newline < 0 ? to : newline;
+            int next = newline < 0 ? to : newline + 1;
+            if (end > start && data[end - 1] == '\r') {
+                --end;
+            }
+            ++output.records;
+
+            // The expression, up to the first semicolon.
+            int semicolon = indexOf(data, start, end, (byte) ';');
+            int fieldEnd = semicolon < 0 ? end : semicolon;
+            int exprFrom = skipSpaces(data, start, fieldEnd);
+            int exprTo = trimSpaces(data, exprFrom, fieldEnd);
+            if (exprFrom == exprTo) {
+                output.write("error: no expression\n");
+                start = next;
+                continue;
+            }
+            if (last == null || !Arrays.equals(data, exprFrom, exprTo, data, lastFrom, lastTo)) {
+                last = getCompiled(new String(data, exprFrom, exprTo - exprFrom, StandardCharsets.UTF_8));
+                lastFrom = exprFrom;
+                lastTo = exprTo;
+                values = new double[last.variables.length];
+                bound = new boolean[last.variables.length];
+            }
+            if (last.error != null) {
+                output.write("error: ");
+                output.write(last.error);
+                output.write((byte) '\n');
+                start = next;
+                continue;
+            }
+
+            // The values of the variables.
+            Arrays.fill(bound, false);
+            String error = null;
+            int field = semicolon;
+            while (field >= 0 && error == null) {
+                int fieldFrom = field + 1;
+                field = indexOf(data, fieldFrom, end, (byte) ';');
+                fieldEnd = field < 0 ? end : field;
+                int equals = indexOf(data, fieldFrom, fieldEnd, (byte) '=');
+                if (equals < 0) {
+                    if (skipSpaces(data, fieldFrom, fieldEnd) < fieldEnd) {
+                        error = "not a variable assignment";
+                    }
+                    continue;
+                }
+                int nameFrom = skipSpaces(data, fieldFrom, equals);
+                int nameTo = trimSpaces(data, nameFrom, equals);
+                int valueFrom = skipSpaces(data, equals + 1, fieldEnd);
+                double value = parseNumber(data, valueFrom, trimSpaces(data, valueFrom, fieldEnd));
+                if (Double.isNaN(value)) {
+                    error = "not a number";
+                    continue;
+                }
+                for (int i = 0; i < values.length; ++i) {
+                    if (Arrays.equals(data, nameFrom, nameTo, last.variables[i], 0, last.variables[i].length)) {
+                        values[i] = value;
+                        bound[i] = true;
+                    }
+                }
+            }
+
+            if (error != null) {
+                output.write("error: ");
+                output.write(error);
+            } else if (!allBound(bound)) {
+                output.write("undefined");
+            } else {
+                double result = last.expression.evaluate(values);
+                output.write(Double.isNaN(result) ? "undefined" : Double.toString(result));
+            }
+            output.write((byte) '\n');
+            start = next;
+        }
+        return output;
+    }
+
+    // Returns the compiled form of an expression, compiling it the first time.
+    private Compiled getCompiled(String expression) {
+        Compiled result = compiled.get(expression);
+        if (result == null) {
+            try {
+                result = new Compiled(new MathEvaluator(expression).compile(), null);
+            } catch (Exception e) {
+                result = new Compiled(null, e.getMessage() == null ? e.toString() : e.getMessage());
+            }
+            if (compiled.size() >= MAX_CACHED_EXPRESSIONS) {
+                compiled.clear();
+            }
+            compiled.put(expression, result);
+        }
+        return result;
+    }
+
+    private static boolean allBound(boolean[] bound) {
+        for (boolean b : bound) {
+            if (!b) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a decimal number, such as -12.5 or 1e-3, from ASCII bytes.
+     * @return The number, or NaN if the bytes are not one.
+     */
+    static double parseNumber(byte[] data, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (data[i] == '-' || data[i] == '+')) {
+            negative = data[i++] == '-';
+        }
+        long mantissa = 0;
+        int digits = 0;           // significant digits in the mantissa
+        int exponent = 0;         // power of ten the mantissa is to be multiplied by
+        boolean any = false;
+        boolean point = false;
+        for (; i < to; ++i) {
+            byte b = data[i];
+            if (b >= '0' && b <= '9') {
+                any = true;
+                if (digits < 18) {
+                    if (mantissa != 0 || b != '0') {
+                        mantissa = 10 * mantissa + (b - '0');
+                        ++digits;
+                    }
+                    if (point) {
+                        --exponent;
+                    }
+                } else {
+                    ++digits;
+                    if (!point) {
+                        ++exponent;
+                    }
+                }
+            } else if (b == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (!any) {
+            return Double.NaN;
+        }
+        if (i < to && (data[i] == 'e' || data[i] == 'E')) {
+            ++i;
+            boolean negativeExponent = false;
+            if (i < to && (data[i] == '-' || data[i] == '+')) {
+                negativeExponent = data[i++] == '-';
+            }
+            int e = 0;
+            boolean exponentDigits = false;
+            for (; i < to && data[i] >= '0' && data[i] <= '9'; ++i) {
+                e = Math.min(10 * e + (data[i] - '0'), 100000);
+                exponentDigits = true;
+            }
+            if (!exponentDigits) {
+                return Double.NaN;
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+        if (i != to) {
+            return Double.NaN;
+        }
+
+        double value;
+        if (mantissa == 0) {
+            value = 0;
+        } else if (digits <= 15 && exponent >= -22 && exponent <= 22) {
+            // The mantissa and the power of ten are exact, so one rounding gives the nearest double.
+            value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        } else {
+            // Rare: too many digits to be exact this way.  The bytes are a valid number, so this cannot throw.
+            value = Math.abs(Double.parseDouble(new String(data, from, to - from, StandardCharsets.ISO_8859_1)));
+        }
+        return negative ? -value : value;
+    }
+
+    private static int indexOf(byte[] data, int from, byte b) {
+        return indexOf(data, from, data.length, b);
+    }
+
+    private static int indexOf(byte[] data, int from, int to, byte b) {
+        for (int i = from; i < to; ++i) {
+            if (data[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] data, int to, byte b) {
+        for (int i = to - 1; i >= 0; --i) {
+            if (data[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipSpaces(byte[] data, int from, int to) {
+        while (from < to && (data[from] == ' ' || data[from] == '\t')) {
+            ++from;
+        }
+        return from;
+    }
+
+    private static int trimSpaces(byte[] data, int from, int to) {
+        while (to > from && (data[to - 1] == ' ' || data[to - 1] == '\t')) {
+            --to;
+        }
+        return to;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = 1;
+        String file = null;
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("-threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (file == null) {
+                file = args[i];
+            } else {
+                System.err.println("Usage: java geometry2D.StreamEvaluator [-threads n] [file]");
+                System.exit(2);
+            }
+        }
+        try (ReadableByteChannel in = file == null ? Channels.newChannel(new FileInputStream(FileDescriptor.in))
+                     : FileChannel.open(Paths.get(file));
+             WritableByteChannel out = new FileOutputStream(FileDescriptor.out).getChannel()) {
+            new StreamEvaluator(threads).run(in, out);
+        }
+    }
+}
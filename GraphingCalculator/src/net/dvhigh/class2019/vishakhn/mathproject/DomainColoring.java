@@ -0,0 +1,242 @@
+package net.dvhigh.class2019.vishakhn.mathproject;
+
+import geometry2D.ApproximateMath;
+import geometry2D.CompiledExpression;
+import geometry2D.MathEvaluator;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plots a function of a complex variable z by domain coloring: each pixel of a region of the complex plane is
+ * colored by the value of f(z) there, its argument as the hue, going once round the color wheel, and its
+ * modulus as the brightness, which steps up between each power of 2 and the next.  Zeros are where all the
+ * hues meet, turning one way round, and poles where they meet turning the other way.  i is the imaginary unit.
+ * A pixel where the function is undefined is gray, and one where it is infinite is white.
+ *
+ * The image is cut into square tiles, and the tiles are shared out among the threads of the common pool,
+ * each of which evaluates a whole tile at a time with CompiledExpression.evaluateComplex().
+ *
+ * It is also invoked from the command line as follows:
+ *   java DomainColoring expression reLow reHigh imLow imHigh [width height [file]]
+ * which writes the plot of the region to a PNG file, domain.png unless another is given.
+ *
+ * @author vishakh.nair
+ */
+public class DomainColoring {
+
+    /** The complex variable. */
+    public static final String VARIABLE = "z";
+
+    // Side of a tile, in pixels.
+    private static final int TILE_SIDE = 64;
+
+    // Color of a pixel where the function is undefined, and where it is infinite.
+    private static final int UNDEFINED_RGB = 0x808080;
+    private static final int INFINITE_RGB = 0xFFFFFF;
+
+    // Saturation of the colors, and the brightness at the bottom and the top of each step of the modulus.
+    private static final float SATURATION = 0.9f;
+    private static final double LOW_BRIGHTNESS = 0.6;
+    private static final double HIGH_BRIGHTNESS = 1.0;
+
+    private static final double LN_2 = Math.log(2);
+
+    private final String expression;
+    private final CompiledExpression compiled;
+    private final int variable;
+    private final double[] valuesRe;
+    private final double[] valuesIm;
+
+    /**
+     * Whether an expression is a function of z to be plotted by domain coloring: one that uses z, and no
+     * variable but z and i.
+     */
+    public static boolean isComplex(String expression) {
+        CompiledExpression compiled;
+        try {
+            compiled = new MathEvaluator(expression).compile();
+        } catch (Exception e) {
+            return false;
+        }
+        if (compiled.getVariableIndex(VARIABLE) < 0) {
+            return false;
+        }
+        for (String name : compiled.getVariables()) {
+            if (!name.equals(VARIABLE) && !name.equals(MathEvaluator.IMAGINARY_UNIT)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a plot of a function of z.
+     * @param expression The function.
+     * @throws IllegalArgumentException If the expression cannot be parsed.
+     */
+    public DomainColoring(String expression) {
+        this.expression = expression;
+        try {
+            // Errors of ApproximateMath are far too small to change a color.
+            compiled = new MathEvaluator(expression).compile().approximate();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Cannot parse [" + expression + "]: " + e.getMessage(), e);
+        }
+        variable = compiled.getVariableIndex(VARIABLE);
+        // i is the imaginary unit, and any other variables have no value.
+        valuesRe = new double[compiled.getVariableCount()];
+        valuesIm = new double[valuesRe.length];
+        for (int i = 0; i < valuesRe.length; ++i) {
+            boolean unit = compiled.getVariable(i).equals(MathEvaluator.IMAGINARY_UNIT);
+            valuesRe[i] = unit ? 0.0 : Double.NaN;
+            valuesIm[i] = unit ? 1.0 : Double.NaN;
+        }
+    }
+
+    /** The function plotted. */
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * Colors each pixel of a region of the complex plane by the value of the function at its center.
+     * @param reLow Real part at the left edge of the image.
+     * @param reHigh Real part at the right edge.
+     * @param imLow Imaginary part at the bottom edge.
+     * @param imHigh Imaginary part at the top edge.
+     * @param width Width of the image, in pixels.
+     * @param height Height of the image, in pixels.
+     * @return The image.
+     */
+    public BufferedImage render(double reLow, double reHigh, double imLow, double imHigh, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int tileColumns = (width + TILE_SIDE - 1) / TILE_SIDE;
+        int tileRows = (height + TILE_SIDE - 1) / TILE_SIDE;
+        int tileCount = tileColumns * tileRows;
+        double pixelRe = (reHigh - reLow) / width;
+        double pixelIm = (imHigh - imLow) / height;
+
+        // Each task takes the next tile not yet taken, until there are none, reusing its arrays.
+        AtomicInteger nextTile = new AtomicInteger();
+        int taskCount = Math.max(1, Math.min(tileCount, ForkJoinPool.getCommonPoolParallelism()));
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < taskCount; ++t) {
+            tasks.add(() -> {
+                int size = TILE_SIDE * TILE_SIDE;
+                double[] re = new double[size];
+                double[] im = new double[size];
+                double[] resultRe = new double[size];
+                double[] resultIm = new double[size];
+                for (int tile = nextTile.getAndIncrement(); tile < tileCount; tile = nextTile.getAndIncrement()) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new CancellationException("Plot cancelled");
+                    }
+                    int left = tile % tileColumns * TILE_SIDE;
+                    int top = tile / tileColumns * TILE_SIDE;
+                    int columns = Math.min(TILE_SIDE, width - left);
+                    int rows = Math.min(TILE_SIDE, height - top);
+                    int n = 0;
+                    for (int row = top; row < top + rows; ++row) {
+                        for (int column = left; column < left + columns; ++column) {
+                            re[n] = reLow + (column + 0.5) * pixelRe;
+                            im[n] = imHigh - (row + 0.5) * pixelIm;
+                            ++n;
+                        }
+                    }
+                    evaluate(re, im, resultRe, resultIm, n);
+                    n = 0;
+                    for (int row = top; row < top + rows; ++row) {
+                        for (int column = left; column < left + columns; ++column) {
+                            pixels[row * width + column] = getRGB(resultRe[n], resultIm[n]);
+                            ++n;
+                        }
+                    }
+                }
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                    : new IllegalStateException(e.getCause());
+        }
+        return image;
+    }
+
+    // Evaluates the function at the first n values, which may be fewer than the arrays hold.
+    private void evaluate(double[] re, double[] im, double[] resultRe, double[] resultIm, int n) {
+        if (n < re.length) {
+            double[] partRe = new double[n];
+            double[] partIm = new double[n];
+            System.arraycopy(re, 0, partRe, 0, n);
+            System.arraycopy(im, 0, partIm, 0, n);
+            compiled.evaluateComplex(variable, partRe, partIm, valuesRe, valuesIm, resultRe, resultIm);
+        } else {
+            compiled.evaluateComplex(variable, re, im, valuesRe, valuesIm, resultRe, resultIm);
+        }
+    }
+
+    /**
+     * Returns the color of a value: its argument as the hue, and its modulus as the brightness.
+     * @param re The real part of the value.
+     * @param im Its imaginary part.
+     * @return The color, as 0xRRGGBB.
+     */
+    public static int getRGB(double re, double im) {
+        if (Double.isNaN(re) || Double.isNaN(im)) {
+            return UNDEFINED_RGB;
+        }
+        if (Double.isInfinite(re) || Double.isInfinite(im)) {
+            return INFINITE_RGB;
+        }
+        double hue = ApproximateMath.atan2(im, re) / (2 * Math.PI);
+        double squared = re * re + im * im;
+        double log2Modulus = squared < Double.POSITIVE_INFINITY && squared > Double.MIN_NORMAL
+                ? 0.5 * Math.log(squared) / LN_2 : Math.log(Math.hypot(re, im)) / LN_2;
+        double step = log2Modulus - Math.floor(log2Modulus);
+        if (Double.isNaN(step)) {
+            // 0, whose modulus has no logarithm.
+            step = 0.0;
+        }
+        float brightness = (float) (LOW_BRIGHTNESS + (HIGH_BRIGHTNESS - LOW_BRIGHTNESS) * step);
+        return Color.HSBtoRGB((float) (hue - Math.floor(hue)), SATURATION, brightness) & 0xFFFFFF;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 5) {
+            System.err.println("Usage: java DomainColoring expression reLow reHigh imLow imHigh "
+                    + "[width height [file]]");
+            System.exit(2);
+        }
+        int width = args.length >= 7 ? Integer.parseInt(args[5]) : 1920;
+        int height = args.length >= 7 ? Integer.parseInt(args[6]) : 1080;
+        File file = new File(args.length >= 8 ? args[7] : "domain.png");
+
+        DomainColoring plot = new DomainColoring(args[0]);
+        long start = System.nanoTime();
+        BufferedImage image = plot.render(Double.parseDouble(args[1]), Double.parseDouble(args[2]),
+                Double.parseDouble(args[3]), Double.parseDouble(args[4]), width, height);
+        long rendered = System.nanoTime();
+        ImageIO.write(image, "png", file);
+        System.out.printf("%dx%d pixels in %.0f ms, written to %s%n", width, height, (rendered - start) / 1e6, file);
+    }
+}
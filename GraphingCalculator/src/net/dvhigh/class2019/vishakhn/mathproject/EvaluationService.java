@@ -0,0 +1,568 @@
+package net.dvhigh.class2019.vishakhn.mathproject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import geometry2D.CalculatorMetrics;
+import geometry2D.CompiledExpression;
+import geometry2D.MathEvaluator;
+import geometry2D.SampleStore;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A local HTTP service that evaluates and plots expressions for other processes.
+ * It is invoked as follows:
+ *   java EvaluationService [port]
+ *
+ * It listens on localhost only, and answers four kinds of requests:
+ *
+ *   GET /evaluate?expr=sin(x)&from=0&to=10&samples=101[&var=x]
+ *     Returns {"expression": ..., "x": [...], "y": [...]} as JSON, with null where the value is undefined.
+ *
+ *   GET /plot?expr=sin(x)&xLow=-5&xHigh=5&yLow=-2&yHigh=2&xStep=1&yStep=0.5[&width=1200&height=800]
+ *     Returns the plot as a PNG image.
+ *
+ *   GET /analyze?expr=sin(x)&xLow=-5&xHigh=5&yLow=-2&yHigh=2
+ *     Returns the FunctionAnalysis of the function over the range as JSON: its maximum, minimum and
+ *     inflection points, holes, asymptotes, and the fundamental theorem of calculus.
+ *
+ *   GET /summarize?expr=sin(x)&from=0&to=1e6&samples=100000000&columns=1200[&var=x]
+ *     Samples the expression into a SampleStore, which may hold far more values than /evaluate returns,
+ *     and returns {"expression": ..., "min": [...], "max": [...], "mean": [...], "signChanges": ...} as
+ *     JSON: the lowest, highest and mean value over each of the columns, and how often the sign changes.
+ *
+ * Each request runs on its own virtual thread when the JVM supports them (Java 21 and later), and on a
+ * pooled thread otherwise.  Compiled expressions are kept and reused across requests, and requests for
+ * the same expression that arrive while it is being evaluated are evaluated together in the next pass.
+ * Plotters are kept too, each with its expression compiled, and reused by later plots and analyses of it.
+ *
+ * An image is at most MAX_IMAGE_PIXELS, and only as many are rendered at once as there are cores, the other
+ * plot requests waiting their turn, so a burst of them cannot exhaust the heap.
+ *
+ * @author vishakh.nair
+ */
+public class EvaluationService {
+
+    // Default port to listen on.
+    private static final int DEFAULT_PORT = 8742;
+
+    // Number of compiled expressions kept.
+    private static final int MAX_CACHED_EXPRESSIONS = 1024;
+
+    // Limits on the size of a request.
+    private static final int MAX_SAMPLES = 1_000_000;
+    private static final int MAX_IMAGE_SIDE = 8192;
+    private static final int MAX_IMAGE_PIXELS = 4 << 20;
+    private static final long MAX_SUMMARY_SAMPLES = 1L << 28;
+
+    // Default size of plotted images, in pixels.
+    private static final int DEFAULT_WIDTH = 1200;
+    private static final int DEFAULT_HEIGHT = 800;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    // Permits to render an image or summarize a sweep, one per core; each image rendered at once takes up to
+    // 16 MB, and each sweep up to 2 GB of a temporary file.
+    private final Semaphore renders = new Semaphore(Runtime.getRuntime().availableProcessors());
+
+    // Evaluators of recently used expressions, the least recently used first.
+    private final Map<String, ExpressionBatcher> batchers =
+            new LinkedHashMap<String, ExpressionBatcher>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ExpressionBatcher> eldest) {
+                    return size() > MAX_CACHED_EXPRESSIONS;
+                }
+            };
+
+    // Plotters of recently plotted expressions, not in use, the least recently used first.  A request takes
+    // its plotter out while it uses it, as a plotter plots one thing at a time.
+    private final Map<String, GraphPlotter> plotters =
+            new LinkedHashMap<String, GraphPlotter>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, GraphPlotter> eldest) {
+                    return size() > MAX_CACHED_EXPRESSIONS;
+                }
+            };
+
+    /**
+     * Evaluates one compiled expression, combining the requests that arrive while an evaluation
+     * is running into a single pass over all their values.
+     *
+     * The first request to arrive while none is running leads: it evaluates all the requests pending,
+     * its own among them, and returns.  If more have arrived meanwhile, it hands the lead to the first
+     * of them, so no request waits for more than the batch before its own.
+     */
+    static class ExpressionBatcher {
+
+        /** The values of one request, and their results once evaluated, or why they could not be. */
+        private static class Request {
+            final double[] xs;
+            double[] ys;
+            RuntimeException failure;
+            // Set, before done is counted down, when the request is to lead instead.
+            boolean lead;
+            final CountDownLatch done = new CountDownLatch(1);
+
+            Request(double[] xs) {
+                this.xs = xs;
+            }
+        }
+
+        private final CompiledExpression compiled;
+        private final int variable;
+        private final double[] values;
+        private List<Request> pending = new ArrayList<>();
+        private boolean running;
+
+        ExpressionBatcher(CompiledExpression compiled, String variable) {
+            this.compiled = compiled;
+            this.variable = compiled.getVariableIndex(variable);
+            // Any other variables have no value.
+            this.values = new double[compiled.getVariableCount()];
+            Arrays.fill(values, Double.NaN);
+        }
+
+        /**
+         * Evaluates the expression at the given values of the variable.
+         * @param xs The values.
+         * @return The value at each of xs.
+         * @throws IllegalStateException If the evaluation of the batch it was in failed.
+         */
+        double[] evaluate(double[] xs) throws InterruptedException {
+            Request request = new Request(xs);
+            boolean leader;
+            synchronized (this) {
+                pending.add(request);
+                leader = !running;
+                running = true;
+            }
+            if (!leader) {
+                request.done.await();
+                leader = request.lead;
+            }
+            if (leader) {
+                lead();
+            }
+            if (request.failure != null) {
+                throw new IllegalStateException("The evaluation failed: " + request.failure, request.failure);
+            }
+            if (request.ys == null) {
+                throw new IllegalStateException("The evaluation failed");
+            }
+            return request.ys;
+        }
+
+        // Evaluates the requests pending, which include the leader's own, and passes the lead on to the next.
+        private void lead() {
+            List<Request> batch;
+            synchronized (this) {
+                batch = pending;
+                pending = new ArrayList<>();
+            }
+            try {
+                evaluateBatch(batch);
+            } finally {
+                synchronized (this) {
+                    if (pending.isEmpty()) {
+                        running = false;
+                    } else {
+                        Request next = pending.get(0);
+                        next.lead = true;
+                        next.done.countDown();
+                    }
+                }
+            }
+        }
+
+        private void evaluateBatch(List<Request> batch) {
+            try {
+                int total = 0;
+                for (Request r : batch) {
+                    total += r.xs.length;
+                }
+                double[] xs = new double[total];
+                int offset = 0;
+                for (Request r : batch) {
+                    System.arraycopy(r.xs, 0, xs, offset, r.xs.length);
+                    offset += r.xs.length;
+                }
+
+                double[] ys = new double[total];
+                try {
+                    compiled.evaluate(variable, xs, values, ys, null);
+                } catch (RuntimeException e) {
+                    // Every request of the batch fails with the reason, rather than getting no values.
+                    for (Request r : batch) {
+                        r.failure = e;
+                    }
+                    return;
+                }
+
+                offset = 0;
+                for (Request r : batch) {
+                    r.ys = Arrays.copyOfRange(ys, offset, offset + r.xs.length);
+                    offset += r.xs.length;
+                }
+            } finally {
+                // After an Error the requests without results fail, instead of waiting forever.
+                for (Request r : batch) {
+                    r.done.countDown();
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the service, listening on localhost.
+     * @param port The port, 0 for any free port.
+     */
+    public EvaluationService(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/evaluate", this::handleEvaluate);
+        server.createContext("/plot", this::handlePlot);
+        server.createContext("/analyze", this::handleAnalyze);
+        server.createContext("/summarize", this::handleSummarize);
+    }
+
+    /** Starts answering requests. */
+    public void start() {
+        server.start();
+    }
+
+    /** Stops answering requests, waiting at most a second for those in progress. */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    /** The port the service listens on. */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /** Returns an executor that runs each task on a new virtual thread, if the JVM has them. */
+    static ExecutorService newRequestExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Returns the evaluator of an expression, compiling it only if it is not cached.
+     * @param expression The expression.
+     * @param variable The variable it is evaluated for.
+     */
+    ExpressionBatcher getBatcher(String expression, String variable) {
+        String key = variable + ":" + expression;
+        ExpressionBatcher batcher;
+        synchronized (batchers) {
+            batcher = batchers.get(key);
+        }
+        if (CalculatorMetrics.ENABLED) {
+            CalculatorMetrics.get().compileCacheLookup(batcher != null);
+        }
+        if (batcher == null) {
+            // Compile outside the lock.  If two threads compile the same expression, the first one is kept.
+            ExpressionBatcher compiled;
+            try {
+                compiled = new ExpressionBatcher(new MathEvaluator(expression).compile(), variable);
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Cannot parse " + expression + ": " + e.getMessage());
+            }
+            synchronized (batchers) {
+                batcher = batchers.get(key);
+                if (batcher == null) {
+                    batchers.put(key, compiled);
+                    batcher = compiled;
+                }
+            }
+        }
+        return batcher;
+    }
+
+    /**
+     * Takes the kept plotter of an expression out of the cache, or returns a new plotter if none is kept.
+     * Pass it to keepPlotter() once it has been used.
+     * @param expression The expression.
+     */
+    GraphPlotter takePlotter(String expression) {
+        GraphPlotter plotter;
+        synchronized (plotters) {
+            plotter = plotters.remove(expression);
+        }
+        if (CalculatorMetrics.ENABLED) {
+            CalculatorMetrics.get().compileCacheLookup(plotter != null);
+        }
+        return plotter != null ? plotter : new GraphPlotter();
+    }
+
+    /**
+     * Keeps a plotter for the next request of its expression.
+     * @param expression The expression it was last set to.
+     * @param plotter The plotter.
+     */
+    void keepPlotter(String expression, GraphPlotter plotter) {
+        synchronized (plotters) {
+            plotters.put(expression, plotter);
+        }
+    }
+
+    private void handleEvaluate(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> query = parseQuery(exchange);
+            String expression = getString(query, "expr");
+            String variable = query.containsKey("var") ? query.get("var") : "x";
+            double from = getDouble(query, "from");
+            double to = getDouble(query, "to");
+            int samples = (int) getDouble(query, "samples");
+            if (samples < 1 || samples > MAX_SAMPLES) {
+                throw new IllegalArgumentException("samples must be between 1 and " + MAX_SAMPLES);
+            }
+
+            double[] xs = new double[samples];
+            double step = samples == 1 ? 0.0 : (to - from) / (samples - 1);
+            for (int i = 0; i < samples; ++i) {
+                xs[i] = from + i * step;
+            }
+            double[] ys = getBatcher(expression, variable).evaluate(xs);
+
+            StringBuilder json = new StringBuilder(32 * samples + 64);
+            json.append("{\"expression\":").append(quote(expression));
+            json.append(",\"x\":");
+            appendArray(json, xs);
+            json.append(",\"y\":");
+            appendArray(json, ys);
+            json.append("}");
+            send(exchange, 200, "application/json", json.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            sendError(exchange, e);
+        }
+    }
+
+    private void handlePlot(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> query = parseQuery(exchange);
+            int width = query.containsKey("width") ? (int) getDouble(query, "width") : DEFAULT_WIDTH;
+            int height = query.containsKey("height") ? (int) getDouble(query, "height") : DEFAULT_HEIGHT;
+            if (width < 1 || height < 1 || width > MAX_IMAGE_SIDE || height > MAX_IMAGE_SIDE) {
+                throw new IllegalArgumentException("width and height must be between 1 and " + MAX_IMAGE_SIDE);
+            }
+            if ((long) width * height > MAX_IMAGE_PIXELS) {
+                throw new IllegalArgumentException("width * height must be at most " + MAX_IMAGE_PIXELS);
+            }
+            String expression = getString(query, "expr");
+            double xLow = getDouble(query, "xLow");
+            double xHigh = getDouble(query, "xHigh");
+            double yLow = getDouble(query, "yLow");
+            double yHigh = getDouble(query, "yHigh");
+            double xStep = getDouble(query, "xStep");
+            double yStep = getDouble(query, "yStep");
+
+            GraphPlotter plotter = takePlotter(expression);
+            plotter.setValues(expression, xLow, xHigh, yLow, yHigh, xStep, yStep);
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            renders.acquire();
+            try {
+                ImageIO.write(plotter.renderImage(width, height), "png", png);
+            } finally {
+                renders.release();
+            }
+            keepPlotter(expression, plotter);
+            send(exchange, 200, "image/png", png.toByteArray());
+        } catch (Exception e) {
+            sendError(exchange, e);
+        }
+    }
+
+    private void handleAnalyze(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> query = parseQuery(exchange);
+            double xLow = getDouble(query, "xLow");
+            double xHigh = getDouble(query, "xHigh");
+            double yLow = getDouble(query, "yLow");
+            double yHigh = getDouble(query, "yHigh");
+            String expression = getString(query, "expr");
+            GraphPlotter plotter = takePlotter(expression);
+            // No grid is drawn, so each step is the whole range.
+            plotter.setValues(expression, xLow, xHigh, yLow, yHigh, xHigh - xLow, yHigh - yLow);
+            String json = plotter.analyze().toJson();
+            keepPlotter(expression, plotter);
+            send(exchange, 200, "application/json", json.getBytes(StandardCharsets.UTF_8));
+        } catch (IllegalStateException e) {
+            // A curve, or a range too wide, is a bad request.
+            sendError(exchange, new IllegalArgumentException(e.getMessage()));
+        } catch (Exception e) {
+            sendError(exchange, e);
+        }
+    }
+
+    private void handleSummarize(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> query = parseQuery(exchange);
+            String expression = getString(query, "expr");
+            String variable = query.containsKey("var") ? query.get("var") : "x";
+            double from = getDouble(query, "from");
+            double to = getDouble(query, "to");
+            long samples = (long) getDouble(query, "samples");
+            int columns = (int) getDouble(query, "columns");
+            if (samples < 1 || samples > MAX_SUMMARY_SAMPLES) {
+                throw new IllegalArgumentException("samples must be between 1 and " + MAX_SUMMARY_SAMPLES);
+            }
+            if (columns < 1 || columns > Math.min(samples, MAX_IMAGE_SIDE)) {
+                throw new IllegalArgumentException("columns must be between 1 and samples, and at most "
+                        + MAX_IMAGE_SIDE);
+            }
+            CompiledExpression compiled;
+            try {
+                compiled = new MathEvaluator(expression).compile();
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Cannot parse " + expression + ": " + e.getMessage());
+            }
+            // Variables other than the one sampled have no value, so a function of them is undefined.
+            double[] values = new double[compiled.getVariableCount()];
+            Arrays.fill(values, Double.NaN);
+
+            double[] min = new double[columns];
+            double[] max = new double[columns];
+            double[] mean = new double[columns];
+            long signChanges;
+            double step = samples == 1 ? 0.0 : (to - from) / (samples - 1);
+            renders.acquire();
+            try (SampleStore store = SampleStore.allocate(from, step, samples)) {
+                store.sample(compiled, compiled.getVariableIndex(variable), values);
+                store.decimate(columns, min, max, mean);
+                signChanges = store.findSignChanges(new long[0]);
+            } finally {
+                renders.release();
+            }
+
+            StringBuilder json = new StringBuilder(96 * columns + 64);
+            json.append("{\"expression\":").append(quote(expression));
+            json.append(",\"min\":");
+            appendArray(json, min);
+            json.append(",\"max\":");
+            appendArray(json, max);
+            json.append(",\"mean\":");
+            appendArray(json, mean);
+            json.append(",\"signChanges\":").append(signChanges);
+            json.append("}");
+            send(exchange, 200, "application/json", json.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            sendError(exchange, e);
+        }
+    }
+
+    private static Map<String, String> parseQuery(HttpExchange exchange) {
+        Map<String, String> result = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return result;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                result.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return result;
+    }
+
+    private static String getString(Map<String, String> query, String name) {
+        String value = query.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter " + name);
+        }
+        return value;
+    }
+
+    private static double getDouble(Map<String, String> query, String name) {
+        String value = getString(query, name);
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parameter " + name + " is not a number: " + value);
+        }
+    }
+
+    private static void appendArray(StringBuilder json, double[] values) {
+        json.append('[');
+        for (int i = 0; i < values.length; ++i) {
+            if (i > 0) {
+                json.append(',');
+            }
+            if (Double.isNaN(values[i]) || Double.isInfinite(values[i])) {
+                json.append("null");
+            } else {
+                json.append(values[i]);
+            }
+        }
+        json.append(']');
+    }
+
+    static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); ++i) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < ' ') {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static void sendError(HttpExchange exchange, Exception e) throws IOException {
+        int status = e instanceof IllegalArgumentException ? 400 : 500;
+        String message = e.getMessage() == null ? e.toString() : e.getMessage();
+        send(exchange, status, "text/plain; charset=utf-8", (message + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /** Runs the service until the JVM is stopped. */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+
+        int port = DEFAULT_PORT;
+        if (args.length >= 1) {
+            port = Integer.parseInt(args[0]);
+        }
+        EvaluationService service = new EvaluationService(port);
+        service.start();
+        System.out.println("Evaluation service listening on http://localhost:" + service.getPort() + "/");
+    }
+}
@@ -0,0 +1,95 @@
+package net.dvhigh.class2019.vishakhn.mathproject;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load generator for the EvaluationService.  Starts the service on a free port on localhost,
+ * sends it requests from many concurrent clients, and reports the throughput and the latencies.
+ * It is invoked as follows:
+ *   java EvaluationServiceLoadTest [clients] [requests] [samples-per-request]
+ */
+public class EvaluationServiceLoadTest {
+
+    private static final String[] EXPRESSIONS = {
+            "sin(x)",
+            "x^3 - 3*x^2 - 144*x + 432",
+            "(x^3 - 1)/(x-1)",
+            "tan(x) * exp(x / 10)"
+    };
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length >= 1 ? Integer.parseInt(args[0]) : 32;
+        int requests = args.length >= 2 ? Integer.parseInt(args[1]) : 5000;
+        int samples = args.length >= 3 ? Integer.parseInt(args[2]) : 1000;
+
+        EvaluationService service = new EvaluationService(0);
+        service.start();
+        try {
+            HttpClient client = HttpClient.newBuilder().executor(Executors.newFixedThreadPool(4)).build();
+            String base = "http://localhost:" + service.getPort() + "/evaluate?from=-10&to=10&samples=" + samples + "&expr=";
+
+            // Warm up.
+            run(client, base, Math.min(clients, 8), requests / 10);
+
+            long start = System.nanoTime();
+            long[] latencies = run(client, base, clients, requests);
+            long elapsed = System.nanoTime() - start;
+
+            Arrays.sort(latencies);
+            System.out.printf("%d requests of %d samples from %d clients in %.2f s: %.1f requests/s\n",
+                    requests, samples, clients, elapsed / 1e9, requests * 1e9 / elapsed);
+            System.out.printf("latency p50 = %.2f ms, p90 = %.2f ms, p99 = %.2f ms, max = %.2f ms\n",
+                    percentile(latencies, 0.50), percentile(latencies, 0.90),
+                    percentile(latencies, 0.99), latencies[latencies.length - 1] / 1e6);
+        } finally {
+            service.stop();
+        }
+        System.exit(0);
+    }
+
+    // Sends the requests from the given number of clients, and returns the latency of each, in nanoseconds.
+    private static long[] run(HttpClient client, String base, int clients, int requests) throws Exception {
+        long[] latencies = new long[requests];
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int c = 0; c < clients; ++c) {
+            futures.add(pool.submit(() -> {
+                for (int i = next.getAndIncrement(); i < requests; i = next.getAndIncrement()) {
+                    String expression = EXPRESSIONS[i % EXPRESSIONS.length];
+                    HttpRequest request = HttpRequest.newBuilder(
+                            URI.create(base + URLEncoder.encode(expression, StandardCharsets.UTF_8))).build();
+                    long start = System.nanoTime();
+                    HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                    latencies[i] = System.nanoTime() - start;
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException("HTTP " + response.statusCode() + " for " + expression);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        pool.shutdown();
+        return latencies;
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        int index = (int) Math.ceil(sorted.length * fraction) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+}
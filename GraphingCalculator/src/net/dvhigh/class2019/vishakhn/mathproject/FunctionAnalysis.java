@@ -0,0 +1,274 @@
+package net.dvhigh.class2019.vishakhn.mathproject;
+
+import geometry2D.MathEvaluator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.DoubleFunction;
+
+/**
+ * What GraphPlotter finds out about a function of x over a range: its maximum, minimum and inflection points,
+ * its holes and asymptotes, and the fundamental theorem of calculus from a to b, that is f(a), f(b) and the
+ * area under f'(x).  Here b is the last point before the function first leaves the chart, or the end of the
+ * range.
+ *
+ * A report is worked out once for an expression and a range, by GraphPlotter.analyze(), and kept, so that
+ * drawing the plot again only draws it.  It needs no graphics, and can be written as JSON with toJson().
+ * A report does not change once made, so it may be shared by several threads.
+ *
+ * @author vishakh.nair
+ */
+public final class FunctionAnalysis {
+
+    /** The kinds of points found. */
+    public enum Kind {
+        MAXIMUM,
+        MINIMUM,
+        INFLECTION,
+        HOLE,
+        ASYMPTOTE
+    }
+
+    /** A point found on the function. */
+    public static final class Feature {
+        private final Kind kind;
+        private final double x;
+        private final double y;
+
+        Feature(Kind kind, double x, double y) {
+            this.kind = kind;
+            this.x = x;
+            this.y = y;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public double getX() {
+            return x;
+        }
+
+        /** Returns f(x), or NaN for an asymptote. */
+        public double getY() {
+            return y;
+        }
+    }
+
+    // Second derivatives closer to 0 than this are not taken as a change of sign.
+    private static final double EPSILON = 0.0001;
+
+    private final String expression;
+    private final double xLow;
+    private final double xHigh;
+    private final double yLow;
+    private final double yHigh;
+    private final boolean rationalPolynomial;
+    private final List<Feature> features;
+    private final double a;
+    private final double fA;
+    private final double b;
+    private final double fB;
+    private final double area;
+
+    FunctionAnalysis(String expression, double xLow, double xHigh, double yLow, double yHigh,
+                     boolean rationalPolynomial, List<Feature> features,
+                     double a, double fA, double b, double fB, double area) {
+        this.expression = expression;
+        this.xLow = xLow;
+        this.xHigh = xHigh;
+        this.yLow = yLow;
+        this.yHigh = yHigh;
+        this.rationalPolynomial = rationalPolynomial;
+        this.features = Collections.unmodifiableList(new ArrayList<>(features));
+        this.a = a;
+        this.fA = fA;
+        this.b = b;
+        this.fB = fB;
+        this.area = area;
+    }
+
+    /**
+     * Finds the points of a function between samples of it.  A maximum, minimum or inflection point lies where
+     * the first or second derivative changes sign between two samples, and is found by linear interpolation.
+     * Holes and asymptotes are found only in a rational polynomial, at the samples the evaluator marked.
+     * @param points The function and its derivatives at the samples, from left to right.
+     * @param rationalPolynomial Whether the function is a rational polynomial.
+     * @param function Gives f(x), or null where it cannot be evaluated.
+     * @return The points, from left to right.
+     */
+    static List<Feature> findFeatures(GraphPlotter.DataPoints[] points, boolean rationalPolynomial,
+                                      DoubleFunction<Double> function) {
+        List<Feature> features = new ArrayList<>();
+        GraphPlotter.DataPoints lastDp = points[0];
+        for (int i = 1; i < points.length; ++i) {
+            GraphPlotter.DataPoints dp = points[i];
+            double x = dp.x;
+
+            if (rationalPolynomial) {
+                if (dp.continuity == MathEvaluator.Continuity.HOLE) {
+                    features.add(new Feature(Kind.HOLE, x, dp.y));
+                } else if (dp.continuity == MathEvaluator.Continuity.ASYMPTOTE) {
+                    features.add(new Feature(Kind.ASYMPTOTE, x, Double.NaN));
+                }
+            }
+
+            if ((lastDp.yDash <= 0 && dp.yDash >= 0) || (lastDp.yDash >= 0 && dp.yDash <= 0)) {
+                // Derivative became zero between the two points.
+                double absYDash = Math.abs(dp.yDash);
+                double absLastYDash = Math.abs(lastDp.yDash);
+                double zeroX = x - absYDash / (absYDash + absLastYDash) * (x - lastDp.x);
+                features.add(new Feature(dp.yDash < 0 ? Kind.MAXIMUM : Kind.MINIMUM, zeroX, valueAt(function, zeroX)));
+            }
+
+            if ((lastDp.yDashDash < -EPSILON && dp.yDashDash > EPSILON) ||
+                    (lastDp.yDashDash > EPSILON && dp.yDashDash < -EPSILON)) {
+                // Second derivative became zero between the two points.
+                double absYDashDash = Math.abs(dp.yDashDash);
+                double absLastYDashDash = Math.abs(lastDp.yDashDash);
+                double zeroX = x - absYDashDash / (absYDashDash + absLastYDashDash) * (x - lastDp.x);
+                features.add(new Feature(Kind.INFLECTION, zeroX, valueAt(function, zeroX)));
+            }
+
+            lastDp = dp;
+        }
+        return features;
+    }
+
+    private static double valueAt(DoubleFunction<Double> function, double x) {
+        Double y = function.apply(x);
+        return y == null ? Double.NaN : y;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public double getXLow() {
+        return xLow;
+    }
+
+    public double getXHigh() {
+        return xHigh;
+    }
+
+    public double getYLow() {
+        return yLow;
+    }
+
+    public double getYHigh() {
+        return yHigh;
+    }
+
+    /** Returns whether the function is a rational polynomial, the only kind whose holes and asymptotes are found. */
+    public boolean isRationalPolynomial() {
+        return rationalPolynomial;
+    }
+
+    /** Returns all the points found, from left to right. */
+    public List<Feature> getFeatures() {
+        return features;
+    }
+
+    /** Returns the points of one kind, from left to right. */
+    public List<Feature> getFeatures(Kind kind) {
+        List<Feature> result = new ArrayList<>();
+        for (Feature feature : features) {
+            if (feature.kind == kind) {
+                result.add(feature);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the number of maximum, minimum and inflection points. */
+    public int getExtremaCount() {
+        return features.size() - getFeatures(Kind.HOLE).size() - getFeatures(Kind.ASYMPTOTE).size();
+    }
+
+    /** Returns a, the start of the fundamental theorem of calculus. */
+    public double getA() {
+        return a;
+    }
+
+    /** Returns f(a). */
+    public double getFA() {
+        return fA;
+    }
+
+    /** Returns b, the end of the fundamental theorem of calculus. */
+    public double getB() {
+        return b;
+    }
+
+    /** Returns f(b). */
+    public double getFB() {
+        return fB;
+    }
+
+    /** Returns the area under f'(x) from a to b, which should be f(b) - f(a). */
+    public double getArea() {
+        return area;
+    }
+
+    /**
+     * Returns the report as a JSON object, with null for values that are undefined:
+     *   {"expression": ..., "xLow": ..., "xHigh": ..., "yLow": ..., "yHigh": ..., "rationalPolynomial": ...,
+     *    "maxima": [{"x": ..., "y": ...}, ...], "minima": [...], "inflections": [...], "holes": [...],
+     *    "asymptotes": [{"x": ...}, ...], "a": ..., "fA": ..., "b": ..., "fB": ..., "area": ...}
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(256 + 40 * features.size());
+        json.append("{\"expression\":").append(EvaluationService.quote(expression));
+        appendNumber(json.append(",\"xLow\":"), xLow);
+        appendNumber(json.append(",\"xHigh\":"), xHigh);
+        appendNumber(json.append(",\"yLow\":"), yLow);
+        appendNumber(json.append(",\"yHigh\":"), yHigh);
+        json.append(",\"rationalPolynomial\":").append(rationalPolynomial);
+        appendFeatures(json.append(",\"maxima\":"), Kind.MAXIMUM);
+        appendFeatures(json.append(",\"minima\":"), Kind.MINIMUM);
+        appendFeatures(json.append(",\"inflections\":"), Kind.INFLECTION);
+        appendFeatures(json.append(",\"holes\":"), Kind.HOLE);
+        appendFeatures(json.append(",\"asymptotes\":"), Kind.ASYMPTOTE);
+        appendNumber(json.append(",\"a\":"), a);
+        appendNumber(json.append(",\"fA\":"), fA);
+        appendNumber(json.append(",\"b\":"), b);
+        appendNumber(json.append(",\"fB\":"), fB);
+        appendNumber(json.append(",\"area\":"), area);
+        return json.append('}').toString();
+    }
+
+    private void appendFeatures(StringBuilder json, Kind kind) {
+        json.append('[');
+        boolean first = true;
+        for (Feature feature : features) {
+            if (feature.kind != kind) {
+                continue;
+            }
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            appendNumber(json.append("{\"x\":"), feature.x);
+            if (kind != Kind.ASYMPTOTE) {
+                appendNumber(json.append(",\"y\":"), feature.y);
+            }
+            json.append('}');
+        }
+        json.append(']');
+    }
+
+    private static void appendNumber(StringBuilder json, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            json.append("null");
+        } else {
+            json.append(value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+}
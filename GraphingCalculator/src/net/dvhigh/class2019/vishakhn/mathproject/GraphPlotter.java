@@ -0,0 +1,1950 @@
+package net.dvhigh.class2019.vishakhn.mathproject;
+
+import geometry2D.ApproximateMath;
+import geometry2D.CalculatorMetrics;
+import geometry2D.CompiledExpression;
+import geometry2D.DiskCache;
+import geometry2D.ImplicitCurve;
+import geometry2D.Integrator;
+import geometry2D.MathEvaluator;
+import geometry2D.ParametricCurve;
+import geometry2D.SamplePyramid;
+import jdk.jfr.FlightRecorder;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Plots a function, its first and second derivatives, and the fundamental theorem of calculus
+ * on any Graphics2D.  It has no dependency on a window, so it can also render headless into an image.
+ *
+ * An expression with "=" in it, such as x^2 + y^2 = 4, is an equation in x and y, and is plotted as a curve
+ * without derivatives.  So is a parametric curve such as (cos(3*t), sin(2*t)), or a polar curve such as
+ * r = 1 + cos(theta).  Such curves are evaluated with the faster functions of ApproximateMath whenever their
+ * error is too small to see.
+ *
+ * An expression in z, such as (z^3 - 1) / (z^2 + i), is a function of a complex variable, and the chart is
+ * the complex plane, x being the real part and y the imaginary part.  It is plotted by DomainColoring, with
+ * every pixel of the chart colored by the value of the function there.
+ *
+ * A range so wide that sampling it every DELTA would take too long is plotted from a SamplePyramid instead,
+ * as the lowest, highest and mean values of the function over each pixel column, without derivatives.  The
+ * pyramids of the last few functions are kept, so zooming in and out of a plot evaluates the function only
+ * where it has not been seen at that scale.  A range so narrow that samples DELTA apart would be pixels apart
+ * is sampled at every pixel column instead, and plotted with its derivatives as usual.
+ *
+ * A large image is drawn in vertical strips, each on its own thread, into its own part of the image.  Every
+ * strip draws all of the plot clipped to itself, so the image is the same, pixel for pixel, as one drawn
+ * whole, with no seams between the strips.
+ *
+ * What is found out about a function over a range, its maximum, minimum and inflection points, holes,
+ * asymptotes and the fundamental theorem of calculus, is worked out once into a FunctionAnalysis, which is
+ * kept, and plots of the same function and range only draw it.  analyze() returns it without drawing.
+ *
+ * When there is a DiskCache, the points of a function and the area under its derivative are kept in it, so
+ * plotting the same function over the same range again, even in another run, does not evaluate it.
+ *
+ * A plot running on a thread that is interrupted stops with a CancellationException, so a plot that is
+ * no longer wanted can be abandoned quickly.
+ *
+ * @author vishakh.nair
+ */
+public class GraphPlotter {
+
+    /** Stores the data for a particular X value. */
+    static class DataPoints {
+        double x;            // x
+        double y;            // f(x)
+        double yDash;        // f'(x)
+        double yDashDash;    // f"(x)
+        MathEvaluator.Continuity continuity;
+    }
+
+    /** Receives the images of a plot rendered in passes. */
+    public interface FrameListener {
+        /**
+         * Called after each pass.
+         * @param image The plot, as far as it has been computed.
+         * @param complete Whether this is the full plot, and the last image.
+         */
+        void frameRendered(BufferedImage image, boolean complete);
+    }
+
+
+    /** Indicates whether the current function is a rational polynomial. */
+    private boolean rationalPolynomial;
+
+    /** Whether the points of the plot were read from the DiskCache, so the function was not evaluated. */
+    private boolean pointsCached;
+
+    /** Whether the last plot was drawn from a SamplePyramid. */
+    private boolean summarized;
+
+    /** The x-interval at which the function is sampled for the current plot: DELTA, or a pixel column. */
+    private double step = DELTA;
+
+    /** A modified version of the given class. */
+    private MathEvaluator mathEvaluator;
+
+    /** The definitions the expression was compiled with, or null if it must be compiled again. */
+    private String definitions;
+
+    /** Values of the variables of the function other than x, by name, given with setParameter(). */
+    private final Map<String, Double> parameters = new LinkedHashMap<>();
+
+    /**
+     * Parts of the function kept by each batch of points of the last plot, when it has parameters, so that
+     * plotting it over the same range with other values of them evaluates only what those values change.
+     */
+    private final List<CompiledExpression.Cache> caches = new ArrayList<>();
+
+    /** Number of batches of points sampled since the points of the plot began to be sampled. */
+    private int batches;
+
+    /** The text the function is labelled with in the key, or null for the expression. */
+    private String label;
+
+    /** The curve of the equation being plotted, or null if the expression is not an equation. */
+    private ImplicitCurve implicitCurve;
+
+    /** The parametric or polar curve being plotted, or null if the expression is not one. */
+    private ParametricCurve parametricCurve;
+
+    /** The function of z being plotted, or null if the expression is not one. */
+    private DomainColoring domainColoring;
+
+    // Infinitesimal distance to compute limits.
+    public static final double H = 0.00001;
+    public static final double TWO_H = 2.0 * H;
+    public static final double H_SQUARED = H * H;
+
+    // Most lines of the grid across each axis.  The grid is drawn a line at a time, and so is labelled.
+    public static final int MAX_GRID_LINES = 2000;
+
+    // The x-interval in which the functions are evaluated.
+    private static final double DELTA = 0.01;
+
+    // A small interval very close to zero, used to do comparisons of floating point numbers.
+    private static final double EPSILON = 0.0001;
+
+    // Absolute error allowed in the area under the derivative.
+    private static final double AREA_TOLERANCE = 0.00001;
+
+    // Number of points evaluated together, between checks for cancellation.
+    private static final int POINTS_PER_BATCH = 1024;
+
+    // Largest distance between the points sampled by the first pass of a progressive plot, in pixels.
+    private static final double COARSE_PIXELS = 8.0;
+
+    // Most batches of points whose parts are kept from one plot to the next, when the function has parameters.
+    private static final int MAX_CACHED_BATCHES = 64;
+
+    // Most points sampled every DELTA; a range that needs more is plotted from a SamplePyramid.
+    private static final int MAX_POINTS = 1 << 20;
+
+    // Largest distance between points sampled every DELTA, in pixels; a range that spaces them further apart
+    // is sampled at every pixel column instead.
+    private static final double MAX_POINT_PIXELS = 4.0;
+
+    // Width of the window analyze() samples a narrow range for, in pixels, as it has no window of its own.
+    private static final int ANALYSIS_WIDTH = 1600;
+
+    // Narrowest strip of a plot drawn in strips, and the fewest pixels of an image drawn in strips, in pixels.
+    private static final int MIN_STRIP_PIXELS = 256;
+    private static final long MIN_STRIPS_IMAGE_PIXELS = 3840L * 2160;
+
+    // Number of functions whose SamplePyramid is kept, and the memory each may take.
+    private static final int PYRAMID_COUNT = 4;
+    private static final long PYRAMID_BYTES = 16L << 20;
+
+    // Pyramids of the functions plotted last, by getFunctionKey(), the least recently used first.
+    private static final Map<String, SamplePyramid> PYRAMIDS =
+            new LinkedHashMap<String, SamplePyramid>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SamplePyramid> eldest) {
+                    return size() > PYRAMID_COUNT;
+                }
+            };
+
+    // Number of reports of functions analysed over a range that are kept.
+    private static final int ANALYSIS_COUNT = 64;
+
+    // Reports of the functions and ranges plotted last, by getAnalysisKey(), the least recently used first.
+    private static final Map<String, FunctionAnalysis> ANALYSES =
+            new LinkedHashMap<String, FunctionAnalysis>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, FunctionAnalysis> eldest) {
+                    return size() > ANALYSIS_COUNT;
+                }
+            };
+
+    // Properties of the line rendering main function.
+    private static final Color FUNC_COLOR = Color.BLUE;
+    private static final BasicStroke FUNC_STROKE = new BasicStroke(3);
+
+    // Properties of the line rendering the first derivative.
+    private static final Color DERIVATIVE_COLOR = Color.RED;
+    private static final BasicStroke DERIVATIVE_STROKE = new BasicStroke(2);
+
+    // Properties of the line rendering the second derivative.
+    private static final Color SECOND_DERIVATIVE_COLOR = new Color(8,69,148);  // Dark Blue
+    private static final BasicStroke SECOND_DERIVATIVE_STROKE = new BasicStroke(1);
+
+    // Properties of the line rendering grid lines.
+    private static final Color GRID_COLOR = Color.LIGHT_GRAY;
+    private static final Stroke GRID_STROKE = new BasicStroke(1);
+
+    // Properties of the line rendering X- and Y- axes.
+    private static final Color AXIS_COLOR = Color.BLACK;
+    private static final Stroke AXIS_STROKE = new BasicStroke(2);
+
+    // Properties of the line rendering asymptotes.
+    private static final Color ASYMPTOTE_COLOR = new Color(0, 179, 89);  // Dark Purple
+    private static final Stroke ASYMPTOTE_STROKE = new BasicStroke(2, BasicStroke.CAP_BUTT,
+            BasicStroke.JOIN_BEVEL, 0, new float[]{9}, 0) ;
+
+    private static final Color FTC_TITLE_COLOR = Color.BLUE;
+    private static final Color FTC_COLOR = Color.BLACK;
+
+
+    // Other colors.
+
+    // Color of maximum points.
+    private static final Color MAX_COLOR = new Color(96,72,96);  // Dark brown
+
+    // Color of minimum points.
+    private static final Color MIN_COLOR = Color.ORANGE;
+
+    // Color of inflection points.
+    private static final Color INFLECTION_COLOR = Color.MAGENTA;
+
+    // Color of a holes.
+    private static final Color HOLE_COLOR = new Color(31, 55, 72);  // Dark Purple
+
+
+    // Color of the markings on the chart.
+    private static final Color LEGEND_COLOR = Color.BLACK;
+
+    // Color the chart is drawn on, when rendered into an image.
+    private static final Color BACKGROUND_COLOR = Color.WHITE;
+
+    // Width of the border on all sides, in pixels.
+    private static final int BORDER = 150;
+
+    // Most vertices of a continuous line stroked as one path; a longer line is stroked as several.  The
+    // software renderer strokes a path of thousands of vertices about half as fast, per vertex, as short ones.
+    private static final int PATH_VERTICES = 256;
+
+    // Largest error allowed by evaluating curves approximately, in pixels.
+    private static final double APPROXIMATION_PIXELS = 0.1;
+
+
+    // User input variables.
+    private String expression; // The plotted expression.
+    private double xLow;       // Minimum x to be plotted.
+    private double xHigh;      // Maximum x to be plotted.
+    private double yLow;       // Minimum y to be plotted.
+    private double yHigh;      // Maximum y to be plotted.
+    private double xStep;      // x-interval (int chart units) where grids should be drawn.
+    private double yStep;      // y-interval (int chart units) where grids should be drawn.
+
+    // Scaling values calculated dynamically.
+    private double xScale;  // Number of pixels in one x unit.
+    private double yScale;  // Number of pixels in one y unit.
+    private double width;   // Width of the chart in chart units.
+    private double height;  // Height of the chart in chart units.
+
+    private double xOrigin; // Distance of the Y-axis (in pixels) from the leftmost point in the chart.
+    private double yOrigin; // Distance of the X-axis (in pixels) from the topmost point in the chart.
+
+    // Fonts used for printing legends.
+    private Font horizontalFont;
+    private Font verticalFont;
+    private Font horizontalLargeFont;
+
+    // The Graphics object being plotted on, and the size of the area it covers, in pixels.
+    private Graphics2D graphics;
+    private int windowWidth;
+    private int windowHeight;
+
+    // Time spent evaluating the function during the current plot, when metrics are enabled.
+    private long computeNanos;
+
+    // A line being clipped to the chart, as {x1, y1, x2, y2}, and a line being drawn.
+    private final double[] segment = new double[4];
+    private final Line2D.Double line = new Line2D.Double();
+
+    // A continuous line being drawn, with lineTo(), and the number of vertices in it.
+    private final Path2D.Float path = new Path2D.Float();
+    private int pathVertices;
+
+    /**
+     * Sets parameters for plotting.
+     * @param expression The algebraic expression to be plotted, an equation in x and y, or a parametric
+     *                   or polar curve.
+     * @param xLow The minimum value of x to be plotted.
+     * @param xHigh The maximum value of x to be plotted.
+     * @param yLow The minimum value of y to be plotted.
+     * @param yHigh The maximum value of y to be plotted.
+     * @param xStep The x interval for the grid.
+     * @param yStep The y interval for the grid.
+     * The expression is compiled only if it, or the functions and constants defined, have changed since the
+     * last call, so a plotter can be kept to plot the same expression over other ranges quickly.
+     * @throws IllegalArgumentException If a range is empty or not finite, a step is not positive or gives more
+     *                                  than MAX_GRID_LINES lines, or the expression cannot be parsed.
+     */
+    public void setValues(String expression, double xLow, double xHigh, double yLow, double yHigh,
+                          double xStep, double yStep) {
+        checkRange("x", xLow, xHigh, xStep);
+        checkRange("y", yLow, yHigh, yStep);
+        String definitions = MathEvaluator.getDefinitions();
+        if (!expression.equals(this.expression) || !definitions.equals(this.definitions)) {
+            this.definitions = null;
+            this.mathEvaluator = new MathEvaluator(expression);
+            for (Map.Entry<String, Double> parameter : parameters.entrySet()) {
+                mathEvaluator.addVariable(parameter.getKey(), parameter.getValue());
+            }
+            caches.clear();
+            this.parametricCurve = ParametricCurve.isParametric(expression) ? new ParametricCurve(expression) : null;
+            this.implicitCurve = parametricCurve == null && ImplicitCurve.isImplicit(expression)
+                    ? new ImplicitCurve(expression) : null;
+            this.domainColoring = parametricCurve == null && implicitCurve == null
+                    && DomainColoring.isComplex(expression) ? new DomainColoring(expression) : null;
+            if (!isCurve()) {
+                try {
+                    mathEvaluator.compile();
+                } catch (Exception e) {
+                    throw new IllegalArgumentException("Cannot parse [" + expression + "]: " + e.getMessage(), e);
+                }
+            }
+            this.definitions = definitions;
+        }
+        this.expression = expression;
+        this.xLow = xLow;
+        this.xHigh = xHigh;
+        this.yLow = yLow;
+        this.yHigh = yHigh;
+        this.xStep = xStep;
+        this.yStep = yStep;
+        this.pointsCached = false;
+    }
+
+    /**
+     * Gives a variable of the function other than x a value, from the next plot on.  Plotting the function
+     * again over the same range with another value evaluates again only the parts of it that depend on the
+     * variable.  Curves are plotted from their expressions alone, without the values given here.
+     * @param name The name of the variable.
+     * @param value Its value.
+     */
+    public void setParameter(String name, double value) {
+        parameters.put(name, value);
+        if (mathEvaluator != null) {
+            mathEvaluator.addVariable(name, value);
+        }
+        pointsCached = false;
+    }
+
+    /**
+     * Sets the text the function is labelled with in the key, as the expression with the values of its
+     * parameters written in.
+     * @param label The text, or null to label the function with its expression.
+     */
+    public void setLabel(String label) {
+        this.label = label;
+    }
+
+    /** Whether an expression is plotted as a function of x, rather than as a curve or by domain coloring. */
+    static boolean isFunction(String expression) {
+        return !ParametricCurve.isParametric(expression) && !ImplicitCurve.isImplicit(expression)
+                && !DomainColoring.isComplex(expression);
+    }
+
+    /**
+     * Checks the range and the grid step of an axis.  The grid is drawn by adding the step until the end of
+     * the range, so a step that is not positive, or too small to change the values of the range, would never
+     * finish.
+     */
+    static void checkRange(String axis, double low, double high, double step) {
+        if (!(Double.isFinite(low) && Double.isFinite(high) && low < high)) {
+            throw new IllegalArgumentException("The range of " + axis + " must be finite and not empty: "
+                    + low + " to " + high);
+        }
+        double largest = Math.max(Math.abs(low), Math.abs(high));
+        if (!(step > 0 && (high - low) / step <= MAX_GRID_LINES && step >= Math.ulp(largest))) {
+            throw new IllegalArgumentException("The grid step of " + axis + " must be positive and give at most "
+                    + MAX_GRID_LINES + " lines from " + low + " to " + high + ": " + step);
+        }
+    }
+
+    /**
+     * Renders the plot into a new image, without needing a window or a display.
+     * @param windowWidth Width of the image, in pixels.
+     * @param windowHeight Height of the image, in pixels.
+     * @return The rendered image.
+     */
+    public BufferedImage renderImage(int windowWidth, int windowHeight) {
+        int strips = 1;
+        if ((long) windowWidth * windowHeight >= MIN_STRIPS_IMAGE_PIXELS) {
+            strips = Math.min(Runtime.getRuntime().availableProcessors(), windowWidth / MIN_STRIP_PIXELS);
+        }
+        return renderImage(windowWidth, windowHeight, strips);
+    }
+
+    /**
+     * Renders the plot into a new image, drawing each of a number of vertical strips of it on its own thread.
+     * The function is sampled once, and each strip draws the whole plot clipped to itself, into its part of
+     * the image.  Curves, and plots summarized from a SamplePyramid, are drawn on one thread.
+     * @param windowWidth Width of the image, in pixels.
+     * @param windowHeight Height of the image, in pixels.
+     * @param strips Number of strips.
+     * @return The rendered image, the same as one drawn whole.
+     */
+    public BufferedImage renderImage(int windowWidth, int windowHeight, int strips) {
+        BufferedImage image = newImage(windowWidth, windowHeight);
+        if (strips <= 1 || isCurve() || isSummarized()) {
+            Graphics2D g = image.createGraphics();
+            try {
+                plot(g, windowWidth, windowHeight);
+            } finally {
+                g.dispose();
+                // A plotter that is kept must not keep the image too.
+                graphics = null;
+            }
+            return image;
+        }
+
+        long plotStart = CalculatorMetrics.ENABLED ? System.nanoTime() : 0;
+        computeNanos = 0;
+        PlotEvent event = FlightRecorder.isInitialized() ? new PlotEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+
+        // What all the strips need is worked out once, here.
+        step = getStep(windowWidth);
+        DataPoints[] points = getDataPoints();
+        if (!pointsCached) {
+            rationalPolynomial = mathEvaluator.isRationalPolynomial();
+        }
+        FunctionAnalysis analysis = getAnalysis(points);
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < strips; ++i) {
+            int left = (int) ((long) windowWidth * i / strips);
+            int right = (int) ((long) windowWidth * (i + 1) / strips);
+            GraphPlotter strip = i == 0 ? this : newStrip();
+            tasks.add(() -> {
+                // The strip's part of the image, drawn on as if it were the whole.
+                Graphics2D g = image.getSubimage(left, 0, right - left, windowHeight).createGraphics();
+                try {
+                    g.translate(-left, 0);
+                    strip.draw(g, windowWidth, windowHeight, points, analysis.getFeatures(), analysis);
+                    return null;
+                } finally {
+                    g.dispose();
+                }
+            });
+        }
+        try {
+            List<Future<Void>> drawn = ForkJoinPool.commonPool().invokeAll(tasks);
+            for (Future<Void> future : drawn) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                    : new IllegalStateException(e.getCause());
+        } finally {
+            graphics = null;
+        }
+
+        recordPlot(event, plotStart, windowWidth, windowHeight, points.length, analysis.getExtremaCount());
+        return image;
+    }
+
+    // A plotter drawing another strip of this plot, with what the strips share already worked out.
+    private GraphPlotter newStrip() {
+        GraphPlotter strip = new GraphPlotter();
+        strip.parameters.putAll(parameters);
+        strip.label = label;
+        strip.setValues(expression, xLow, xHigh, yLow, yHigh, xStep, yStep);
+        strip.rationalPolynomial = rationalPolynomial;
+        strip.pointsCached = true;
+        strip.step = step;
+        return strip;
+    }
+
+    // Creates an image filled with the background color.
+    private static BufferedImage newImage(int windowWidth, int windowHeight) {
+        BufferedImage image = new BufferedImage(windowWidth, windowHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(BACKGROUND_COLOR);
+            g.fillRect(0, 0, windowWidth, windowHeight);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Renders the plot in passes of increasing resolution, handing over an image after each pass, so that
+     * a rough plot can be shown long before the full one is ready.  The first pass samples the function
+     * about every COARSE_PIXELS pixels, and each later pass halves the spacing, evaluating only the points
+     * in between, until the function is sampled at every step.  Maximum, minimum and inflection points
+     * are found again in every pass.  The fundamental theorem of calculus is shown in the last pass only.
+     * @param windowWidth Width of the images, in pixels.
+     * @param windowHeight Height of the images, in pixels.
+     * @param listener Receives the image of each pass.
+     */
+    public void renderProgressively(int windowWidth, int windowHeight, FrameListener listener) {
+        if (isCurve() || isSummarized()) {
+            // A curve is traced coarse to fine anyway, and a summary is quick; each comes out in one pass.
+            listener.frameRendered(renderImage(windowWidth, windowHeight), true);
+            return;
+        }
+
+        long plotStart = CalculatorMetrics.ENABLED ? System.nanoTime() : 0;
+        computeNanos = 0;
+        PlotEvent event = FlightRecorder.isInitialized() ? new PlotEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+
+        // Points are filled in as they are sampled, and kept for the later passes.
+        step = getStep(windowWidth);
+        double[] grid = getGrid();
+        DataPoints[] allPoints = new DataPoints[grid.length];
+        int extrema = 0;
+        boolean cached = readPoints(grid, allPoints);
+        batches = 0;
+        for (int stride = cached ? 1 : getCoarseStride(windowWidth, grid.length); stride >= 1; stride /= 2) {
+            sample(grid, allPoints, stride);
+            boolean complete = stride == 1;
+            DataPoints[] points = complete ? allPoints : every(allPoints, stride);
+
+            BufferedImage image = newImage(windowWidth, windowHeight);
+            Graphics2D g = image.createGraphics();
+            try {
+                extrema = draw(g, windowWidth, windowHeight, points, complete);
+            } finally {
+                g.dispose();
+            }
+            listener.frameRendered(image, complete);
+        }
+        if (!cached) {
+            writePoints(allPoints);
+        }
+
+        recordPlot(event, plotStart, windowWidth, windowHeight, allPoints.length, extrema);
+    }
+
+    /**
+     * Plots a function and its first and second derivatives.  Indicates minimum and maximum points.
+     * @param g The graphics to plot on.
+     * @param windowWidth Width of the area to plot on, in pixels, including the borders.
+     * @param windowHeight Height of the area to plot on, in pixels, including the borders.
+     */
+    public void plot(Graphics2D g, int windowWidth, int windowHeight) {
+        long plotStart = CalculatorMetrics.ENABLED ? System.nanoTime() : 0;
+        computeNanos = 0;
+        PlotEvent event = FlightRecorder.isInitialized() ? new PlotEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+
+        if (domainColoring != null) {
+            long evaluations = drawDomainColoring(g, windowWidth, windowHeight);
+            recordPlot(event, plotStart, windowWidth, windowHeight, (int) evaluations, 0);
+            return;
+        }
+
+        if (isCurve()) {
+            long evaluations = drawCurve(g, windowWidth, windowHeight);
+            recordPlot(event, plotStart, windowWidth, windowHeight, (int) evaluations, 0);
+            return;
+        }
+
+        if (isSummarized()) {
+            long evaluations = drawSummary(g, windowWidth, windowHeight);
+            recordPlot(event, plotStart, windowWidth, windowHeight, (int) evaluations, 0);
+            return;
+        }
+
+        // Compute the function and its derivatives at all the points, starting at the leftmost point.
+        step = getStep(windowWidth);
+        DataPoints[] points = getDataPoints();
+        int extrema = draw(g, windowWidth, windowHeight, points, true);
+
+        recordPlot(event, plotStart, windowWidth, windowHeight, points.length, extrema);
+    }
+
+    /**
+     * Draws the chart through the given points.
+     * @param g The graphics to plot on.
+     * @param windowWidth Width of the area to plot on, in pixels, including the borders.
+     * @param windowHeight Height of the area to plot on, in pixels, including the borders.
+     * @param points The function and its derivatives at the points to join, from left to right.
+     * @param complete Whether the points are all the points of the plot.  If so, the points found on the
+     *                 function are those of its FunctionAnalysis, and the fundamental theorem of calculus is
+     *                 shown.  If not, they are found again between the given points.
+     * @return The number of maximum, minimum and inflection points found.
+     */
+    private int draw(Graphics2D g, int windowWidth, int windowHeight, DataPoints[] points, boolean complete) {
+        // After the function is evaluated once, we know whether it is a rational polynomial or not.
+        if (!pointsCached) {
+            rationalPolynomial = mathEvaluator.isRationalPolynomial();
+        }
+        if (complete) {
+            FunctionAnalysis analysis = getAnalysis(points);
+            draw(g, windowWidth, windowHeight, points, analysis.getFeatures(), analysis);
+            return analysis.getExtremaCount();
+        }
+        List<FunctionAnalysis.Feature> features =
+                FunctionAnalysis.findFeatures(points, rationalPolynomial, this::getFunctionValue);
+        draw(g, windowWidth, windowHeight, points, features, null);
+        int extrema = 0;
+        for (FunctionAnalysis.Feature feature : features) {
+            FunctionAnalysis.Kind kind = feature.getKind();
+            if (kind != FunctionAnalysis.Kind.HOLE && kind != FunctionAnalysis.Kind.ASYMPTOTE) {
+                ++extrema;
+            }
+        }
+        return extrema;
+    }
+
+    /**
+     * Draws the chart through the given points, and marks the points found on it.
+     * @param g The graphics to plot on.
+     * @param windowWidth Width of the area to plot on, in pixels, including the borders.
+     * @param windowHeight Height of the area to plot on, in pixels, including the borders.
+     * @param points The function and its derivatives at the points to join, from left to right.
+     * @param features The maximum, minimum and inflection points, holes and asymptotes to mark.
+     * @param analysis The report whose fundamental theorem of calculus is shown, or null to show none.
+     */
+    private void draw(Graphics2D g, int windowWidth, int windowHeight, DataPoints[] points,
+                      List<FunctionAnalysis.Feature> features, FunctionAnalysis analysis) {
+        layout(g, windowWidth, windowHeight);
+        summarized = false;
+
+        // Save existing stroke and color.
+        Stroke oldStroke = graphics.getStroke();
+        Color oldColor = graphics.getColor();
+
+        // Draw grid, axes and legends.
+        drawGrid();
+
+        // Mark the points found on the function, under the charts.
+        for (FunctionAnalysis.Feature feature : features) {
+            switch (feature.getKind()) {
+                case MAXIMUM:
+                    drawMaximumDot(feature.getX(), feature.getY());
+                    break;
+                case MINIMUM:
+                    drawMinimumDot(feature.getX(), feature.getY());
+                    break;
+                case INFLECTION:
+                    drawInflectionDot(feature.getX(), feature.getY());
+                    break;
+                case HOLE:
+                    drawHole(feature.getX(), feature.getY());
+                    break;
+                case ASYMPTOTE:
+                    drawAsymptote(feature.getX(), yLow);
+                    break;
+            }
+        }
+
+        // Each chart is collected into polylines, and drawn after all the points are visited.
+        Curve function = new Curve(windowWidth);
+        Curve derivative = new Curve(windowWidth);
+        Curve secondDerivative = new Curve(windowWidth);
+
+        DataPoints lastDp = points[0];
+        for (int i = 1; i < points.length; ++i) {
+            if (i % POINTS_PER_BATCH == 0) {
+                checkCancelled();
+            }
+
+            // The function and its derivatives at the next point.
+            DataPoints dp = points[i];
+            double x = dp.x;
+
+            // Function chart.
+            function.add(lastDp.x, lastDp.y, x, dp.y);
+
+            // First derivative chart.
+            if (lastDp.yDash >= yLow && lastDp.yDash <= yHigh && dp.yDash >= yLow && dp.yDash <= yHigh) {
+                derivative.add(lastDp.x, lastDp.yDash, x, dp.yDash);
+            }
+
+            // Second derivative chart.
+            if (lastDp.yDashDash >= yLow && lastDp.yDashDash <= yHigh &&
+                    dp.yDashDash >= yLow && dp.yDashDash <= yHigh) {
+                secondDerivative.add(lastDp.x, lastDp.yDashDash, x, dp.yDashDash);
+            }
+
+            // Move to the next point.
+            lastDp = dp;
+        }
+
+        // Draw the charts, with one change of stroke and color each.
+        function.draw(FUNC_STROKE, FUNC_COLOR);
+        derivative.draw(DERIVATIVE_STROKE, DERIVATIVE_COLOR);
+        secondDerivative.draw(SECOND_DERIVATIVE_STROKE, SECOND_DERIVATIVE_COLOR);
+
+        // Draw the legend.
+        drawLegend();
+
+        if (analysis != null) {
+            double firstX = analysis.getA();
+            double firstY = analysis.getFA();
+            double lastX = analysis.getB();
+            double lastY = analysis.getFB();
+            double area = analysis.getArea();
+
+            // Illustrate the fundamental theorem of calculus.
+
+            int fontX = BORDER;
+            int fontY = BORDER / 2;
+            graphics.setFont(horizontalLargeFont);
+            FontMetrics fm = graphics.getFontMetrics();
+
+            String title;
+            String value;
+
+            // f(a)
+            graphics.setColor(FTC_TITLE_COLOR);
+            title = String.format("f(%.2f) = ", firstX);
+            graphics.drawString(title, fontX, fontY);
+            fontX += fm.stringWidth(title);
+
+            graphics.setColor(FTC_COLOR);
+            value = String.format("%.4f", firstY);
+            graphics.drawString(value, fontX, fontY);
+            fontX += fm.stringWidth(value);
+
+            // f(b)
+            graphics.setColor(FTC_TITLE_COLOR);
+            title = String.format(", f(%.2f) = ", lastX);
+            graphics.drawString(title, fontX, fontY);
+            fontX += fm.stringWidth(title);
+
+            graphics.setColor(FTC_COLOR);
+            value = String.format("%.4f", lastY);
+            graphics.drawString(value, fontX, fontY);
+            fontX += fm.stringWidth(value);
+
+            // f(b) - f(a)
+            graphics.setColor(FTC_TITLE_COLOR);
+            title = String.format(", f(%.2f) - f(%.2f) = ", lastX, firstX);
+            graphics.drawString(title, fontX, fontY);
+            fontX += fm.stringWidth(title);
+
+            graphics.setColor(FTC_COLOR);
+            value = String.format("%.4f", lastY - firstY);
+            graphics.drawString(value, fontX, fontY);
+            fontX += fm.stringWidth(value);
+
+            // Area under derivative.
+            graphics.setColor(FTC_TITLE_COLOR);
+            title = ", Area under derivative = ";
+            graphics.drawString(title, fontX, fontY);
+            fontX += fm.stringWidth(title);
+
+            graphics.setColor(FTC_COLOR);
+            value = String.format("%.4f", area);
+            graphics.drawString(value, fontX, fontY);
+        }
+
+        // Restore old stroke and color.
+        graphics.setStroke(oldStroke);
+        graphics.setColor(oldColor);
+    }
+
+    // Returns the index of the point the fundamental theorem of calculus is shown up to: the last one before
+    // the function first leaves the chart, or the last of all.
+    private int getFtcEnd(DataPoints[] points) {
+        for (int i = 1; i < points.length; ++i) {
+            if (points[i].y < yLow || points[i].y > yHigh) {
+                return i - 1;
+            }
+        }
+        return points.length - 1;
+    }
+
+    /**
+     * Analyses the function over the range, without drawing anything: finds its maximum, minimum and
+     * inflection points, its holes and asymptotes, and the fundamental theorem of calculus.  The report is
+     * kept, so the same expression and range are analysed once, by this plotter or any other, and plotting
+     * them draws from the report.
+     * A range too narrow to be sampled every DELTA is sampled as for a plot ANALYSIS_WIDTH pixels wide.
+     * @return The report.
+     * @throws IllegalStateException If the expression is a curve rather than a function of x, or the range
+     *                               is too wide for the function to be sampled every DELTA.
+     */
+    public FunctionAnalysis analyze() {
+        if (isCurve() || isSummarized()) {
+            throw new IllegalStateException("Cannot analyse [" + expression + "] from " + xLow + " to " + xHigh);
+        }
+        step = getStep(ANALYSIS_WIDTH);
+        String key = getAnalysisKey();
+        FunctionAnalysis kept = getKeptAnalysis(key);
+        if (kept != null) {
+            return kept;
+        }
+        DataPoints[] points = getDataPoints();
+        if (!pointsCached) {
+            rationalPolynomial = mathEvaluator.isRationalPolynomial();
+        }
+        return analyze(points, key);
+    }
+
+    // Returns the report of the function over the range, working it out from all the points of the plot if
+    // it is not kept.
+    private FunctionAnalysis getAnalysis(DataPoints[] points) {
+        String key = getAnalysisKey();
+        FunctionAnalysis kept = getKeptAnalysis(key);
+        return kept != null ? kept : analyze(points, key);
+    }
+
+    // Returns the report kept under a key in ANALYSES, or null.
+    private static FunctionAnalysis getKeptAnalysis(String key) {
+        FunctionAnalysis analysis;
+        synchronized (ANALYSES) {
+            analysis = ANALYSES.get(key);
+        }
+        if (CalculatorMetrics.ENABLED) {
+            CalculatorMetrics.get().analysisCacheLookup(analysis != null);
+        }
+        return analysis;
+    }
+
+    // Works out the report of the function over the range from all the points of the plot, and keeps it
+    // under the key.
+    private FunctionAnalysis analyze(DataPoints[] points, String key) {
+        List<FunctionAnalysis.Feature> features =
+                FunctionAnalysis.findFeatures(points, rationalPolynomial, this::getFunctionValue);
+        if (CalculatorMetrics.ENABLED) {
+            for (FunctionAnalysis.Feature feature : features) {
+                if (feature.getKind() == FunctionAnalysis.Kind.HOLE) {
+                    CalculatorMetrics.get().holeDetected();
+                } else if (feature.getKind() == FunctionAnalysis.Kind.ASYMPTOTE) {
+                    CalculatorMetrics.get().asymptoteDetected();
+                }
+            }
+        }
+
+        // The fundamental theorem of calculus, up to where the function leaves the chart.
+        checkCancelled();
+        DataPoints first = points[0];
+        DataPoints last = points[getFtcEnd(points)];
+        double area = getAreaUnderDerivative(first.x, last.x);
+
+        FunctionAnalysis analysis = new FunctionAnalysis(expression, xLow, xHigh, yLow, yHigh, rationalPolynomial,
+                features, first.x, first.y, last.x, last.y, area);
+        synchronized (ANALYSES) {
+            ANALYSES.put(key, analysis);
+        }
+        return analysis;
+    }
+
+    // Key of the report of the function over the range in ANALYSES.
+    private String getAnalysisKey() {
+        return getFunctionKey() + ":" + xLow + ":" + xHigh + ":" + yLow + ":" + yHigh + ":" + step + ":" + H;
+    }
+
+    // The start of the keys of what is kept of the function: the functions and constants defined, the
+    // expression, and the values of its parameters.
+    private String getFunctionKey() {
+        String key = MathEvaluator.getDefinitions() + expression;
+        return parameters.isEmpty() ? key : key + parameters;
+    }
+
+    // Records the metrics and the Flight Recorder event of a plot.  There is no event unless Flight Recorder
+    // is recording, as loading the first event class is slow.
+    private void recordPlot(PlotEvent event, long plotStart, int windowWidth, int windowHeight,
+                            int samples, int extrema) {
+        if (CalculatorMetrics.ENABLED) {
+            long plotNanos = System.nanoTime() - plotStart;
+            CalculatorMetrics.get().plotted(samples, computeNanos, plotNanos - computeNanos);
+        }
+
+        if (event != null && event.isEnabled()) {
+            event.expression = expression;
+            event.windowWidth = windowWidth;
+            event.windowHeight = windowHeight;
+            event.samples = samples;
+            event.extrema = extrema;
+            event.commit();
+        }
+    }
+
+    // Whether the range is too wide for the function to be sampled every DELTA.
+    private boolean isSummarized() {
+        return (xHigh - xLow) / DELTA > MAX_POINTS;
+    }
+
+    // Returns the x-interval to sample the function at: DELTA, or a pixel column of a chart on a window of
+    // the given width if points DELTA apart would be more than MAX_POINT_PIXELS apart on it.
+    private double getStep(int windowWidth) {
+        int columns = Math.max(1, windowWidth - 2 * BORDER);
+        if (DELTA * columns / (xHigh - xLow) <= MAX_POINT_PIXELS) {
+            return DELTA;
+        }
+        return (xHigh - xLow) / columns;
+    }
+
+    /**
+     * Plots the function alone, through the lowest, highest and mean values over each pixel column that its
+     * SamplePyramid gives.
+     * @param g The graphics to plot on.
+     * @param windowWidth Width of the area to plot on, in pixels, including the borders.
+     * @param windowHeight Height of the area to plot on, in pixels, including the borders.
+     * @return The number of times the function was evaluated.
+     */
+    private long drawSummary(Graphics2D g, int windowWidth, int windowHeight) {
+        layout(g, windowWidth, windowHeight);
+        summarized = true;
+
+        Stroke oldStroke = graphics.getStroke();
+        Color oldColor = graphics.getColor();
+        drawGrid();
+
+        SamplePyramid pyramid = getPyramid();
+        long start = System.nanoTime();
+        int columns = (int) width;
+        double[] min = new double[columns];
+        double[] max = new double[columns];
+        double[] mean = new double[columns];
+        long evaluations = pyramid.getEvaluations();
+        pyramid.summarize(xLow, xHigh, columns, min, max, mean);
+        evaluations = pyramid.getEvaluations() - evaluations;
+        computeNanos += System.nanoTime() - start;
+
+        // Each column is a line from its lowest to its highest value, joined to the next at the means.
+        Curve function = new Curve(windowWidth);
+        double lastX = Double.NaN;
+        double lastMean = Double.NaN;
+        for (int i = 0; i < columns; ++i) {
+            double x = xLow + (i + 0.5) * (xHigh - xLow) / columns;
+            function.add(lastX, lastMean, x, mean[i]);
+            function.add(x, min[i], x, max[i]);
+            lastX = x;
+            lastMean = mean[i];
+        }
+        function.draw(FUNC_STROKE, FUNC_COLOR);
+
+        drawLegend();
+
+        graphics.setStroke(oldStroke);
+        graphics.setColor(oldColor);
+        return evaluations;
+    }
+
+    // Returns the SamplePyramid of the function.  Variables other than x have no value, as in the other plots,
+    // so a function of them is undefined everywhere.
+    private SamplePyramid getPyramid() {
+        String key = getFunctionKey();
+        synchronized (PYRAMIDS) {
+            SamplePyramid pyramid = PYRAMIDS.get(key);
+            if (CalculatorMetrics.ENABLED) {
+                CalculatorMetrics.get().pyramidCacheLookup(pyramid != null);
+            }
+            if (pyramid == null) {
+                CompiledExpression compiled;
+                try {
+                    compiled = mathEvaluator.compile();
+                } catch (Exception e) {
+                    // setValues() compiled it already, so this is a bug rather than a bad expression.
+                    throw new IllegalStateException("Cannot compile [" + expression + "]", e);
+                }
+                double[] values = new double[compiled.getVariableCount()];
+                Arrays.fill(values, Double.NaN);
+                for (Map.Entry<String, Double> parameter : parameters.entrySet()) {
+                    int index = compiled.getVariableIndex(parameter.getKey());
+                    if (index >= 0) {
+                        values[index] = parameter.getValue();
+                    }
+                }
+                pyramid = new SamplePyramid(compiled, compiled.getVariableIndex("x"), values, PYRAMID_BYTES);
+                PYRAMIDS.put(key, pyramid);
+            }
+            return pyramid;
+        }
+    }
+
+    // Whether the expression is plotted as a curve only, or by domain coloring, without derivatives.
+    private boolean isCurve() {
+        return implicitCurve != null || parametricCurve != null || domainColoring != null;
+    }
+
+    /**
+     * Plots the curve of an equation in x and y, or a parametric or polar curve.
+     * @param g The graphics to plot on.
+     * @param windowWidth Width of the area to plot on, in pixels, including the borders.
+     * @param windowHeight Height of the area to plot on, in pixels, including the borders.
+     * @return The number of times the curve was evaluated.
+     */
+    private long drawCurve(Graphics2D g, int windowWidth, int windowHeight) {
+        layout(g, windowWidth, windowHeight);
+
+        // Save existing stroke, color and clip.
+        Stroke oldStroke = graphics.getStroke();
+        Color oldColor = graphics.getColor();
+        Shape oldClip = graphics.getClip();
+
+        drawGrid();
+
+        // Trace the curve to the resolution of the chart.
+        checkCancelled();
+        long start = CalculatorMetrics.ENABLED ? System.nanoTime() : 0;
+        int columns = (int) Math.ceil(width);
+        int rows = (int) Math.ceil(height);
+        ImplicitCurve.Contour contour = null;
+        ParametricCurve.Path curve = null;
+        boolean approximate = isApproximationInvisible();
+        if (implicitCurve != null) {
+            contour = implicitCurve.trace(xLow, xHigh, yLow, yHigh, columns, rows, approximate);
+        } else {
+            curve = parametricCurve.trace(xLow, xHigh, yLow, yHigh, columns, rows, approximate);
+        }
+        if (CalculatorMetrics.ENABLED) {
+            computeNanos += System.nanoTime() - start;
+        }
+        checkCancelled();
+
+        // Draw it within the chart, with one change of stroke and color.
+        graphics.clipRect(BORDER, BORDER, (int) width + 1, (int) height + 1);
+        graphics.setStroke(FUNC_STROKE);
+        graphics.setColor(FUNC_COLOR);
+        long evaluations;
+        if (contour != null) {
+            drawContour(contour);
+            evaluations = contour.getEvaluations();
+        } else {
+            // Join the points in order, starting a new line after each that is not a number.
+            double[] xs = curve.getXs();
+            double[] ys = curve.getYs();
+            for (int i = 0; i < curve.getPointCount(); ++i) {
+                if (Double.isNaN(xs[i])) {
+                    endLine();
+                } else if (pathVertices == 0) {
+                    moveTo(xToPixels(xs[i]), yToPixels(ys[i]));
+                } else {
+                    lineTo(xToPixels(xs[i]), yToPixels(ys[i]));
+                }
+            }
+            endLine();
+            evaluations = curve.getEvaluations();
+        }
+        graphics.setClip(oldClip);
+
+        drawLegend();
+
+        // Restore old stroke and color.
+        graphics.setStroke(oldStroke);
+        graphics.setColor(oldColor);
+
+        return evaluations;
+    }
+
+    /**
+     * Draws the segments of a contour, joined into lines where they meet end to end in pixels, so that each
+     * line is stroked as a path, with joins, instead of segment by segment.
+     */
+    private void drawContour(ImplicitCurve.Contour contour) {
+        int count = contour.getSegmentCount();
+        double[] segments = contour.getSegments();
+        int[] xs = new int[2 * count];
+        int[] ys = new int[2 * count];
+        for (int i = 0; i < 2 * count; ++i) {
+            xs[i] = xToPixels(segments[2 * i]);
+            ys[i] = yToPixels(segments[2 * i + 1]);
+        }
+
+        // The ends of the segments, the ends of segment i being 2i and 2i + 1, in a hash table by pixel.  Each
+        // slot of the table holds the first end at a pixel, plus one, and next[] lists the others.
+        int[] table = new int[Integer.highestOneBit(Math.max(4 * count, 1)) * 2];
+        int[] next = new int[2 * count];
+        for (int end = 0; end < 2 * count; ++end) {
+            int slot = findSlot(table, xs, ys, xs[end], ys[end]);
+            next[end] = table[slot] - 1;
+            table[slot] = end + 1;
+        }
+
+        boolean[] drawn = new boolean[count];
+        int[] chain = new int[2 * count + 2];
+        for (int i = 0; i < count; ++i) {
+            if (drawn[i]) {
+                continue;
+            }
+            // Follow the segments from each end of this one, which is in the middle of the chain.
+            drawn[i] = true;
+            int head = count + 1;
+            int tail = count + 1;
+            chain[tail++] = 2 * i;
+            chain[tail++] = 2 * i + 1;
+            for (int end = 2 * i + 1; (end = findJoined(end, table, next, xs, ys, drawn)) >= 0; end ^= 1) {
+                chain[tail++] = end ^ 1;
+            }
+            for (int end = 2 * i; (end = findJoined(end, table, next, xs, ys, drawn)) >= 0; end ^= 1) {
+                chain[--head] = end ^ 1;
+            }
+            int x = xs[chain[head]];
+            int y = ys[chain[head]];
+            moveTo(x, y);
+            for (int j = head + 1; j < tail; ++j) {
+                if (xs[chain[j]] != x || ys[chain[j]] != y) {
+                    x = xs[chain[j]];
+                    y = ys[chain[j]];
+                    lineTo(x, y);
+                }
+            }
+            if (pathVertices == 1) {
+                // The whole line is shorter than a pixel, and is drawn as a dot.
+                lineTo(x, y);
+            }
+            endLine();
+        }
+    }
+
+    // Returns the slot of the hash table holding the ends at a pixel, or the empty slot where they go.
+    private static int findSlot(int[] table, int[] xs, int[] ys, int x, int y) {
+        int mask = table.length - 1;
+        int slot = (x * 0x9E3779B1 + y * 0x85EBCA77) >>> 7 & mask;
+        while (table[slot] != 0 && (xs[table[slot] - 1] != x || ys[table[slot] - 1] != y)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // Returns an end, at the same pixel as the given one, of a segment not drawn yet, marking the segment
+    // drawn, or -1 if there is none.
+    private static int findJoined(int end, int[] table, int[] next, int[] xs, int[] ys, boolean[] drawn) {
+        for (int other = table[findSlot(table, xs, ys, xs[end], ys[end])] - 1; other >= 0; other = next[other]) {
+            if (!drawn[other / 2]) {
+                drawn[other / 2] = true;
+                return other;
+            }
+        }
+        return -1;
+    }
+
+    /** Starts a continuous line at a pixel, drawing the line before it. */
+    private void moveTo(int x, int y) {
+        endLine();
+        path.moveTo(x, y);
+        pathVertices = 1;
+    }
+
+    /** Continues the line to a pixel. */
+    private void lineTo(int x, int y) {
+        if (pathVertices == PATH_VERTICES) {
+            // Stroke what there is, and go on from its last vertex.
+            float lastX = (float) path.getCurrentPoint().getX();
+            float lastY = (float) path.getCurrentPoint().getY();
+            endLine();
+            path.moveTo(lastX, lastY);
+            pathVertices = 1;
+        }
+        path.lineTo(x, y);
+        ++pathVertices;
+    }
+
+    /** Draws the line, with the stroke and color of the graphics, and starts another. */
+    private void endLine() {
+        if (pathVertices > 1) {
+            graphics.draw(path);
+        }
+        path.reset();
+        pathVertices = 0;
+    }
+
+    /**
+     * Plots a function of z by coloring every pixel of the chart, with the grid and the axes over it.
+     * @param g The graphics to plot on.
+     * @param windowWidth Width of the area to plot on, in pixels, including the borders.
+     * @param windowHeight Height of the area to plot on, in pixels, including the borders.
+     * @return The number of times the function was evaluated.
+     */
+    private long drawDomainColoring(Graphics2D g, int windowWidth, int windowHeight) {
+        layout(g, windowWidth, windowHeight);
+
+        // Save existing stroke and color.
+        Stroke oldStroke = graphics.getStroke();
+        Color oldColor = graphics.getColor();
+
+        // One value of the function for each pixel of the chart, the real part across and the imaginary up.
+        checkCancelled();
+        long start = CalculatorMetrics.ENABLED ? System.nanoTime() : 0;
+        int columns = (int) width;
+        int rows = (int) height;
+        BufferedImage image = domainColoring.render(xLow, xHigh, yLow, yHigh, columns, rows);
+        if (CalculatorMetrics.ENABLED) {
+            computeNanos += System.nanoTime() - start;
+        }
+        graphics.drawImage(image, BORDER, BORDER, null);
+
+        drawGrid();
+        drawLegend();
+
+        // Restore old stroke and color.
+        graphics.setStroke(oldStroke);
+        graphics.setColor(oldColor);
+
+        return (long) columns * rows;
+    }
+
+    /**
+     * Whether the error of ApproximateMath, on values as large as those in the window, is below
+     * APPROXIMATION_PIXELS at the current scales.  Only curves are evaluated approximately: the derivatives
+     * of a function are found from differences of values H apart, which would magnify the error by 1 / H^2.
+     */
+    private boolean isApproximationInvisible() {
+        double largest = Math.max(Math.max(Math.abs(xLow), Math.abs(xHigh)),
+                Math.max(Math.abs(yLow), Math.abs(yHigh)));
+        double error = ApproximateMath.MAX_ERROR * Math.max(1, largest);
+        return error * Math.max(xScale, yScale) < APPROXIMATION_PIXELS;
+    }
+
+    /** Sets up the scales and fonts for plotting on a graphics of the given size. */
+    private void layout(Graphics2D g, int windowWidth, int windowHeight) {
+        this.graphics = g;
+        this.windowWidth = windowWidth;
+        this.windowHeight = windowHeight;
+
+        // Leave borders at four sides.
+        width = windowWidth - 2 * BORDER;
+        height = windowHeight - 2 * BORDER;
+
+        // Find scaling factors to convert chart units to pixels.
+        xScale = width / (xHigh - xLow);
+        yScale = height / (yHigh - yLow);
+
+        // Find the pixel offset of the axes.
+        xOrigin = -xLow * xScale + BORDER;
+        yOrigin = height + BORDER + yLow * yScale;
+
+        // Font for horizontal text.
+        horizontalFont = new Font(null, Font.PLAIN, 10);
+
+        // Font for vertical text.  A translation of the graphics, as for a strip, is not part of the font.
+        AffineTransform t = graphics.getTransform();
+        t.setTransform(t.getScaleX(), t.getShearY(), t.getShearX(), t.getScaleY(), 0, 0);
+        t.rotate(-Math.PI/2, 0, 0);
+        verticalFont = horizontalFont.deriveFont(t);
+
+        // Font for large vertical text.
+        horizontalLargeFont = new Font(null, Font.PLAIN, 15);
+    }
+
+    private void drawAsymptote(double x, double y) {
+        graphics.setColor(ASYMPTOTE_COLOR);
+        graphics.setStroke(ASYMPTOTE_STROKE);
+        drawLine(x, yLow, x, yHigh);
+        graphics.drawString("x", xToPixels(x), yToPixels(y));
+    }
+
+    private void drawHole(double x, double y) {
+        drawColoredDot(x, y, HOLE_COLOR, true);
+    }
+
+    private void drawHoleNoCheck(double x, double y) {
+        drawColoredDot(x, y, HOLE_COLOR, false);
+    }
+
+    private Double getFunctionValue(double x) {
+        long start = CalculatorMetrics.ENABLED ? System.nanoTime() : 0;
+        mathEvaluator.addVariable("x", x);
+        Double y = mathEvaluator.getValue();
+        if (CalculatorMetrics.ENABLED) {
+            computeNanos += System.nanoTime() - start;
+        }
+        return y;
+    }
+
+    private void drawMaximumDot(double x, double y) {
+        drawColoredDot(x, y, MAX_COLOR, true);
+    }
+
+    private void drawMaximumDotNoCheck(double x, double y) {
+        drawColoredDot(x, y, MAX_COLOR, false);
+    }
+
+    private void drawMinimumDot(double x, double y) {
+        drawColoredDot(x, y, MIN_COLOR, true);
+    }
+
+    private void drawMinimumDotNoCheck(double x, double y) {
+        drawColoredDot(x, y, MIN_COLOR, false);
+    }
+
+    private void drawInflectionDot(double x, Double y) {
+        drawColoredDot(x, y, INFLECTION_COLOR, true);
+    }
+
+    private void drawInflectionDotNoCheck(double x, Double y) {
+        drawColoredDot(x, y, INFLECTION_COLOR, false);
+    }
+
+    private void drawColoredDot(double x, Double y, Color color, boolean checkBounds) {
+        if (checkBounds && (y < yLow || y > yHigh)) {
+            return;
+        }
+        graphics.setColor(color);
+        Ellipse2D.Double circle = new Ellipse2D.Double(xToPixels(x) - 5, yToPixels(y) - 5, 10, 10);
+        graphics.fill(circle);
+    }
+
+    /**
+     * Integrates f'(x) from a to b by adaptive quadrature.
+     * @param a The lower limit.
+     * @param b The upper limit.
+     * @return The area under the derivative, accurate to AREA_TOLERANCE.
+     */
+    double getAreaUnderDerivative(double a, double b) {
+        DiskCache disk = DiskCache.get();
+        String key = "area:" + getFunctionKey() + ":" + a + ":" + b + ":" + H + ":" + AREA_TOLERANCE;
+        ByteBuffer kept = disk == null ? null : disk.get(key);
+        if (kept != null && kept.remaining() == Double.BYTES) {
+            return kept.getDouble();
+        }
+
+        long start = CalculatorMetrics.ENABLED ? System.nanoTime() : 0;
+        DoubleUnaryOperator derivative = Integrator.derivative(Integrator.function(expression, "x", parameters), H);
+        double area = Integrator.integrate(derivative, a, b, AREA_TOLERANCE).getValue();
+        if (CalculatorMetrics.ENABLED) {
+            computeNanos += System.nanoTime() - start;
+        }
+        if (disk != null) {
+            disk.put(key, ByteBuffer.allocate(Double.BYTES).putDouble(area).flip());
+        }
+        return area;
+    }
+
+    /**
+     * Computes f(x), f'(x) and f''(x) at an x-value x.
+     * @param x The x value.
+     * @return An object whose fields give values of the expression, its derivative and its second derivative.
+     */
+    DataPoints getDataPointsAt(double x) {
+        DataPoints result = new DataPoints();
+
+        result.x = x;
+
+        // Compute f(x).
+        result.y = getFunctionValue(x);
+
+        // Compute f(x+h).
+        Double fXPlusH = getFunctionValue(x + H);
+
+        // Compute f(x-h).
+        Double fXMinusH = getFunctionValue(x - H);
+
+        setDerivatives(result, fXPlusH, fXMinusH);
+        result.continuity = mathEvaluator.getContinuity();
+
+        return result;
+    }
+
+    /**
+     * Computes f(x), f'(x) and f''(x) at every step from xLow to xHigh, in batches.
+     * @return The values at each x, from left to right.
+     */
+    DataPoints[] getDataPoints() {
+        double[] grid = getGrid();
+        DataPoints[] points = new DataPoints[grid.length];
+        if (!readPoints(grid, points)) {
+            batches = 0;
+            sample(grid, points, 1);
+            writePoints(points);
+        }
+        return points;
+    }
+
+    // Key of the points of the plot in the DiskCache.
+    private String getPointsKey() {
+        return "points:" + getFunctionKey() + ":" + xLow + ":" + xHigh + ":" + step + ":" + H;
+    }
+
+    /**
+     * Reads the points of the plot from the DiskCache, if they were kept there by an earlier plot.
+     * @param grid The x-values of all the points.
+     * @param points Receives the points, at the same positions as their x-values.
+     * @return Whether the points were found.
+     */
+    private boolean readPoints(double[] grid, DataPoints[] points) {
+        DiskCache disk = DiskCache.get();
+        ByteBuffer kept = disk == null ? null : disk.get(getPointsKey());
+        if (kept == null) {
+            return false;
+        }
+        if (kept.remaining() != 5 + grid.length * (3 * Double.BYTES + 1) || kept.getInt(1) != grid.length) {
+            disk.remove(getPointsKey());
+            return false;
+        }
+        MathEvaluator.Continuity[] continuities = MathEvaluator.Continuity.values();
+        rationalPolynomial = kept.get() != 0;
+        kept.getInt();
+        for (int i = 0; i < grid.length; ++i) {
+            DataPoints dp = new DataPoints();
+            dp.x = grid[i];
+            dp.y = kept.getDouble();
+            dp.yDash = kept.getDouble();
+            dp.yDashDash = kept.getDouble();
+            dp.continuity = continuities[Math.floorMod(kept.get(), continuities.length)];
+            points[i] = dp;
+        }
+        pointsCached = true;
+        return true;
+    }
+
+    // Keeps the points of the plot in the DiskCache, if there is one.
+    private void writePoints(DataPoints[] points) {
+        DiskCache disk = DiskCache.get();
+        if (disk == null) {
+            return;
+        }
+        ByteBuffer data = ByteBuffer.allocate(5 + points.length * (3 * Double.BYTES + 1));
+        data.put((byte) (mathEvaluator.isRationalPolynomial() ? 1 : 0)).putInt(points.length);
+        for (DataPoints dp : points) {
+            data.putDouble(dp.y).putDouble(dp.yDash).putDouble(dp.yDashDash).put((byte) dp.continuity.ordinal());
+        }
+        disk.put(getPointsKey(), data.flip());
+    }
+
+    /** Returns the x-values of all the points of the plot, every step from xLow to xHigh. */
+    private double[] getGrid() {
+        int count = 0;
+        for (double x = xLow; x <= xHigh || count == 0; x += step) {
+            ++count;
+        }
+        double[] grid = new double[count];
+        double x = xLow;
+        for (int i = 0; i < count; ++i) {
+            grid[i] = x;
+            x += step;
+        }
+        return grid;
+    }
+
+    /**
+     * Returns the number of points to step over in the first pass of a progressive plot: the largest power
+     * of two that keeps the sampled points within COARSE_PIXELS of each other.
+     */
+    private int getCoarseStride(int windowWidth, int count) {
+        double pixelsPerPoint = step * (windowWidth - 2 * BORDER) / (xHigh - xLow);
+        int stride = 1;
+        while (2 * stride < count && 2 * stride * pixelsPerPoint <= COARSE_PIXELS) {
+            stride *= 2;
+        }
+        return stride;
+    }
+
+    /**
+     * Computes the points at every stride-th x-value and the last one, skipping those computed already.
+     * @param grid The x-values of all the points.
+     * @param points Receives the points, at the same positions as their x-values.
+     * @param stride The number of x-values from one point to the next.
+     */
+    private void sample(double[] grid, DataPoints[] points, int stride) {
+        int last = points.length - 1;
+        int[] indices = new int[last / stride + 2];
+        int n = 0;
+        for (int i = 0; i <= last; i += stride) {
+            if (points[i] == null) {
+                indices[n++] = i;
+            }
+        }
+        if (last % stride != 0 && points[last] == null) {
+            indices[n++] = last;
+        }
+
+        // Evaluate f(x), f(x+h) and f(x-h) for a batch of points together.
+        double[] xs = new double[3 * Math.min(n, POINTS_PER_BATCH)];
+        double[] ys = new double[xs.length];
+        MathEvaluator.Continuity[] continuities = new MathEvaluator.Continuity[xs.length];
+        for (int first = 0; first < n; first += POINTS_PER_BATCH) {
+            checkCancelled();
+            int count = Math.min(POINTS_PER_BATCH, n - first);
+            if (3 * count < xs.length) {
+                xs = new double[3 * count];
+                ys = new double[xs.length];
+                continuities = new MathEvaluator.Continuity[xs.length];
+            }
+            for (int i = 0; i < count; ++i) {
+                double x = grid[indices[first + i]];
+                xs[3 * i] = x;
+                xs[3 * i + 1] = x + H;
+                xs[3 * i + 2] = x - H;
+            }
+            long start = CalculatorMetrics.ENABLED ? System.nanoTime() : 0;
+            if (parameters.isEmpty()) {
+                mathEvaluator.getValues("x", xs, ys, continuities);
+            } else {
+                mathEvaluator.getValues("x", xs, ys, continuities, getCache(batches++));
+            }
+            if (CalculatorMetrics.ENABLED) {
+                computeNanos += System.nanoTime() - start;
+            }
+
+            for (int i = 0; i < count; ++i) {
+                DataPoints dp = new DataPoints();
+                dp.x = xs[3 * i];
+                dp.y = ys[3 * i];
+                setDerivatives(dp, ys[3 * i + 1], ys[3 * i + 2]);
+                dp.continuity = continuities[3 * i + 2];
+                points[indices[first + i]] = dp;
+            }
+        }
+    }
+
+    // Returns the cache of the parts of the function evaluated by a batch of points, or null if the batch is
+    // past those kept.
+    private CompiledExpression.Cache getCache(int batch) {
+        if (batch >= MAX_CACHED_BATCHES) {
+            return null;
+        }
+        while (caches.size() <= batch) {
+            caches.add(new CompiledExpression.Cache());
+        }
+        return caches.get(batch);
+    }
+
+    /** Returns every stride-th point, and the last one. */
+    private static DataPoints[] every(DataPoints[] points, int stride) {
+        int last = points.length - 1;
+        DataPoints[] result = new DataPoints[last / stride + (last % stride == 0 ? 1 : 2)];
+        int n = 0;
+        for (int i = 0; i <= last; i += stride) {
+            result[n++] = points[i];
+        }
+        if (last % stride != 0) {
+            result[n] = points[last];
+        }
+        return result;
+    }
+
+    // Stops the plot if the thread computing it has been interrupted, as nobody wants the result any more.
+    private static void checkCancelled() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Plot cancelled");
+        }
+    }
+
+    // Computes f'(x) and f''(x) from f(x), f(x+h) and f(x-h).
+    private static void setDerivatives(DataPoints dp, double fXPlusH, double fXMinusH) {
+        // Compute f'(x).
+        dp.yDash = (fXPlusH - fXMinusH) / TWO_H;
+
+        // Compute f''(x).
+        dp.yDashDash = (fXPlusH - 2 * dp.y + fXMinusH) / H_SQUARED;
+    }
+
+    /**
+     * Draws a line on the graphics pane, using the current stroke and color.
+     * Makes sure the points lie in the chart boundaries.
+     * @param x1 Starting x co-ordinate, in chart units.
+     * @param y1 Starting y co-ordinate, in chart units.
+     * @param x2 Ending x co-ordinate, in chart units.
+     * @param y2 Ending y co-ordinate, in chart units.
+     */
+    private void drawLine(double x1, double y1, double x2, double y2) {
+        drawLineSegment(x1, y1, x2, y2, true);
+    }
+
+    /** Same as drawLine(), but with no check for boundaries. */
+    private void drawLineNoCheck(double x1, double y1, double x2, double y2) {
+        drawLineSegment(x1, y1, x2, y2, false);
+    }
+
+    private void drawLineSegment(double x1, double y1, double x2, double y2, boolean checkBounds) {
+        segment[0] = x1;
+        segment[1] = y1;
+        segment[2] = x2;
+        segment[3] = y2;
+        if (checkBounds && !clip(segment)) {
+            return;
+        }
+        line.setLine(xToPixels(segment[0]), yToPixels(segment[1]), xToPixels(segment[2]), yToPixels(segment[3]));
+        graphics.draw(line);
+    }
+
+    /**
+     * Cuts a line short where it leaves the chart.
+     * @param segment The line, as {x1, y1, x2, y2} in chart units.  Receives the part to be drawn.
+     * @return Whether any of the line is to be drawn.
+     */
+    private boolean clip(double[] segment) {
+        double x1 = segment[0];
+        double y1 = segment[1];
+        double x2 = segment[2];
+        double y2 = segment[3];
+        if ((y1 < yLow || y1 > yHigh) && (y2 < yLow || y2 > yHigh)) {
+            return false;
+        }
+        if (y1 < yLow) {
+            segment[0] = x2 + (yLow - y2) * (x2 - x1)/ (y2 - y1);
+            segment[1] = yLow;
+        } else if (y2 < yLow) {
+            segment[2] = x1 - (yLow - y1) * (x2 - x1)/ (y2 - y1);
+            segment[3] = yLow;
+        } else if (y1 > yHigh) {
+            segment[0] = x2 + (yHigh - y2) * (x2 - x1)/ (y2 - y1);
+            segment[1] = yHigh;
+        } else if (y2 > yHigh) {
+            segment[2] = x1 + (yHigh - y1) * (x2 - x1)/ (y2 - y1);
+            segment[3] = yHigh;
+        }
+        return true;
+    }
+
+    /**
+     * A chart built up as polylines, from lines joining consecutive points.  A polyline is broken only
+     * where a line is cut short by the edge of the chart, is left out, or cannot be computed.  The whole
+     * chart is drawn at the end with a single change of stroke and color.
+     *
+     * When there are more points than pixels, the vertices falling in one pixel column are decimated as
+     * they are added: only the first, the lowest, the highest and the last are kept, in the order they came.
+     * The lines between the vertices of a column are all vertical, so the lines through those four cover
+     * exactly the same pixels.  The chart looks the same, but the number of vertices stored and drawn is
+     * bounded by the width of the window instead of by the number of points.
+     *
+     * Thin charts are drawn one polyline per call, which Java2D fills in without stroking.  Wider ones are
+     * stroked one path per polyline, so that the lines are joined, cut every PATH_VERTICES vertices: the
+     * software renderer strokes a long path many times slower than the same path in short pieces.
+     */
+    private class Curve {
+        // Pixels at the vertices of the polylines, one after the other.
+        private int[] xs;
+        private int[] ys;
+        private int length;
+
+        // Index of the first vertex of each polyline.
+        private int[] starts = new int[16];
+        private int count;
+
+        // The last vertex added, to tell whether the next line continues the polyline.
+        private boolean empty = true;
+        private int lastX;
+        private int lastY;
+
+        // Vertices added in the current pixel column, not stored yet.
+        private boolean pending;
+        private int column;
+        private int firstY;
+        private int minY;
+        private int maxY;
+        private boolean minFirst;  // Whether the lowest came before the highest.
+        private boolean dot;       // Whether a line in the column was shorter than a pixel.
+
+        Curve(int columns) {
+            xs = new int[4 * columns + 16];
+            ys = new int[xs.length];
+        }
+
+        /** Adds a line, cut short where it leaves the chart as drawLine() does. */
+        void add(double x1, double y1, double x2, double y2) {
+            if (Double.isNaN(y1) || Double.isNaN(y2)) {
+                return;
+            }
+            segment[0] = x1;
+            segment[1] = y1;
+            segment[2] = x2;
+            segment[3] = y2;
+            if (!clip(segment)) {
+                return;
+            }
+            int startX = xToPixels(segment[0]);
+            int startY = yToPixels(segment[1]);
+            if (empty || startX != lastX || startY != lastY) {
+                // Start a new polyline.
+                flush();
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, 2 * count);
+                }
+                starts[count++] = length;
+                addVertex(startX, startY);
+            }
+            addVertex(xToPixels(segment[2]), yToPixels(segment[3]));
+            if (lastX == startX && lastY == startY) {
+                dot = true;
+            }
+        }
+
+        // Adds a vertex to the current pixel column, or stores that column and starts a new one.
+        private void addVertex(int x, int y) {
+            if (pending && x == column) {
+                if (y < minY) {
+                    minY = y;
+                    minFirst = false;
+                } else if (y > maxY) {
+                    maxY = y;
+                    minFirst = true;
+                }
+            } else {
+                flush();
+                pending = true;
+                column = x;
+                firstY = y;
+                minY = y;
+                maxY = y;
+                minFirst = true;
+                dot = false;
+            }
+            empty = false;
+            lastX = x;
+            lastY = y;
+        }
+
+        // Stores the first, lowest, highest and last vertices of the current pixel column.
+        private void flush() {
+            if (!pending) {
+                return;
+            }
+            store(column, firstY);
+            store(column, minFirst ? minY : maxY);
+            store(column, minFirst ? maxY : minY);
+            store(column, lastY);
+            if (dot && minY == maxY) {
+                // A wide stroke draws a line shorter than a pixel as a square dot.  Elsewhere in a column
+                // it is covered by the vertical lines, but a column of one vertex keeps it as a line
+                // from the vertex to itself.
+                xs[length] = column;
+                ys[length] = lastY;
+                ++length;
+            }
+            pending = false;
+        }
+
+        // Stores a vertex at the end of the current polyline, unless it repeats the one before.
+        private void store(int x, int y) {
+            if (length > starts[count - 1] && xs[length - 1] == x && ys[length - 1] == y) {
+                return;
+            }
+            if (length + 1 >= xs.length) {
+                xs = Arrays.copyOf(xs, 2 * xs.length);
+                ys = Arrays.copyOf(ys, 2 * ys.length);
+            }
+            xs[length] = x;
+            ys[length] = y;
+            ++length;
+        }
+
+        /** Draws the chart. */
+        void draw(BasicStroke stroke, Color color) {
+            flush();
+            if (length == 0) {
+                return;
+            }
+            graphics.setStroke(stroke);
+            graphics.setColor(color);
+            boolean thin = stroke.getLineWidth() <= 1;
+            for (int i = 0; i < count; ++i) {
+                int start = starts[i];
+                int end = i + 1 < count ? starts[i + 1] : length;
+                if (end - start == 1) {
+                    // A line shorter than a pixel.
+                    line.setLine(xs[start], ys[start], xs[start], ys[start]);
+                    graphics.draw(line);
+                } else if (thin) {
+                    if (start == 0) {
+                        graphics.drawPolyline(xs, ys, end);
+                    } else {
+                        graphics.drawPolyline(Arrays.copyOfRange(xs, start, end), Arrays.copyOfRange(ys, start, end),
+                                end - start);
+                    }
+                } else {
+                    moveTo(xs[start], ys[start]);
+                    for (int j = start + 1; j < end; ++j) {
+                        lineTo(xs[j], ys[j]);
+                    }
+                    endLine();
+                }
+            }
+        }
+    }
+
+    /** Checks whether a floating point value is close enough to zero to be considered as zero. */
+    private static boolean isZero(double value) {
+        return Math.abs(value) < EPSILON;
+    }
+
+    /**
+     * Draws the grids for the chart.
+     */
+    private void drawGrid() {
+        graphics.setStroke(GRID_STROKE);
+        graphics.setColor(GRID_COLOR);
+        double x;
+        for (x = xLow; x < xHigh; x += xStep) {
+            drawLine(x, yLow, x, yHigh);
+        }
+        drawLine(xHigh, yLow, xHigh, yHigh);
+
+        for (double y = yLow; y < yHigh; y += yStep) {
+            drawLine(xLow, y, xHigh, y);
+        }
+        drawLine(xLow, yHigh, xHigh, yHigh);
+
+        graphics.setColor(AXIS_COLOR);
+        graphics.setStroke(AXIS_STROKE);
+        drawLine(xLow, 0, xHigh, 0);
+        drawLine(0, yLow, 0, yHigh);
+    }
+
+    /**
+     * Converts X co-ordinate to pixels.
+     * @param x The X co-ordinate.
+     * @return Number of pixels from the left side of the window.
+     */
+    private int xToPixels(double x) {
+        return (int) (xOrigin + xScale * x + 0.5);
+    }
+
+    /**
+     * Converts X co-ordinate to pixels.
+     * @param y The Y co-ordinate.
+     * @return Number of pixels from the top of the window.
+     */
+    private int yToPixels(double y) {
+        return (int) (yOrigin - yScale * y + 0.5);
+    }
+
+    /**
+     * Draws the legend around the chart.
+     */
+    private void drawLegend() {
+        double x;
+        graphics.setColor(LEGEND_COLOR);
+
+        Font originalFont = graphics.getFont();
+        graphics.setFont(verticalFont);
+        for (x = xLow; x <= xHigh; x += xStep) {
+            graphics.drawString(String.format("%10.1f", x), xToPixels(x), (int) (BORDER + height + 50));
+        }
+        graphics.drawString(String.format("%6.2f", 0.0),
+                (int) (xOrigin), (int) (BORDER));
+
+        graphics.setFont(horizontalFont);
+        // The last label is allowed a little rounding, relative to the step, so a narrow range is labelled too.
+        for (double y = yLow; y <= yHigh + Math.min(EPSILON, yStep / 2); y += yStep) {
+            graphics.drawString(String.format("%10.1f", y), 100, yToPixels(y));
+        }
+        graphics.drawString(String.format("%6.2f", 0.0), (windowWidth - BORDER), (int) yOrigin);
+
+        ////// Print the legend at the bottom.
+
+        double xLeft = xLow + 0.20 * (xHigh - xLow);
+        double yLeft = yLow - 60.0 / yScale;
+
+        //// Left side.
+
+        if (domainColoring != null) {
+            // The colors are their own legend.
+            graphics.setColor(LEGEND_COLOR);
+            graphics.drawString("f(z) = " + expression, xToPixels(xLeft) + 20, yToPixels(yLeft));
+            graphics.setFont(originalFont);
+            return;
+        }
+
+        if (isCurve() || summarized) {
+            // An equation, a parametric curve or a summary has only its curve to show.
+            graphics.setColor(FUNC_COLOR);
+            graphics.setStroke(FUNC_STROKE);
+            drawLineNoCheck(xLow, yLeft, xLeft, yLeft);
+            graphics.setColor(LEGEND_COLOR);
+            graphics.drawString(expression, xToPixels(xLeft) + 20, yToPixels(yLeft));
+            graphics.setFont(originalFont);
+            return;
+        }
+
+        // Print f(x).
+        graphics.setColor(FUNC_COLOR);
+        graphics.setStroke(FUNC_STROKE);
+        drawLineNoCheck(xLow, yLeft, xLeft, yLeft);
+        graphics.setColor(LEGEND_COLOR);
+        graphics.drawString("f(x) = " + (label != null ? label : expression), xToPixels(xLeft) + 20, yToPixels(yLeft));
+
+        // Print f'(x).
+        yLeft -= 20.0 / yScale;
+        graphics.setColor(DERIVATIVE_COLOR);
+        graphics.setStroke(DERIVATIVE_STROKE);
+        drawLineNoCheck(xLow, yLeft, xLeft, yLeft);
+        graphics.setColor(LEGEND_COLOR);
+        graphics.drawString("f'(x)", xToPixels(xLeft) + 20, yToPixels(yLeft));
+
+        // Print f''(x).
+        yLeft -= 20.0 / yScale;
+        graphics.setColor(SECOND_DERIVATIVE_COLOR);
+        graphics.setStroke(SECOND_DERIVATIVE_STROKE);
+        drawLineNoCheck(xLow, yLeft, xLeft, yLeft);
+        graphics.setColor(LEGEND_COLOR);
+        graphics.drawString("f''(x)", xToPixels(xLeft) + 20, yToPixels(yLeft));
+
+        if (rationalPolynomial) {
+            // Print Asymptote.
+            yLeft -= 20.0 / yScale;
+            graphics.setColor(ASYMPTOTE_COLOR);
+            graphics.setStroke(ASYMPTOTE_STROKE);
+            drawLineNoCheck(xLow, yLeft, xLeft, yLeft);
+            graphics.setColor(LEGEND_COLOR);
+            graphics.drawString("Asymptote", xToPixels(xLeft) + 20, yToPixels(yLeft));
+
+        }
+
+        //// Right side.
+
+        double xRight = xLow + (xHigh - xLow) * 0.75;
+        double yRight = yLow - 60.0 / yScale;
+
+        // Print Maximum.
+        drawMaximumDotNoCheck(xRight, yRight);
+        graphics.setColor(LEGEND_COLOR);
+        graphics.drawString("Maximum point", xToPixels(xRight) + 20, yToPixels(yRight));
+
+        // Print Minimum.
+        yRight -= 20.0 / yScale;
+        drawMinimumDotNoCheck(xRight, yRight);
+        graphics.setColor(LEGEND_COLOR);
+        graphics.drawString("Minimum point", xToPixels(xRight) + 20, yToPixels(yRight));
+
+        // Print Inflection.
+        yRight -= 20.0 / yScale;
+        drawInflectionDotNoCheck(xRight, yRight);
+        graphics.setColor(LEGEND_COLOR);
+        graphics.drawString("Inflection point", xToPixels(xRight) + 20, yToPixels(yRight));
+
+        if (rationalPolynomial) {
+            // Print Asymptote.
+            yRight -= 20.0 / yScale;
+            graphics.setColor(HOLE_COLOR);
+            drawHoleNoCheck(xRight, yRight);
+            graphics.setColor(LEGEND_COLOR);
+            graphics.drawString("Hole", xToPixels(xRight) + 20, yToPixels(yRight));
+
+        }
+
+        graphics.setFont(originalFont);
+    }
+
+}
@@ -4,7 +4,7 @@ import java.util.Scanner;
 
 public class GraphingCalculatorTest {
 
-    private static class Parameters {
+    static class Parameters {
         String expr;
         double xLow;
         double xHigh;
@@ -24,19 +24,22 @@ public class GraphingCalculatorTest {
         }
     }
 
+    /** The sample functions, also used by the benchmarks. */
+    static final Parameters[] DATA = {
+            new Parameters("sin(x)", -3 * Math.PI, 3 * Math.PI, -1.5, 1.5,
+                    0.5 * Math.PI, 0.25),
+            new Parameters("x^2 - 2*x + 3", -5, 5, -10, 30, 1, 5),
+            new Parameters("(x^3 - 4*x^2 + 5 * x + 4)/(x-2)", -5, 5, -300, 300, 1, 100),
+            new Parameters("x^3 - 3*x^2 - 144*x + 432", -13, 13,-500, 1000, 1, 100 ),
+            new Parameters("(x^3 - 1)/(x-1)", -5, 5,-3, 30, 1, 5 ),
+            new Parameters("tan(x)", -2.5 * Math.PI, 2.5 * Math.PI, -10, 10, 0.5 * Math.PI, 1),
+            new Parameters("2 * x + 1", -10, 10, -20, 20, 1, 4)
+
+    };
+
     public static void main(String[] args) {
 
-        GraphingCalculatorTest.Parameters[] data = {
-                new Parameters("sin(x)", -3 * Math.PI, 3 * Math.PI, -1.5, 1.5,
-                        0.5 * Math.PI, 0.25),
-                new Parameters("x^2 - 2*x + 3", -5, 5, -10, 30, 1, 5),
-                new Parameters("(x^3 - 4*x^2 + 5 * x + 4)/(x-2)", -5, 5, -300, 300, 1, 100),
-                new Parameters("x^3 - 3*x^2 - 144*x + 432", -13, 13,-500, 1000, 1, 100 ),
-                new Parameters("(x^3 - 1)/(x-1)", -5, 5,-3, 30, 1, 5 ),
-                new Parameters("tan(x)", -2.5 * Math.PI, 2.5 * Math.PI, -10, 10, 0.5 * Math.PI, 1),
-                new Parameters("2 * x + 1", -10, 10, -20, 20, 1, 4)
-
-        };
+        GraphingCalculatorTest.Parameters[] data = DATA;
 
 
         Scanner in = new Scanner(System.in);
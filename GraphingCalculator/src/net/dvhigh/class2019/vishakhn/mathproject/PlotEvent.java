@@ -0,0 +1,35 @@
+package net.dvhigh.class2019.vishakhn.mathproject;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one plot of a function, on every paint of the window or rendering of an image.
+ *
+ * @author vishakh.nair
+ */
+@Name("geometry2D.Plot")
+@Label("Plot")
+@Category({"Graphing Calculator", "Renderer"})
+@Description("A function and its derivatives plotted")
+class PlotEvent extends Event {
+
+    @Label("Expression")
+    String expression;
+
+    @Label("Window Width")
+    int windowWidth;
+
+    @Label("Window Height")
+    int windowHeight;
+
+    @Label("Samples")
+    int samples;
+
+    @Label("Extrema Found")
+    @Description("Number of maximum, minimum and inflection points found")
+    int extrema;
+}
@@ -0,0 +1,192 @@
+package net.dvhigh.class2019.vishakhn.mathproject;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Shows the plot of a function, computed in the background.
+ *
+ * Every change of the parameters or of the size of the panel restarts a short timer, and the plot is
+ * computed only when the timer runs out, so a burst of keystrokes costs one plot.  The plot is rendered
+ * into images on a worker thread, coarse first and then finer, and each is shown as soon as it is ready.
+ * A plot still being computed when a newer one is asked for is cancelled, and the last image stays on
+ * screen until the first pass of the new one is ready, so the event thread never waits for the function
+ * to be evaluated.  An expression that cannot be plotted, such as an equation still being typed, or a plot
+ * that fails, is reported to the error listener instead, and the last image stays on screen with the
+ * reason written over it.
+ *
+ * All methods must be called on the event dispatch thread.
+ *
+ * @author vishakh.nair
+ */
+public class PlotPanel extends JComponent {
+
+    private static final long serialVersionUID = 1L;
+
+    // Time to wait after the last change before plotting, in milliseconds.
+    private static final int DEBOUNCE_MILLIS = 250;
+
+    // Color of the reason a plot could not be drawn, and its distance from the corner of the panel.
+    private static final Color ERROR_COLOR = new Color(192, 0, 0);
+    private static final int ERROR_INSET = 20;
+
+    // Renders plots one at a time, off the event thread.
+    private final ExecutorService renderer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Graphing Calculator renderer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Starts a plot once the input has stopped changing.
+    private final Timer debounce = new Timer(DEBOUNCE_MILLIS, e -> render());
+
+    // Parameters of the plot to show.  The expression is null until they are set.
+    private String expression;
+    private double xLow;
+    private double xHigh;
+    private double yLow;
+    private double yHigh;
+    private double xStep;
+    private double yStep;
+
+    // The plot being computed, and the number of plots asked for, so the result of a stale one is dropped.
+    private Future<?> pending;
+    private long generation;
+
+    // The last image of a plot, and the reason the plot asked for since could not be drawn, or null.
+    private BufferedImage image;
+    private String error;
+
+    // Told why the expression cannot be plotted.
+    private Consumer<String> errorListener = message -> { };
+
+    public PlotPanel() {
+        setOpaque(true);
+        setBackground(Color.WHITE);
+        debounce.setRepeats(false);
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                schedule();
+            }
+        });
+    }
+
+    /**
+     * Sets parameters for plotting.  The plot is recomputed shortly after the last change.
+     * @param expression The algebraic expression to be plotted.
+     * @param xLow The minimum value of x to be plotted.
+     * @param xHigh The maximum value of x to be plotted.
+     * @param yLow The minimum value of y to be plotted.
+     * @param yHigh The maximum value of y to be plotted.
+     * @param xStep The x interval for the grid.
+     * @param yStep The y interval for the grid.
+     */
+    public void setValues(String expression, double xLow, double xHigh, double yLow, double yHigh,
+                          double xStep, double yStep) {
+        this.expression = expression;
+        this.xLow = xLow;
+        this.xHigh = xHigh;
+        this.yLow = yLow;
+        this.yHigh = yHigh;
+        this.xStep = xStep;
+        this.yStep = yStep;
+        schedule();
+    }
+
+    /**
+     * Sets what is told, on the event dispatch thread, when the expression cannot be plotted.
+     * @param errorListener Receives the reason.
+     */
+    public void setErrorListener(Consumer<String> errorListener) {
+        this.errorListener = errorListener;
+    }
+
+    // Cancels the plot being computed, as it is out of date, and waits for the input to settle.
+    private void schedule() {
+        ++generation;
+        if (pending != null) {
+            pending.cancel(true);
+            pending = null;
+        }
+        debounce.restart();
+    }
+
+    // Starts computing the plot for the current parameters and size.
+    private void render() {
+        final int w = getWidth();
+        final int h = getHeight();
+        if (expression == null || w <= 0 || h <= 0) {
+            return;
+        }
+        final GraphPlotter plotter = new GraphPlotter();
+        final String expression = this.expression;
+        final double xLow = this.xLow;
+        final double xHigh = this.xHigh;
+        final double yLow = this.yLow;
+        final double yHigh = this.yHigh;
+        final double xStep = this.xStep;
+        final double yStep = this.yStep;
+        final long plotGeneration = generation;
+
+        pending = renderer.submit(() -> {
+            try {
+                plotter.setValues(expression, xLow, xHigh, yLow, yHigh, xStep, yStep);
+                plotter.renderProgressively(w, h, (result, complete) ->
+                        SwingUtilities.invokeLater(() -> showPlot(plotGeneration, result, complete)));
+            } catch (CancellationException e) {
+                // A newer plot has been asked for.
+            } catch (IllegalArgumentException e) {
+                SwingUtilities.invokeLater(() -> showError(plotGeneration, e.getMessage()));
+            } catch (RuntimeException e) {
+                String message = "Cannot plot [" + expression + "]: " + e;
+                SwingUtilities.invokeLater(() -> showError(plotGeneration, message));
+            }
+        });
+    }
+
+    // Shows a pass of a plot, unless the input has changed since it was started.
+    private void showPlot(long plotGeneration, BufferedImage result, boolean complete) {
+        if (plotGeneration != generation) {
+            return;
+        }
+        if (complete) {
+            pending = null;
+        }
+        image = result;
+        error = null;
+        repaint();
+    }
+
+    // Reports that a plot could not be drawn, unless the input has changed since it was started.
+    private void showError(long plotGeneration, String message) {
+        if (plotGeneration != generation) {
+            return;
+        }
+        pending = null;
+        error = message;
+        repaint();
+        errorListener.accept(message);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+        if (image != null) {
+            g.drawImage(image, 0, 0, null);
+        }
+        if (error != null) {
+            g.setColor(ERROR_COLOR);
+            g.drawString(error, ERROR_INSET, ERROR_INSET);
+        }
+    }
+}
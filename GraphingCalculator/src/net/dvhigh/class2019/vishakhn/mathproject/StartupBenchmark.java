@@ -0,0 +1,94 @@
+package net.dvhigh.class2019.vishakhn.mathproject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures how long a script waits for one evaluation from the command line, from starting the process to
+ * its exit.  It is invoked as follows:
+ *   java StartupBenchmark [runs] [cli-directory]
+ *
+ * It runs the one-shot MathEvaluator.main and EvaluateCommand from the classpath of the benchmark, with
+ * default and with fast-start JVM options.  Given the directory of cli/build.sh, it also runs the jar with
+ * the AppCDS archive built there, and the native executable if there is one.  For each, the shortest,
+ * median and mean times are reported, against a target of TARGET_MILLIS.
+ *
+ * @author vishakh.nair
+ */
+public class StartupBenchmark {
+
+    // Time within which an evaluation should be done, in milliseconds.
+    private static final double TARGET_MILLIS = 50;
+
+    private static final int DEFAULT_RUNS = 20;
+
+    private static final String EXPRESSION = "a*sin(x)^2 + cos(x)^2";
+
+    // JVM options that make a short run start faster.
+    private static final String[] FAST_START = {"-XX:TieredStopAtLevel=1", "-XX:+UseSerialGC", "-XX:-UsePerfData"};
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length >= 1 ? Integer.parseInt(args[0]) : DEFAULT_RUNS;
+        String java = ProcessHandle.current().info().command().orElse("java");
+        String classpath = System.getProperty("java.class.path");
+
+        System.out.printf("== Startup of one evaluation, %d runs each, target %.0f ms%n", runs, TARGET_MILLIS);
+        measure("MathEvaluator.main", runs,
+                java, "-cp", classpath, "geometry2D.MathEvaluator", "sin(1)^2 + cos(1)^2");
+        measure("EvaluateCommand", runs,
+                java, "-cp", classpath, "geometry2D.EvaluateCommand", EXPRESSION, "a=1", "x=1");
+        measure("EvaluateCommand, fast start", runs,
+                concat(new String[] {java}, FAST_START, new String[] {"-cp", classpath,
+                        "geometry2D.EvaluateCommand", EXPRESSION, "a=1", "x=1"}));
+
+        if (args.length >= 2) {
+            File out = new File(args[1], "out").getAbsoluteFile();
+            File jar = new File(out, "evaluate.jar");
+            File archive = new File(out, "evaluate.jsa");
+            File executable = new File(out, "evaluate");
+            if (jar.isFile() && archive.isFile()) {
+                measure("EvaluateCommand, fast start and AppCDS", runs,
+                        concat(new String[] {java, "-XX:SharedArchiveFile=" + archive}, FAST_START,
+                                new String[] {"-jar", jar.getPath(), EXPRESSION, "a=1", "x=1"}));
+            }
+            if (executable.canExecute()) {
+                measure("EvaluateCommand, native", runs, executable.getPath(), EXPRESSION, "a=1", "x=1");
+            }
+        }
+    }
+
+    // Runs a command repeatedly, after one run to warm the file cache, and reports the times.
+    private static void measure(String name, int runs, String... command) throws IOException, InterruptedException {
+        run(command);
+        double[] millis = new double[runs];
+        for (int i = 0; i < runs; ++i) {
+            long start = System.nanoTime();
+            run(command);
+            millis[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(millis);
+        double mean = Arrays.stream(millis).average().orElse(0);
+        double median = millis[runs / 2];
+        System.out.printf("%-40s min %6.1f ms, median %6.1f ms, mean %6.1f ms  %s%n", name, millis[0], median, mean,
+                median < TARGET_MILLIS ? "within target" : "over target");
+    }
+
+    private static void run(String... command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        byte[] output = process.getInputStream().readAllBytes();
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException(String.join(" ", command) + " failed: " + new String(output));
+        }
+    }
+
+    private static String[] concat(String[]... parts) {
+        List<String> all = new ArrayList<>();
+        for (String[] part : parts) {
+            all.addAll(Arrays.asList(part));
+        }
+        return all.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,394 @@
+package net.dvhigh.class2019.vishakhn.mathproject;
+
+import org.w3c.dom.Node;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOInvalidTreeException;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Renders an animation of a family of functions, plotting one frame for each value of a parameter.
+ * It is invoked as follows:
+ *   java SweepAnimator expression parameter from to frames output xLow xHigh yLow yHigh xStep yStep
+ *                      [width height]
+ * for example
+ *   java SweepAnimator "sin(k*x)" k 0.5 3 120 sine.gif -10 10 -2 2 1 0.5
+ *
+ * The parameter takes evenly spaced values from the first to the last frame, and every frame is plotted
+ * headlessly, exactly as the calculator plots the expression with that value in place of the parameter.
+ * An output ending in .gif is written as an animated GIF; any other output is a directory, which gets
+ * the frames as frame-0001.png, frame-0002.png and so on.
+ *
+ * A function of x is plotted with the parameter as a variable, by a plotter kept for each thread, which keeps
+ * the parts of the function that do not depend on the parameter from one frame to the next, so that only
+ * the rest is evaluated again.  A curve is plotted from the expression with the value written in.
+ *
+ * Frames are plotted in parallel, one per core, and written in order as soon as they and all the frames
+ * before them are ready.  At most WINDOW_PER_THREAD frames per core are plotted ahead of the next one to
+ * be written, so the memory used does not grow with the number of frames.
+ *
+ * @author vishakh.nair
+ */
+public class SweepAnimator {
+
+    // Number of frames plotted or waiting to be written, per thread.
+    private static final int WINDOW_PER_THREAD = 2;
+
+    // Time each frame of a GIF is shown for, in hundredths of a second.
+    private static final int GIF_FRAME_DELAY = 4;
+
+    // Default size of the frames, in pixels.
+    private static final int DEFAULT_WIDTH = 1200;
+    private static final int DEFAULT_HEIGHT = 800;
+
+    /** Receives the frames in order. */
+    public interface FrameWriter {
+        void write(int frame, BufferedImage image) throws IOException;
+
+        void close() throws IOException;
+    }
+
+    private final String expression;
+    private final String parameterName;
+    private final Pattern parameter;
+    private final boolean function;
+    private final double from;
+    private final double to;
+    private final int frames;
+
+    // Chart and image parameters shared by all the frames.
+    private double xLow;
+    private double xHigh;
+    private double yLow;
+    private double yHigh;
+    private double xStep;
+    private double yStep;
+    private int width = DEFAULT_WIDTH;
+    private int height = DEFAULT_HEIGHT;
+
+    // The plotter of each thread plotting frames of a function of x.
+    private final ThreadLocal<GraphPlotter> plotters = ThreadLocal.withInitial(GraphPlotter::new);
+
+    /**
+     * Creates an animation of an expression as a parameter goes from one value to another.
+     * @param expression The expression, which may be an equation or a curve, containing the parameter.
+     * @param parameter The name of the parameter.
+     * @param from The value of the parameter in the first frame.
+     * @param to The value of the parameter in the last frame.
+     * @param frames The number of frames.
+     * @throws IllegalArgumentException If the expression does not contain the parameter, or there are no frames.
+     */
+    public SweepAnimator(String expression, String parameter, double from, double to, int frames) {
+        this.expression = expression;
+        this.parameterName = parameter;
+        this.function = GraphPlotter.isFunction(expression) && !parameter.equals("x");
+        this.parameter = Pattern.compile("\\b" + Pattern.quote(parameter) + "\\b");
+        this.from = from;
+        this.to = to;
+        this.frames = frames;
+        if (!this.parameter.matcher(expression).find()) {
+            throw new IllegalArgumentException("The expression does not contain " + parameter);
+        }
+        if (frames < 1) {
+            throw new IllegalArgumentException("There must be at least one frame");
+        }
+    }
+
+    /**
+     * Sets the part of the plane plotted, and the grid, as for GraphPlotter.setValues().
+     * @throws IllegalArgumentException If GraphPlotter.setValues() would reject them, before any frame is plotted.
+     */
+    public void setChart(double xLow, double xHigh, double yLow, double yHigh, double xStep, double yStep) {
+        GraphPlotter.checkRange("x", xLow, xHigh, xStep);
+        GraphPlotter.checkRange("y", yLow, yHigh, yStep);
+        this.xLow = xLow;
+        this.xHigh = xHigh;
+        this.yLow = yLow;
+        this.yHigh = yHigh;
+        this.xStep = xStep;
+        this.yStep = yStep;
+    }
+
+    /** Sets the size of the frames, in pixels. */
+    public void setSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /** The value of the parameter in a frame. */
+    public double getValue(int frame) {
+        return frames == 1 ? from : from + (to - from) * frame / (frames - 1);
+    }
+
+    /** The expression plotted in a frame, with the parameter replaced by its value. */
+    public String getExpression(int frame) {
+        String value = "(" + BigDecimal.valueOf(getValue(frame)).toPlainString() + ")";
+        return parameter.matcher(expression).replaceAll(Matcher.quoteReplacement(value));
+    }
+
+    /** Plots a frame. */
+    public BufferedImage renderFrame(int frame) {
+        if (!function) {
+            GraphPlotter plotter = new GraphPlotter();
+            plotter.setValues(getExpression(frame), xLow, xHigh, yLow, yHigh, xStep, yStep);
+            return plotter.renderImage(width, height);
+        }
+        GraphPlotter plotter = plotters.get();
+        plotter.setParameter(parameterName, getValue(frame));
+        plotter.setLabel(getExpression(frame));
+        plotter.setValues(expression, xLow, xHigh, yLow, yHigh, xStep, yStep);
+        return plotter.renderImage(width, height);
+    }
+
+    /**
+     * Plots all the frames on the given number of threads and hands them to the writer in order.
+     * The writer is closed at the end, even if plotting fails.
+     * @param threads The number of threads plotting frames.
+     * @param writer Receives the frames, on the calling thread.
+     * @param indexed Whether to convert the frames to indexed color, on the threads plotting them.
+     */
+    public void render(int threads, FrameWriter writer, boolean indexed) throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "Sweep animator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            // Frames being plotted, in order, the next one to be written first.
+            Deque<Future<BufferedImage>> window = new ArrayDeque<>();
+            int submitted = 0;
+            for (int frame = 0; frame < frames; ++frame) {
+                while (submitted < frames && window.size() < threads * WINDOW_PER_THREAD) {
+                    final int next = submitted++;
+                    window.add(executor.submit(() -> {
+                        BufferedImage image = renderFrame(next);
+                        return indexed ? toIndexed(image) : image;
+                    }));
+                }
+                try {
+                    writer.write(frame, window.remove().get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Frame " + (frame + 1) + " could not be plotted", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            writer.close();
+        }
+    }
+
+    /**
+     * Converts an image to indexed color.  Plots are drawn in a few solid colors, which are kept exactly;
+     * an image with more than 256 colors is dithered to the default palette.
+     */
+    static BufferedImage toIndexed(BufferedImage image) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, w, h, null, 0, w);
+
+        // Collect the colors, sorted, so each pixel finds its index by a binary search.
+        int[] palette = pixels.clone();
+        Arrays.sort(palette);
+        int colors = 0;
+        for (int i = 0; i < palette.length; ++i) {
+            if (i == 0 || palette[i] != palette[i - 1]) {
+                if (colors == 256) {
+                    BufferedImage dithered = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_INDEXED);
+                    Graphics2D g = dithered.createGraphics();
+                    g.drawImage(image, 0, 0, null);
+                    g.dispose();
+                    return dithered;
+                }
+                palette[colors++] = palette[i];
+            }
+        }
+        IndexColorModel model = new IndexColorModel(8, colors, Arrays.copyOf(palette, colors), 0, false, -1,
+                DataBuffer.TYPE_BYTE);
+        BufferedImage result = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_INDEXED, model);
+        byte[] indices = new byte[pixels.length];
+        int last = pixels.length == 0 ? 0 : pixels[0];
+        int lastIndex = Arrays.binarySearch(palette, 0, colors, last);
+        for (int i = 0; i < pixels.length; ++i) {
+            if (pixels[i] != last) {
+                last = pixels[i];
+                lastIndex = Arrays.binarySearch(palette, 0, colors, last);
+            }
+            indices[i] = (byte) lastIndex;
+        }
+        result.getRaster().setDataElements(0, 0, w, h, indices);
+        return result;
+    }
+
+    /** Writes the frames into a directory as numbered PNG files. */
+    public static class PngWriter implements FrameWriter {
+        private final File directory;
+
+        public PngWriter(File directory) throws IOException {
+            this.directory = directory;
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+        }
+
+        @Override
+        public void write(int frame, BufferedImage image) throws IOException {
+            ImageIO.write(image, "png", new File(directory, String.format("frame-%04d.png", frame + 1)));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /** Writes the frames into an animated GIF, which loops forever. */
+    public static class GifWriter implements FrameWriter {
+        private final ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+        private final ImageOutputStream out;
+
+        public GifWriter(File file) throws IOException {
+            File directory = file.getAbsoluteFile().getParentFile();
+            if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+            file.delete();
+            out = ImageIO.createImageOutputStream(file);
+            if (out == null) {
+                throw new IOException("Cannot write " + file);
+            }
+            writer.setOutput(out);
+            writer.prepareWriteSequence(null);
+        }
+
+        @Override
+        public void write(int frame, BufferedImage image) throws IOException {
+            IIOMetadata metadata = writer.getDefaultImageMetadata(
+                    ImageTypeSpecifier.createFromRenderedImage(image), null);
+            String format = metadata.getNativeMetadataFormatName();
+            IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
+
+            IIOMetadataNode control = child(root, "GraphicControlExtension");
+            control.setAttribute("disposalMethod", "none");
+            control.setAttribute("userInputFlag", "FALSE");
+            control.setAttribute("transparentColorFlag", "FALSE");
+            control.setAttribute("delayTime", Integer.toString(GIF_FRAME_DELAY));
+            control.setAttribute("transparentColorIndex", "0");
+
+            if (image.getColorModel() instanceof IndexColorModel) {
+                // Each frame has its own palette, which replaces the default one the writer would use.
+                IndexColorModel model = (IndexColorModel) image.getColorModel();
+                root.removeChild(child(root, "LocalColorTable"));
+                IIOMetadataNode table = new IIOMetadataNode("LocalColorTable");
+                int size = 2;
+                while (size < model.getMapSize()) {
+                    size *= 2;
+                }
+                table.setAttribute("sizeOfLocalColorTable", Integer.toString(size));
+                table.setAttribute("sortFlag", "FALSE");
+                for (int i = 0; i < size; ++i) {
+                    int rgb = i < model.getMapSize() ? model.getRGB(i) : 0;
+                    IIOMetadataNode entry = new IIOMetadataNode("ColorTableEntry");
+                    entry.setAttribute("index", Integer.toString(i));
+                    entry.setAttribute("red", Integer.toString((rgb >> 16) & 0xff));
+                    entry.setAttribute("green", Integer.toString((rgb >> 8) & 0xff));
+                    entry.setAttribute("blue", Integer.toString(rgb & 0xff));
+                    table.appendChild(entry);
+                }
+                root.appendChild(table);
+            }
+
+            if (frame == 0) {
+                // The Netscape extension makes the animation loop.
+                IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+                loop.setAttribute("applicationID", "NETSCAPE");
+                loop.setAttribute("authenticationCode", "2.0");
+                loop.setUserObject(new byte[] {1, 0, 0});
+                child(root, "ApplicationExtensions").appendChild(loop);
+            }
+            try {
+                metadata.setFromTree(format, root);
+            } catch (IIOInvalidTreeException e) {
+                throw new IOException(e);
+            }
+            writer.writeToSequence(new IIOImage(image, null, metadata), null);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                writer.endWriteSequence();
+            } finally {
+                writer.dispose();
+                out.close();
+            }
+        }
+
+        // The child of a metadata node with the given name, added if it is missing.
+        private static IIOMetadataNode child(IIOMetadataNode node, String name) {
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child.getNodeName().equals(name)) {
+                    return (IIOMetadataNode) child;
+                }
+            }
+            IIOMetadataNode child = new IIOMetadataNode(name);
+            node.appendChild(child);
+            return child;
+        }
+    }
+
+    /** Renders an animation given on the command line. */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+
+        if (args.length != 12 && args.length != 14) {
+            System.err.println("Usage: java SweepAnimator expression parameter from to frames output"
+                    + " xLow xHigh yLow yHigh xStep yStep [width height]");
+            System.exit(2);
+        }
+        SweepAnimator animator;
+        try {
+            animator = new SweepAnimator(args[0], args[1], Double.parseDouble(args[2]),
+                    Double.parseDouble(args[3]), Integer.parseInt(args[4]));
+            animator.setChart(Double.parseDouble(args[6]), Double.parseDouble(args[7]), Double.parseDouble(args[8]),
+                    Double.parseDouble(args[9]), Double.parseDouble(args[10]), Double.parseDouble(args[11]));
+        } catch (IllegalArgumentException e) {
+            System.err.println("error: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        if (args.length == 14) {
+            animator.setSize(Integer.parseInt(args[12]), Integer.parseInt(args[13]));
+        }
+
+        File output = new File(args[5]);
+        boolean gif = output.getName().toLowerCase().endsWith(".gif");
+        FrameWriter writer = gif ? new GifWriter(output) : new PngWriter(output);
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        long start = System.nanoTime();
+        animator.render(threads, writer, gif);
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%d frames on %d threads in %.2f s: %.1f frames/s\n",
+                animator.frames, threads, elapsed / 1e9, animator.frames * 1e9 / elapsed);
+    }
+}